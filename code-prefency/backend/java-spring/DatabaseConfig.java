@@ -24,7 +24,8 @@ import java.util.Properties;
 @EnableJpaRepositories(
     basePackages = "com.codeprefency.usermanagement.repository",
     entityManagerFactoryRef = "userEntityManagerFactory",
-    transactionManagerRef = "userTransactionManager"
+    transactionManagerRef = "userTransactionManager",
+    bootstrapMode = BootstrapMode.DEFERRED
 )
 @EnableTransactionManagement
 public class DatabaseConfig {
@@ -56,12 +57,47 @@ public class DatabaseConfig {
     @Value("${spring.jpa.properties.hibernate.use_sql_comments}")
     private Boolean useSqlComments;
 
+    @Value("${datasource.routing.max-replica-lag-seconds:5}")
+    private long maxReplicaLagSeconds;
+
+    @Value("${datasource.routing.read-your-writes-ms:5000}")
+    private long readYourWritesMillis;
+
+    @Value("${datasource.routing.cluster-sticky:true}")
+    private boolean clusterSticky;
+
+    @Autowired
+    @Lazy
+    private RedisConnectionFactory redisConnectionFactory;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${hibernate.stats.enabled:false}")
+    private boolean hibernateStatsEnabled;
+
+    @Value("${hibernate.stats.sample-rate:0.05}")
+    private double hibernateStatsSampleRate;
+
+    @Value("${hibernate.stats.slow-query-ms:500}")
+    private long hibernateSlowQueryMillis;
+
+    @Autowired
+    @Lazy
+    @Qualifier("analyticsDataSource")
+    private DataSource analyticsDataSource;
+
+    // EntityManagerFactory build ở background, song song với phần còn lại của context
+    private final AsyncTaskExecutor jpaBootstrapExecutor = new SimpleAsyncTaskExecutor("jpa-bootstrap-");
+
     /**
-     * Primary DataSource với HikariCP connection pooling
+     * Primary (write) DataSource với HikariCP connection pooling
      */
     @Bean
-    @Primary
-    public DataSource userDataSource() {
+    public HikariDataSource userDataSource() {
         HikariConfig config = new HikariConfig();
 
         // Basic configuration
@@ -70,7 +106,7 @@ public class DatabaseConfig {
         config.setPassword(datasourcePassword);
         config.setDriverClassName(datasourceDriver);
 
-        // Connection pool configuration
+        // Connection pool configuration - initial size, ConnectionPoolMonitor resize theo load
         config.setMaximumPoolSize(20);
         config.setMinimumIdle(5);
         config.setConnectionTimeout(30000);
@@ -78,6 +114,9 @@ public class DatabaseConfig {
         config.setMaxLifetime(1800000);
         config.setLeakDetectionThreshold(60000);
 
+        // Không mở connection đồng bộ khi khởi tạo pool; StartupWarmup fill minimumIdle ở background
+        config.setInitializationFailTimeout(-1);
+
         // Connection validation
         config.setConnectionTestQuery("SELECT 1");
         config.setValidationTimeout(5000);
@@ -85,6 +124,7 @@ public class DatabaseConfig {
         // Performance tuning
         config.setAutoCommit(false);
         config.setPoolName("UserManagementHikariPool");
+        config.setMetricsTrackerFactory(poolLatencyRecorder(meterRegistry));
 
         // Additional properties
         Properties dsProperties = new Properties();
@@ -94,6 +134,7 @@ public class DatabaseConfig {
         dsProperties.setProperty("useServerPrepStmts", "true");
         dsProperties.setProperty("useLocalSessionState", "true");
         dsProperties.setProperty("rewriteBatchedStatements", "true");
+        dsProperties.setProperty("useCursorFetch", "true");
         dsProperties.setProperty("cacheResultSetMetadata", "true");
         dsProperties.setProperty("cacheServerConfiguration", "true");
         dsProperties.setProperty("elideSetAutoCommits", "true");
@@ -104,6 +145,38 @@ public class DatabaseConfig {
         return new HikariDataSource(config);
     }
 
+    /**
+     * Acquire latency recorder cho adaptive pool sizing; delegate tới Micrometer để giữ hikaricp.* metrics
+     */
+    @Bean
+    public PoolLatencyRecorder poolLatencyRecorder(ObjectProvider<MeterRegistry> meterRegistry) {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        return new PoolLatencyRecorder(registry != null ? new MicrometerMetricsTrackerFactory(registry) : null);
+    }
+
+    /**
+     * Routing DataSource: @Transactional(readOnly = true) đi tới replica pool
+     */
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource() {
+        ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(userDataSource(), analyticsDataSource,
+                maxReplicaLagSeconds, readYourWritesMillis);
+        if (clusterSticky) {
+            // Read-your-writes giữa các instances: request kế tiếp có thể tới node khác sau load balancer
+            routingDataSource.setStickyStore(new StringRedisTemplate(redisConnectionFactory));
+        }
+        return routingDataSource;
+    }
+
+    /**
+     * Lazy proxy để connection chỉ được lấy sau khi readOnly flag của transaction đã set
+     */
+    @Bean
+    @Primary
+    public DataSource routingDataSource() {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource());
+    }
+
     /**
      * JPA Entity Manager Factory
      */
@@ -112,9 +185,10 @@ public class DatabaseConfig {
     public LocalContainerEntityManagerFactoryBean userEntityManagerFactory() {
         LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
 
-        factory.setDataSource(userDataSource());
+        factory.setDataSource(routingDataSource());
         factory.setPackagesToScan("com.codeprefency.usermanagement.entity");
         factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factory.setBootstrapExecutor(jpaBootstrapExecutor);
 
         Properties jpaProperties = new Properties();
         jpaProperties.setProperty("hibernate.hbm2ddl.auto", hibernateDdlAuto);
@@ -130,20 +204,113 @@ public class DatabaseConfig {
         jpaProperties.setProperty("hibernate.jdbc.batch_versioned_data", "true");
         jpaProperties.setProperty("hibernate.connection.provider_disables_autocommit", "true");
 
-        // Second level cache
+        // Second level cache: JCache (Caffeine), regions cấu hình trong secondLevelCacheManager()
+        // Entities của SecondLevelCacheRegion được bật qua hibernate.classcache (chỉ khi class có trong persistence unit);
+        // entities khác opt-in bằng @Cacheable + @Cache(region = ...). Region chưa được cấu hình vẫn boot
+        // được (provider defaults) nhưng log warning để bổ sung vào SecondLevelCacheRegion
         jpaProperties.setProperty("hibernate.cache.use_second_level_cache", "true");
         jpaProperties.setProperty("hibernate.cache.use_query_cache", "true");
-        jpaProperties.setProperty("hibernate.cache.region.factory_class", "org.hibernate.cache.ehcache.SingletonEhCacheRegionFactory");
+        jpaProperties.setProperty("hibernate.cache.region.factory_class", "jcache");
+        jpaProperties.setProperty("hibernate.javax.cache.missing_cache_strategy", "create-warn");
+        jpaProperties.setProperty("javax.persistence.sharedCache.mode", "ENABLE_SELECTIVE");
+        for (SecondLevelCacheRegion region : SecondLevelCacheRegion.values()) {
+            if (region.getEntityClassName() != null && isEntityPresent(region.getEntityClassName())) {
+                jpaProperties.setProperty("hibernate.classcache." + region.getEntityClassName(),
+                                          "read-write," + region.getRegionName());
+            }
+        }
 
-        // Statistics (for monitoring)
-        jpaProperties.setProperty("hibernate.generate_statistics", "true");
-        jpaProperties.setProperty("hibernate.session.events.log", "true");
+        // Statistics: tắt mặc định, bật runtime qua HibernateStatisticsSampler
+        jpaProperties.setProperty("hibernate.generate_statistics", "false");
+        jpaProperties.setProperty("hibernate.session.events.log", "false");
 
         factory.setJpaProperties(jpaProperties);
+        factory.getJpaPropertyMap().put("hibernate.session_factory.interceptor", hibernateStatisticsSampler());
+        factory.getJpaPropertyMap().put("hibernate.javax.cache.cache_manager", secondLevelCacheManager());
 
         return factory;
     }
 
+    /**
+     * classcache với entity không có trong persistence unit làm Hibernate fail lúc boot
+     */
+    private static boolean isEntityPresent(String className) {
+        ClassLoader classLoader = DatabaseConfig.class.getClassLoader();
+        if (!ClassUtils.isPresent(className, classLoader)) {
+            return false;
+        }
+        return ClassUtils.resolveClassName(className, classLoader).isAnnotationPresent(Entity.class);
+    }
+
+    /**
+     * Request deadline cho database retries (X-Request-Timeout-Ms)
+     */
+    @Bean
+    public FilterRegistrationBean<RequestDeadlineFilter> requestDeadlineFilter(
+            @Value("${database.retry.default-request-timeout-ms:10000}") long defaultTimeoutMillis,
+            @Value("${database.retry.max-request-timeout-ms:60000}") long maxTimeoutMillis) {
+        FilterRegistrationBean<RequestDeadlineFilter> registration =
+            new FilterRegistrationBean<>(new RequestDeadlineFilter(defaultTimeoutMillis, maxTimeoutMillis));
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+
+    /**
+     * JCache (Caffeine) CacheManager cho Hibernate second-level cache
+     * Mỗi entity region có max entries và TTL riêng (cache.l2.regions.<region>.*)
+     */
+    @Bean
+    public CacheManager secondLevelCacheManager() {
+        CacheManager cacheManager = Caching
+            .getCachingProvider("com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider")
+            .getCacheManager();
+
+        for (SecondLevelCacheRegion region : SecondLevelCacheRegion.values()) {
+            long maxEntries = environment.getProperty(
+                "cache.l2.regions." + region.getRegionName() + ".max-entries", Long.class, region.getDefaultMaxEntries());
+            Duration ttl = environment.getProperty(
+                "cache.l2.regions." + region.getRegionName() + ".ttl", Duration.class, region.getDefaultTtl());
+            createRegion(cacheManager, region.getRegionName(), maxEntries, ttl);
+        }
+
+        // Query cache regions
+        createRegion(cacheManager, "default-query-results-region", 5000, Duration.ofMinutes(5));
+        createRegion(cacheManager, "default-update-timestamps-region", 10000, null);
+        return cacheManager;
+    }
+
+    private void createRegion(CacheManager cacheManager, String regionName, long maxEntries, Duration ttl) {
+        if (cacheManager.getCache(regionName) != null) {
+            return;
+        }
+
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(maxEntries));
+        if (ttl != null) {
+            configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        }
+        configuration.setStatisticsEnabled(true);
+        cacheManager.createCache(regionName, configuration);
+    }
+
+    /**
+     * Sampled Hibernate statistics, toggle runtime không cần redeploy
+     */
+    @Bean
+    public HibernateStatisticsSampler hibernateStatisticsSampler() {
+        return new HibernateStatisticsSampler(hibernateStatsEnabled, hibernateStatsSampleRate, hibernateSlowQueryMillis);
+    }
+
+    @Bean
+    public FilterRegistrationBean<HibernateSamplingFilter> hibernateSamplingFilter() {
+        FilterRegistrationBean<HibernateSamplingFilter> registration =
+            new FilterRegistrationBean<>(new HibernateSamplingFilter(hibernateStatisticsSampler()));
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(Ordered.LOWEST_PRECEDENCE);
+        return registration;
+    }
+
     /**
      * JPA Transaction Manager
      */
@@ -163,7 +330,8 @@ public class DatabaseConfig {
 @EnableJpaRepositories(
     basePackages = "com.codeprefency.usermanagement.analytics.repository",
     entityManagerFactoryRef = "analyticsEntityManagerFactory",
-    transactionManagerRef = "analyticsTransactionManager"
+    transactionManagerRef = "analyticsTransactionManager",
+    bootstrapMode = BootstrapMode.LAZY
 )
 class AnalyticsDatabaseConfig {
 
@@ -190,7 +358,9 @@ class AnalyticsDatabaseConfig {
         config.setMinimumIdle(2);
         config.setConnectionTimeout(10000);
         config.setReadOnly(true);
-        config.setAutoCommit(true);
+        // Cùng pool với reads của userEntityManagerFactory (provider_disables_autocommit=true): Hibernate không tự tắt autocommit
+        config.setAutoCommit(false);
+        config.setInitializationFailTimeout(-1);
 
         return new HikariDataSource(config);
     }
@@ -202,6 +372,7 @@ class AnalyticsDatabaseConfig {
         factory.setDataSource(analyticsDataSource());
         factory.setPackagesToScan("com.codeprefency.usermanagement.analytics.entity");
         factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factory.setBootstrapExecutor(new SimpleAsyncTaskExecutor("analytics-jpa-bootstrap-"));
 
         Properties jpaProperties = new Properties();
         jpaProperties.setProperty("hibernate.dialect", "org.hibernate.dialect.MySQL8Dialect");
@@ -221,6 +392,164 @@ class AnalyticsDatabaseConfig {
     }
 }
 
+/**
+ * Read/Write DataSource Routing
+ * readOnly transactions đi tới replica pool, fallback về primary khi replica lag hoặc sau khi user vừa ghi
+ */
+class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+    static final String REPLICA = "replica";
+    private static final String STICKY_KEY_PREFIX = "routing:sticky:";
+
+    private final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private final DataSource replicaDataSource;
+    private final long maxReplicaLagSeconds;
+    private final long stickinessMillis;
+
+    private final Map<String, Long> stickyUntil = new ConcurrentHashMap<>();
+    private volatile StringRedisTemplate stickyStore;
+    private volatile boolean replicaHealthy = true;
+    private volatile long replicaLagSeconds = 0;
+
+    private final AtomicLong primaryWrites = new AtomicLong();
+    private final AtomicLong primaryReads = new AtomicLong();
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong lagFallbacks = new AtomicLong();
+    private final AtomicLong stickyFallbacks = new AtomicLong();
+
+    ReplicaRoutingDataSource(DataSource primaryDataSource, DataSource replicaDataSource,
+                             long maxReplicaLagSeconds, long stickinessMillis) {
+        this.replicaDataSource = replicaDataSource;
+        this.maxReplicaLagSeconds = maxReplicaLagSeconds;
+        this.stickinessMillis = stickinessMillis;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primaryDataSource);
+        targets.put(REPLICA, replicaDataSource);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primaryDataSource);
+    }
+
+    /**
+     * Shared sticky markers (Redis, TTL = stickiness); không set thì read-your-writes chỉ trong JVM này
+     */
+    void setStickyStore(StringRedisTemplate stickyStore) {
+        this.stickyStore = stickyStore;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String principal = currentPrincipal();
+
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            // Read-your-writes: các reads tiếp theo của user này đi primary trong một khoảng ngắn
+            if (TransactionSynchronizationManager.isActualTransactionActive() && principal != null) {
+                markSticky(principal);
+            }
+            primaryWrites.incrementAndGet();
+            return PRIMARY;
+        }
+
+        if (principal != null && isSticky(principal)) {
+            stickyFallbacks.incrementAndGet();
+            primaryReads.incrementAndGet();
+            return PRIMARY;
+        }
+
+        if (!replicaHealthy) {
+            lagFallbacks.incrementAndGet();
+            primaryReads.incrementAndGet();
+            return PRIMARY;
+        }
+
+        replicaReads.incrementAndGet();
+        return REPLICA;
+    }
+
+    /**
+     * Kiểm tra replica lag định kỳ
+     */
+    @Scheduled(fixedDelayString = "${datasource.routing.lag-check-ms:5000}")
+    public void checkReplicaLag() {
+        try (Connection conn = replicaDataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SHOW REPLICA STATUS")) {
+
+            if (rs.next()) {
+                long lag = rs.getLong("Seconds_Behind_Source");
+                // NULL nghĩa là replication đã dừng
+                replicaHealthy = !rs.wasNull() && lag <= maxReplicaLagSeconds;
+                replicaLagSeconds = lag;
+            } else {
+                // Không phải replica (ví dụ dev/test) - coi như không lag
+                replicaHealthy = true;
+                replicaLagSeconds = 0;
+            }
+        } catch (SQLException e) {
+            if (replicaHealthy) {
+                logger.warn("Replica health check failed, routing reads to primary", e);
+            }
+            replicaHealthy = false;
+        }
+
+        long now = System.currentTimeMillis();
+        stickyUntil.values().removeIf(until -> until <= now);
+    }
+
+    public Map<String, Object> getRoutingStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("replicaHealthy", replicaHealthy);
+        stats.put("replicaLagSeconds", replicaLagSeconds);
+        stats.put("primaryWrites", primaryWrites.get());
+        stats.put("primaryReads", primaryReads.get());
+        stats.put("replicaReads", replicaReads.get());
+        stats.put("lagFallbacks", lagFallbacks.get());
+        stats.put("stickyFallbacks", stickyFallbacks.get());
+        stats.put("stickyUsers", stickyUntil.size());
+        return stats;
+    }
+
+    private void markSticky(String principal) {
+        long now = System.currentTimeMillis();
+        Long previous = stickyUntil.put(principal, now + stickinessMillis);
+        StringRedisTemplate store = stickyStore;
+        // Chỉ refresh marker dùng chung khi đã qua nửa TTL, tránh một round trip Redis mỗi write transaction
+        if (store == null || (previous != null && previous - now > stickinessMillis / 2)) {
+            return;
+        }
+        try {
+            store.opsForValue().set(STICKY_KEY_PREFIX + principal, "1", Duration.ofMillis(stickinessMillis));
+        } catch (Exception e) {
+            // Best-effort: marker local vẫn có hiệu lực trên instance này
+            logger.debug("Failed to publish sticky marker for {}", principal, e);
+        }
+    }
+
+    private boolean isSticky(String principal) {
+        Long until = stickyUntil.get(principal);
+        if (until != null && until > System.currentTimeMillis()) {
+            return true;
+        }
+        StringRedisTemplate store = stickyStore;
+        if (store == null) {
+            return false;
+        }
+        try {
+            return Boolean.TRUE.equals(store.hasKey(STICKY_KEY_PREFIX + principal));
+        } catch (Exception e) {
+            // Redis lỗi: không dồn toàn bộ reads về primary, chỉ còn marker local
+            return false;
+        }
+    }
+
+    private String currentPrincipal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.isAuthenticated() ? authentication.getName() : null;
+    }
+}
+
 /**
  * Database Health Check Configuration
  */
@@ -228,47 +557,390 @@ class AnalyticsDatabaseConfig {
 class DatabaseHealthConfig {
 
     @Bean
-    public DatabaseHealthIndicator databaseHealthIndicator(DataSource dataSource) {
-        return new DatabaseHealthIndicator(dataSource);
+    public DatabaseHealthIndicator databaseHealthIndicator(HealthProbeRegistry healthProbeRegistry) {
+        return new DatabaseHealthIndicator(healthProbeRegistry);
+    }
+
+    /**
+     * Thay readinessState indicator mặc định (readiness group): REFUSING_TRAFFIC cho tới khi startup warm-up xong.
+     * Không publish AvailabilityChangeEvent nên không phụ thuộc thứ tự listeners của Spring Boot
+     */
+    @Bean("readinessStateHealthIndicator")
+    public ReadinessStateHealthIndicator readinessStateHealthIndicator(ApplicationAvailability availability,
+                                                                       StartupWarmup startupWarmup) {
+        return new ReadinessStateHealthIndicator(availability) {
+            @Override
+            protected AvailabilityState getState(ApplicationAvailability applicationAvailability) {
+                return startupWarmup.isWarm() ? super.getState(applicationAvailability) : ReadinessState.REFUSING_TRAFFIC;
+            }
+        };
     }
 }
 
 /**
  * Custom Database Health Indicator
+ * Đọc kết quả database probe đã cache thay vì mở connection mỗi lần probe
  */
 @Component
 class DatabaseHealthIndicator implements HealthIndicator {
 
-    private final DataSource dataSource;
-    private final Logger logger = LoggerFactory.getLogger(DatabaseHealthIndicator.class);
+    private final HealthProbeRegistry healthProbeRegistry;
 
-    public DatabaseHealthIndicator(DataSource dataSource) {
-        this.dataSource = dataSource;
+    public DatabaseHealthIndicator(HealthProbeRegistry healthProbeRegistry) {
+        this.healthProbeRegistry = healthProbeRegistry;
     }
 
     @Override
     public Health health() {
-        try (Connection connection = dataSource.getConnection()) {
-            // Test basic connectivity
-            try (PreparedStatement statement = connection.prepareStatement("SELECT 1")) {
-                statement.execute();
+        HealthProbeResult result = healthProbeRegistry.getResult("database");
+        Health.Builder builder = HealthProbeResult.UP.equals(result.status) ? Health.up() : Health.down();
+        builder.withDetails(result.details).withDetail("ageMs", result.ageMillis());
+        if (result.error != null) {
+            builder.withDetail("error", result.error);
+        }
+        return builder.build();
+    }
+}
+
+/**
+ * Kết quả probe được cache: status, details, thời điểm check và latency percentiles của các lần probe gần nhất
+ */
+class HealthProbeResult {
+
+    static final String UP = "UP";
+    static final String DOWN = "DOWN";
+    static final String UNKNOWN = "UNKNOWN";
+
+    final String status;
+    final Map<String, Object> details;
+    final String error;
+    final Instant checkedAt;
+    final long durationMillis;
+
+    HealthProbeResult(String status, Map<String, Object> details, String error, Instant checkedAt, long durationMillis) {
+        this.status = status;
+        this.details = details;
+        this.error = error;
+        this.checkedAt = checkedAt;
+        this.durationMillis = durationMillis;
+    }
+
+    long ageMillis() {
+        return checkedAt == null ? -1 : Duration.between(checkedAt, Instant.now()).toMillis();
+    }
+
+    Map<String, Object> toMap(boolean includeDetails) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("status", status);
+        map.put("ageMs", ageMillis());
+        map.put("checkedAt", checkedAt);
+        if (error != null) {
+            map.put("error", error);
+        }
+        if (includeDetails) {
+            map.put("durationMs", durationMillis);
+            map.put("details", details);
+        }
+        return map;
+    }
+}
+
+/**
+ * Health probes chạy async theo schedule riêng với timeout, endpoints chỉ đọc kết quả cache
+ * Mỗi probe: health.probe.<name>.interval-ms / timeout-ms; kết quả cũ hơn 3 intervals được coi là UNKNOWN
+ */
+@Component
+class HealthProbeRegistry {
+
+    private static final int LATENCY_WINDOW = 128;
+    private static final Set<String> CRITICAL_PROBES = Set.of("database");
+    // Một thread mỗi probe: inFlight giữ tối đa một check đang chạy cho mỗi probe
+    private static final int PROBE_THREADS = 5;
+
+    private final Logger logger = LoggerFactory.getLogger(HealthProbeRegistry.class);
+    private final Map<String, Probe> probes = new LinkedHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "health-probe-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Bounded: probe bị treo chỉ giữ thread của chính nó tới khi client timeout trả về
+    private final ExecutorService probeExecutor = new ThreadPoolExecutor(PROBE_THREADS, PROBE_THREADS,
+        60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(PROBE_THREADS), runnable -> {
+            Thread thread = new Thread(runnable, "health-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    @Qualifier("userDataSource")
+    private HikariDataSource userDataSource;
+
+    @Autowired
+    @Lazy
+    private RedisConnectionFactory redisConnectionFactory;
+
+    @Autowired
+    @Lazy
+    @Qualifier("userMongoTemplate")
+    private MongoTemplate userMongoTemplate;
+
+    @Autowired
+    @Lazy
+    private RestHighLevelClient elasticsearchClient;
+
+    @Autowired
+    private ObjectProvider<JavaMailSender> mailSender;
+
+    // Pool một connection riêng cho probe: userDataSource bão hoà không làm database probe (và readiness) DOWN
+    private HikariDataSource probeDataSource;
+
+    @PostConstruct
+    public void start() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(userDataSource.getJdbcUrl());
+        config.setUsername(userDataSource.getUsername());
+        config.setPassword(userDataSource.getPassword());
+        config.setDriverClassName(userDataSource.getDriverClassName());
+        config.setMaximumPoolSize(1);
+        config.setMinimumIdle(1);
+        config.setConnectionTimeout(environment.getProperty("health.probe.database.timeout-ms", Long.class, 2000L));
+        config.setInitializationFailTimeout(-1);
+        config.setPoolName("HealthProbePool");
+        probeDataSource = new HikariDataSource(config);
+
+        register("database", 5000, 2000, this::probeDatabase);
+        register("redis", 5000, 1000, this::probeRedis);
+        register("mongo", 15000, 2000, this::probeMongo);
+        register("elasticsearch", 15000, 2000, this::probeElasticsearch);
+        register("smtp", 60000, 5000, this::probeSmtp);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        probeExecutor.shutdownNow();
+        if (probeDataSource != null) {
+            probeDataSource.close();
+        }
+    }
+
+    private void register(String name, long defaultIntervalMillis, long defaultTimeoutMillis, Callable<Map<String, Object>> check) {
+        if (!environment.getProperty("health.probe." + name + ".enabled", Boolean.class, true)) {
+            return;
+        }
+        long interval = environment.getProperty("health.probe." + name + ".interval-ms", Long.class, defaultIntervalMillis);
+        long timeout = environment.getProperty("health.probe." + name + ".timeout-ms", Long.class, defaultTimeoutMillis);
+
+        Probe probe = new Probe(name, interval, timeout, check);
+        probes.put(name, probe);
+        // Initial delay lệch nhau để các probes không cùng lúc chạm datastores
+        long initialDelay = ThreadLocalRandom.current().nextLong(Math.min(interval, 1000) + 1);
+        scheduler.scheduleWithFixedDelay(() -> runProbe(probe), initialDelay, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void runProbe(Probe probe) {
+        if (!probe.inFlight.compareAndSet(false, true)) {
+            return;
+        }
 
-                // Get database metadata
-                DatabaseMetaData metaData = connection.getMetaData();
-                Map<String, Object> details = new HashMap<>();
-                details.put("databaseProductName", metaData.getDatabaseProductName());
-                details.put("databaseProductVersion", metaData.getDatabaseProductVersion());
-                details.put("driverName", metaData.getDriverName());
-                details.put("driverVersion", metaData.getDriverVersion());
+        long startNanos = System.nanoTime();
+        CompletableFuture<Map<String, Object>> check;
+        try {
+            check = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return probe.check.call();
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                } finally {
+                    // Chỉ clear khi check thực sự kết thúc, không phải khi timeout
+                    probe.inFlight.set(false);
+                }
+            }, probeExecutor);
+        } catch (RejectedExecutionException e) {
+            probe.inFlight.set(false);
+            probe.result = new HealthProbeResult(HealthProbeResult.DOWN, Map.of(), "Probe executor saturated", Instant.now(), 0);
+            return;
+        }
+
+        // Timeout trên bản copy để future gốc (và inFlight) vẫn theo check đang chạy
+        check.copy()
+            .orTimeout(probe.timeoutMillis, TimeUnit.MILLISECONDS)
+            .whenComplete((details, failure) -> {
+                long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                probe.recordLatency(durationMillis);
+                if (failure == null) {
+                    probe.result = new HealthProbeResult(HealthProbeResult.UP, details, null, Instant.now(), durationMillis);
+                } else {
+                    Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                    String error = cause instanceof TimeoutException
+                        ? "Timed out after " + probe.timeoutMillis + "ms"
+                        : String.valueOf(cause.getMessage());
+                    if (HealthProbeResult.UP.equals(probe.result.status)) {
+                        logger.warn("Health probe {} is DOWN: {}", probe.name, error);
+                    }
+                    probe.result = new HealthProbeResult(HealthProbeResult.DOWN, Map.of(), error, Instant.now(), durationMillis);
+                }
+            });
+    }
 
-                return Health.up().withDetails(details).build();
+    private Map<String, Object> probeDatabase() throws SQLException {
+        try (Connection connection = probeDataSource.getConnection()) {
+            if (!connection.isValid(2)) {
+                throw new SQLException("Connection validation failed");
             }
-        } catch (SQLException e) {
-            logger.error("Database health check failed", e);
-            return Health.down()
-                    .withException(e)
-                    .withDetail("error", e.getMessage())
-                    .build();
+            DatabaseMetaData metaData = connection.getMetaData();
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("databaseProductName", metaData.getDatabaseProductName());
+            details.put("databaseProductVersion", metaData.getDatabaseProductVersion());
+            details.put("driverName", metaData.getDriverName());
+            details.put("driverVersion", metaData.getDriverVersion());
+            HikariPoolMXBean pool = userDataSource.getHikariPoolMXBean();
+            if (pool != null) {
+                details.put("poolThreadsAwaiting", pool.getThreadsAwaitingConnection());
+            }
+            return details;
+        }
+    }
+
+    private Map<String, Object> probeRedis() {
+        try (RedisConnection connection = redisConnectionFactory.getConnection()) {
+            return Map.of("ping", String.valueOf(connection.ping()));
+        }
+    }
+
+    private Map<String, Object> probeMongo() {
+        Document result = userMongoTemplate.executeCommand("{ ping: 1 }");
+        return Map.of("ok", result.get("ok"));
+    }
+
+    private Map<String, Object> probeElasticsearch() throws IOException {
+        if (!elasticsearchClient.ping(RequestOptions.DEFAULT)) {
+            throw new IOException("Elasticsearch ping returned false");
+        }
+        return Map.of("ping", true);
+    }
+
+    private Map<String, Object> probeSmtp() throws MessagingException {
+        JavaMailSender sender = mailSender.getIfAvailable();
+        if (!(sender instanceof JavaMailSenderImpl)) {
+            return Map.of("configured", false);
+        }
+        JavaMailSenderImpl mailSenderImpl = (JavaMailSenderImpl) sender;
+        // Probe trên bản copy có socket timeouts, không đụng vào sender dùng để gửi mail
+        String timeout = String.valueOf(getProbeTimeout("smtp"));
+        JavaMailSenderImpl probeSender = new JavaMailSenderImpl();
+        probeSender.setHost(mailSenderImpl.getHost());
+        probeSender.setPort(mailSenderImpl.getPort());
+        probeSender.setProtocol(mailSenderImpl.getProtocol());
+        probeSender.setUsername(mailSenderImpl.getUsername());
+        probeSender.setPassword(mailSenderImpl.getPassword());
+        Properties properties = new Properties();
+        properties.putAll(mailSenderImpl.getJavaMailProperties());
+        properties.setProperty("mail.smtp.connectiontimeout", timeout);
+        properties.setProperty("mail.smtp.timeout", timeout);
+        properties.setProperty("mail.smtp.writetimeout", timeout);
+        probeSender.setJavaMailProperties(properties);
+        probeSender.testConnection();
+        return Map.of("host", String.valueOf(mailSenderImpl.getHost()));
+    }
+
+    private long getProbeTimeout(String name) {
+        Probe probe = probes.get(name);
+        return probe != null ? probe.timeoutMillis : 5000;
+    }
+
+    /**
+     * Kết quả cache; stale (quá 3 intervals, ví dụ probe thread bị treo) trả về UNKNOWN
+     */
+    public HealthProbeResult getResult(String name) {
+        Probe probe = probes.get(name);
+        if (probe == null) {
+            return new HealthProbeResult(HealthProbeResult.UNKNOWN, Map.of(), "Probe disabled", null, 0);
+        }
+        HealthProbeResult result = probe.result;
+        if (result.checkedAt != null && result.ageMillis() > probe.intervalMillis * 3 + probe.timeoutMillis) {
+            return new HealthProbeResult(HealthProbeResult.UNKNOWN, result.details, "Stale result",
+                                         result.checkedAt, result.durationMillis);
+        }
+        return result;
+    }
+
+    /**
+     * DOWN khi critical probe (database) không UP, DEGRADED khi probe khác DOWN
+     */
+    public String getOverallStatus() {
+        String overall = HealthProbeResult.UP;
+        for (String name : probes.keySet()) {
+            String status = getResult(name).status;
+            if (CRITICAL_PROBES.contains(name) && !HealthProbeResult.UP.equals(status)) {
+                return HealthProbeResult.DOWN;
+            }
+            if (HealthProbeResult.DOWN.equals(status)) {
+                overall = "DEGRADED";
+            }
+        }
+        return overall;
+    }
+
+    public Map<String, Object> getSummary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        for (String name : probes.keySet()) {
+            summary.put(name, getResult(name).toMap(false));
+        }
+        return summary;
+    }
+
+    public Map<String, Object> getDetailedResults() {
+        Map<String, Object> results = new LinkedHashMap<>();
+        probes.forEach((name, probe) -> {
+            Map<String, Object> result = getResult(name).toMap(true);
+            result.put("intervalMs", probe.intervalMillis);
+            result.put("timeoutMs", probe.timeoutMillis);
+            result.put("latency", probe.latencyPercentiles());
+            results.put(name, result);
+        });
+        return results;
+    }
+
+    private static class Probe {
+        final String name;
+        final long intervalMillis;
+        final long timeoutMillis;
+        final Callable<Map<String, Object>> check;
+        final AtomicBoolean inFlight = new AtomicBoolean(false);
+        final long[] latencies = new long[LATENCY_WINDOW];
+        int latencyCount = 0;
+        volatile HealthProbeResult result = new HealthProbeResult(HealthProbeResult.UNKNOWN, Map.of(), "Not checked yet", null, 0);
+
+        Probe(String name, long intervalMillis, long timeoutMillis, Callable<Map<String, Object>> check) {
+            this.name = name;
+            this.intervalMillis = intervalMillis;
+            this.timeoutMillis = timeoutMillis;
+            this.check = check;
+        }
+
+        synchronized void recordLatency(long millis) {
+            latencies[latencyCount % LATENCY_WINDOW] = millis;
+            latencyCount++;
+        }
+
+        synchronized Map<String, Object> latencyPercentiles() {
+            int count = Math.min(latencyCount, LATENCY_WINDOW);
+            Map<String, Object> percentiles = new LinkedHashMap<>();
+            percentiles.put("samples", count);
+            if (count == 0) {
+                return percentiles;
+            }
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            percentiles.put("p50Ms", sorted[(int) Math.ceil(count * 0.50) - 1]);
+            percentiles.put("p99Ms", sorted[(int) Math.ceil(count * 0.99) - 1]);
+            percentiles.put("maxMs", sorted[count - 1]);
+            return percentiles;
         }
     }
 }
@@ -303,52 +975,482 @@ class FlywayConfig {
 }
 
 /**
- * Redis Configuration cho caching và session storage
+ * Online data migration: backfill chunked theo primary key range, chạy background ngoài Flyway
+ * Flyway chỉ giữ schema changes nhanh (ADD COLUMN nullable, CREATE INDEX online); data backfill đăng ký ở đây.
+ * Rows insert sau khi migration bắt đầu (key > max_key) phải được application ghi đúng format mới
  */
-@Configuration
-@EnableCaching
-class RedisConfig {
+interface OnlineDataMigration {
 
-    @Value("${spring.redis.host}")
-    private String redisHost;
+    String getId();
 
-    @Value("${spring.redis.port}")
-    private int redisPort;
+    String getTable();
 
-    @Value("${spring.redis.password}")
-    private String redisPassword;
+    default String getKeyColumn() {
+        return "id";
+    }
 
-    @Value("${spring.redis.timeout}")
-    private int redisTimeout;
+    /**
+     * Migrate rows có key trong (fromKey, toKey]; chạy trong transaction của runner, không commit ở đây
+     */
+    int migrateChunk(Connection connection, long fromKey, long toKey) throws SQLException;
+}
 
-    @Bean
-    public JedisConnectionFactory jedisConnectionFactory() {
-        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration();
-        config.setHostName(redisHost);
-        config.setPort(redisPort);
-        config.setPassword(redisPassword);
+/**
+ * Online migration từ một SQL statement với hai placeholders (fromKey, toKey)
+ * Ví dụ: UPDATE orders SET total_cents = ROUND(total * 100) WHERE id > ? AND id <= ? AND total_cents IS NULL
+ */
+class SqlOnlineDataMigration implements OnlineDataMigration {
 
-        JedisConnectionFactory factory = new JedisConnectionFactory(config);
-        return factory;
+    private final String id;
+    private final String table;
+    private final String chunkSql;
+
+    SqlOnlineDataMigration(String id, String table, String chunkSql) {
+        this.id = id;
+        this.table = table;
+        this.chunkSql = chunkSql;
     }
 
-    @Bean
-    public RedisTemplate<String, Object> redisTemplate() {
-        RedisTemplate<String, Object> template = new RedisTemplate<>();
-        template.setConnectionFactory(jedisConnectionFactory());
+    @Override
+    public String getId() {
+        return id;
+    }
 
-        // Set serializers
-        template.setKeySerializer(new StringRedisSerializer());
-        template.setValueSerializer(new GenericJackson2JsonRedisSerializer());
-        template.setHashKeySerializer(new StringRedisSerializer());
-        template.setHashValueSerializer(new GenericJackson2JsonRedisSerializer());
+    @Override
+    public String getTable() {
+        return table;
+    }
 
-        return template;
+    @Override
+    public int migrateChunk(Connection connection, long fromKey, long toKey) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(chunkSql)) {
+            stmt.setLong(1, fromKey);
+            stmt.setLong(2, toKey);
+            return stmt.executeUpdate();
+        }
     }
+}
 
-    @Bean
-    public RedisCacheManager cacheManager(RedisConnectionFactory redisConnectionFactory) {
-        RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
+/**
+ * Online migration runner
+ * - Progress trong online_data_migrations, cập nhật cùng transaction với chunk nên resume chính xác sau crash
+ * - Lease (owner + lease_until) để chỉ một instance chạy mỗi migration
+ * - Chunk size adaptive: giảm khi replica lag hoặc p99 query latency vượt ngưỡng, tăng khi chunk nhanh hơn target
+ * - Pause/resume qua status column (PAUSED), runner dừng ở chunk kế tiếp
+ */
+@Component
+class OnlineMigrationRunner {
+
+    static final String PENDING = "PENDING";
+    static final String RUNNING = "RUNNING";
+    static final String PAUSED = "PAUSED";
+    static final String COMPLETED = "COMPLETED";
+    static final String FAILED = "FAILED";
+
+    private final Logger logger = LoggerFactory.getLogger(OnlineMigrationRunner.class);
+    private final String owner = UUID.randomUUID().toString();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile boolean tableCreated = false;
+    private final Map<String, Integer> currentChunkSizes = new ConcurrentHashMap<>();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "online-migration");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DataSource dataSource;
+    private final DatabaseUtils databaseUtils;
+    private final DatabaseRetryExecutor retryExecutor;
+    private final ReplicaRoutingDataSource replicaRoutingDataSource;
+    private final QueryPerformanceMonitor queryPerformanceMonitor;
+    private final List<OnlineDataMigration> migrations;
+
+    @Value("${migration.online.enabled:true}")
+    private boolean enabled;
+
+    @Value("${migration.online.initial-chunk-size:1000}")
+    private int initialChunkSize;
+
+    @Value("${migration.online.min-chunk-size:100}")
+    private int minChunkSize;
+
+    @Value("${migration.online.max-chunk-size:20000}")
+    private int maxChunkSize;
+
+    @Value("${migration.online.target-chunk-ms:200}")
+    private long targetChunkMillis;
+
+    @Value("${migration.online.throttle-ms:50}")
+    private long throttleMillis;
+
+    @Value("${migration.online.max-replica-lag-seconds:2}")
+    private long maxReplicaLagSeconds;
+
+    @Value("${migration.online.max-p99-ms:250}")
+    private double maxP99Millis;
+
+    @Value("${migration.online.backoff-ms:5000}")
+    private long backoffMillis;
+
+    @Value("${migration.online.lease-seconds:60}")
+    private int leaseSeconds;
+
+    public OnlineMigrationRunner(@Qualifier("userDataSource") DataSource dataSource,
+                                 DatabaseUtils databaseUtils,
+                                 DatabaseRetryExecutor retryExecutor,
+                                 ReplicaRoutingDataSource replicaRoutingDataSource,
+                                 QueryPerformanceMonitor queryPerformanceMonitor,
+                                 @Autowired(required = false) List<OnlineDataMigration> migrations) {
+        this.dataSource = dataSource;
+        this.databaseUtils = databaseUtils;
+        this.retryExecutor = retryExecutor;
+        this.replicaRoutingDataSource = replicaRoutingDataSource;
+        this.queryPerformanceMonitor = queryPerformanceMonitor;
+        this.migrations = migrations != null ? migrations : new ArrayList<>();
+    }
+
+    /**
+     * Tạo progress table lần đầu cần tới (worker hoặc admin endpoints), không chặn startup bằng DDL
+     */
+    private void ensureTable() {
+        if (tableCreated) {
+            return;
+        }
+        databaseUtils.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS online_data_migrations (" +
+            "  id VARCHAR(128) NOT NULL PRIMARY KEY," +
+            "  table_name VARCHAR(128) NOT NULL," +
+            "  status VARCHAR(16) NOT NULL," +
+            "  last_key BIGINT NOT NULL DEFAULT 0," +
+            "  max_key BIGINT NULL," +
+            "  rows_migrated BIGINT NOT NULL DEFAULT 0," +
+            "  chunk_size INT NOT NULL," +
+            "  owner VARCHAR(64) NULL," +
+            "  lease_until DATETIME(6) NULL," +
+            "  started_at DATETIME(6) NULL," +
+            "  completed_at DATETIME(6) NULL," +
+            "  updated_at DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6)," +
+            "  last_error VARCHAR(1000) NULL)");
+        tableCreated = true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    /**
+     * Poll định kỳ; migration chạy trên worker riêng để không chiếm scheduler thread
+     */
+    @Scheduled(fixedDelayString = "${migration.online.poll-ms:30000}",
+               initialDelayString = "${migration.online.initial-delay-ms:60000}")
+    public void schedulePending() {
+        if (!enabled || migrations.isEmpty() || !running.compareAndSet(false, true)) {
+            return;
+        }
+
+        worker.submit(() -> {
+            try {
+                ensureTable();
+                for (OnlineDataMigration migration : migrations) {
+                    register(migration);
+                    if (claim(migration)) {
+                        run(migration);
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Online migration poll failed", e);
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    private void register(OnlineDataMigration migration) {
+        databaseUtils.executeUpdate(
+            "INSERT IGNORE INTO online_data_migrations (id, table_name, status, chunk_size) VALUES (?, ?, ?, ?)",
+            migration.getId(), migration.getTable(), PENDING, initialChunkSize);
+    }
+
+    /**
+     * Claim PENDING migration, hoặc RUNNING migration mà lease đã hết hạn (instance trước đã chết)
+     */
+    private boolean claim(OnlineDataMigration migration) {
+        return databaseUtils.executeUpdate(
+            "UPDATE online_data_migrations SET status = ?, owner = ?, " +
+            "  lease_until = NOW(6) + INTERVAL ? SECOND, started_at = COALESCE(started_at, NOW(6)), last_error = NULL " +
+            "WHERE id = ? AND (status = ? OR (status = ? AND (owner = ? OR lease_until < NOW(6))))",
+            RUNNING, owner, leaseSeconds, migration.getId(), PENDING, RUNNING, owner) == 1;
+    }
+
+    private void run(OnlineDataMigration migration) {
+        String id = migration.getId();
+        Map<String, Object> progress = loadProgress(id);
+        long lastKey = ((Number) progress.get("lastKey")).longValue();
+        int chunkSize = ((Number) progress.get("chunkSize")).intValue();
+
+        Long maxKey = (Long) progress.get("maxKey");
+        if (maxKey == null) {
+            maxKey = databaseUtils.executeQuery(
+                "SELECT COALESCE(MAX(" + migration.getKeyColumn() + "), 0) FROM " + migration.getTable(),
+                rs -> {
+                    try {
+                        rs.next();
+                        return rs.getLong(1);
+                    } catch (SQLException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            databaseUtils.executeUpdate("UPDATE online_data_migrations SET max_key = ? WHERE id = ?", maxKey, id);
+        }
+
+        logger.info("Online migration {} on {} resuming at key {} of {}", id, migration.getTable(), lastKey, maxKey);
+
+        try {
+            while (lastKey < maxKey && !Thread.currentThread().isInterrupted()) {
+                String pressure = loadPressure();
+                if (pressure != null) {
+                    chunkSize = Math.max(minChunkSize, chunkSize / 2);
+                    currentChunkSizes.put(id, chunkSize);
+                    logger.debug("Online migration {} backing off ({}), chunk size {}", id, pressure, chunkSize);
+                    if (!renewLease(id)) {
+                        return;
+                    }
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backoffMillis));
+                    continue;
+                }
+
+                long fromKey = lastKey;
+                long toKey = Math.min(maxKey, lastKey + chunkSize);
+                long startNanos = System.nanoTime();
+                if (!applyChunk(migration, fromKey, toKey, chunkSize)) {
+                    logger.info("Online migration {} paused or lost its lease at key {}", id, fromKey);
+                    return;
+                }
+                long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                lastKey = toKey;
+
+                // Giữ thời gian mỗi chunk quanh target: lock ngắn, replication events nhỏ
+                if (elapsedMillis > targetChunkMillis * 3 / 2) {
+                    chunkSize = (int) Math.max(minChunkSize, chunkSize * targetChunkMillis / Math.max(1, elapsedMillis));
+                } else if (elapsedMillis < targetChunkMillis) {
+                    chunkSize = Math.min(maxChunkSize, chunkSize + Math.max(1, chunkSize / 4));
+                }
+                currentChunkSizes.put(id, chunkSize);
+
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(throttleMillis));
+            }
+
+            if (lastKey >= maxKey) {
+                databaseUtils.executeUpdate(
+                    "UPDATE online_data_migrations SET status = ?, completed_at = NOW(6), owner = NULL, lease_until = NULL " +
+                    "WHERE id = ? AND owner = ?", COMPLETED, id, owner);
+                currentChunkSizes.remove(id);
+                logger.info("Online migration {} completed", id);
+            }
+
+        } catch (Exception e) {
+            logger.error("Online migration {} failed at key {}", id, lastKey, e);
+            String message = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+            databaseUtils.executeUpdate(
+                "UPDATE online_data_migrations SET status = ?, owner = NULL, lease_until = NULL, last_error = ? " +
+                "WHERE id = ? AND owner = ?",
+                FAILED, message.substring(0, Math.min(message.length(), 1000)), id, owner);
+        }
+    }
+
+    /**
+     * Chunk + progress trong cùng transaction; progress update có điều kiện status/owner nên pause hoặc
+     * mất lease sẽ rollback chunk hiện tại
+     */
+    private boolean applyChunk(OnlineDataMigration migration, long fromKey, long toKey, int chunkSize) {
+        return retryExecutor.execute("onlineMigration", () -> {
+            try (Connection conn = dataSource.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    int migrated = migration.migrateChunk(conn, fromKey, toKey);
+
+                    int updated;
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            "UPDATE online_data_migrations SET last_key = ?, rows_migrated = rows_migrated + ?, chunk_size = ?, " +
+                            "  lease_until = NOW(6) + INTERVAL ? SECOND " +
+                            "WHERE id = ? AND status = ? AND owner = ? AND last_key = ?")) {
+                        stmt.setLong(1, toKey);
+                        stmt.setLong(2, migrated);
+                        stmt.setInt(3, chunkSize);
+                        stmt.setInt(4, leaseSeconds);
+                        stmt.setString(5, migration.getId());
+                        stmt.setString(6, RUNNING);
+                        stmt.setString(7, owner);
+                        stmt.setLong(8, fromKey);
+                        updated = stmt.executeUpdate();
+                    }
+
+                    if (updated != 1) {
+                        conn.rollback();
+                        return false;
+                    }
+                    conn.commit();
+                    return true;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+        });
+    }
+
+    private boolean renewLease(String id) {
+        return databaseUtils.executeUpdate(
+            "UPDATE online_data_migrations SET lease_until = NOW(6) + INTERVAL ? SECOND WHERE id = ? AND status = ? AND owner = ?",
+            leaseSeconds, id, RUNNING, owner) == 1;
+    }
+
+    /**
+     * Lý do cần back off, hoặc null khi database đủ rảnh
+     */
+    private String loadPressure() {
+        Map<String, Object> routing = replicaRoutingDataSource.getRoutingStats();
+        long lagSeconds = ((Number) routing.get("replicaLagSeconds")).longValue();
+        if (!Boolean.TRUE.equals(routing.get("replicaHealthy")) || lagSeconds > maxReplicaLagSeconds) {
+            return "replica lag " + lagSeconds + "s";
+        }
+        double p99 = queryPerformanceMonitor.getAggregateP99Millis();
+        if (p99 > maxP99Millis) {
+            return "query p99 " + p99 + "ms";
+        }
+        return null;
+    }
+
+    private Map<String, Object> loadProgress(String id) {
+        return databaseUtils.executeQuery(
+            "SELECT last_key, max_key, chunk_size FROM online_data_migrations WHERE id = ?",
+            rs -> {
+                try {
+                    rs.next();
+                    Map<String, Object> progress = new HashMap<>();
+                    progress.put("lastKey", rs.getLong("last_key"));
+                    long maxKey = rs.getLong("max_key");
+                    progress.put("maxKey", rs.wasNull() ? null : maxKey);
+                    progress.put("chunkSize", rs.getInt("chunk_size"));
+                    return progress;
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            },
+            id);
+    }
+
+    public boolean pause(String id) {
+        ensureTable();
+        return databaseUtils.executeUpdate(
+            "UPDATE online_data_migrations SET status = ? WHERE id = ? AND status IN (?, ?)",
+            PAUSED, id, PENDING, RUNNING) == 1;
+    }
+
+    /**
+     * Resume PAUSED hoặc retry FAILED migration từ last_key
+     */
+    public boolean resume(String id) {
+        ensureTable();
+        boolean resumed = databaseUtils.executeUpdate(
+            "UPDATE online_data_migrations SET status = ?, owner = NULL, lease_until = NULL WHERE id = ? AND status IN (?, ?)",
+            PENDING, id, PAUSED, FAILED) == 1;
+        if (resumed) {
+            schedulePending();
+        }
+        return resumed;
+    }
+
+    public List<Map<String, Object>> getMigrations() {
+        ensureTable();
+        return databaseUtils.executeQuery(
+            "SELECT id, table_name, status, last_key, max_key, rows_migrated, chunk_size, owner, " +
+            "  started_at, completed_at, updated_at, last_error FROM online_data_migrations ORDER BY id",
+            rs -> {
+                try {
+                    List<Map<String, Object>> result = new ArrayList<>();
+                    while (rs.next()) {
+                        Map<String, Object> migration = new LinkedHashMap<>();
+                        migration.put("id", rs.getString("id"));
+                        migration.put("table", rs.getString("table_name"));
+                        migration.put("status", rs.getString("status"));
+                        long lastKey = rs.getLong("last_key");
+                        long maxKey = rs.getLong("max_key");
+                        boolean maxKnown = !rs.wasNull();
+                        migration.put("lastKey", lastKey);
+                        migration.put("maxKey", maxKnown ? maxKey : null);
+                        migration.put("percentComplete", maxKnown && maxKey > 0 ? Math.min(100.0, lastKey * 100.0 / maxKey) : null);
+                        migration.put("rowsMigrated", rs.getLong("rows_migrated"));
+                        migration.put("chunkSize", currentChunkSizes.getOrDefault(rs.getString("id"), rs.getInt("chunk_size")));
+                        migration.put("owner", rs.getString("owner"));
+                        migration.put("startedAt", rs.getTimestamp("started_at"));
+                        migration.put("completedAt", rs.getTimestamp("completed_at"));
+                        migration.put("updatedAt", rs.getTimestamp("updated_at"));
+                        migration.put("lastError", rs.getString("last_error"));
+                        result.add(migration);
+                    }
+                    return result;
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+    }
+}
+
+/**
+ * Redis Configuration cho caching và session storage
+ */
+@Configuration
+@EnableCaching
+class RedisConfig {
+
+    @Value("${spring.redis.host}")
+    private String redisHost;
+
+    @Value("${spring.redis.port}")
+    private int redisPort;
+
+    @Value("${spring.redis.password}")
+    private String redisPassword;
+
+    @Value("${spring.redis.timeout}")
+    private int redisTimeout;
+
+    @Bean
+    public JedisConnectionFactory jedisConnectionFactory() {
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration();
+        config.setHostName(redisHost);
+        config.setPort(redisPort);
+        config.setPassword(redisPassword);
+
+        // Timeouts client-side để lệnh treo (kể cả health probe) trả lỗi thay vì block thread
+        JedisClientConfiguration clientConfig = JedisClientConfiguration.builder()
+                .connectTimeout(Duration.ofMillis(redisTimeout))
+                .readTimeout(Duration.ofMillis(redisTimeout))
+                .build();
+
+        JedisConnectionFactory factory = new JedisConnectionFactory(config, clientConfig);
+        return factory;
+    }
+
+    @Bean
+    public RedisTemplate<String, Object> redisTemplate() {
+        RedisTemplate<String, Object> template = new RedisTemplate<>();
+        template.setConnectionFactory(jedisConnectionFactory());
+
+        // Set serializers
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setHashValueSerializer(new GenericJackson2JsonRedisSerializer());
+
+        return template;
+    }
+
+    @Bean
+    public RedisCacheManager cacheManager(RedisConnectionFactory redisConnectionFactory) {
+        RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
                 .entryTtl(Duration.ofHours(1))
                 .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
                 .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(new GenericJackson2JsonRedisSerializer()));
@@ -380,11 +1482,25 @@ class MongoConfig {
     @Value("${spring.data.mongodb.database}")
     private String database;
 
+    @Value("${spring.data.mongodb.connect-timeout-ms:2000}")
+    private int connectTimeoutMillis;
+
+    @Value("${spring.data.mongodb.read-timeout-ms:5000}")
+    private int readTimeoutMillis;
+
+    @Value("${spring.data.mongodb.server-selection-timeout-ms:2000}")
+    private int serverSelectionTimeoutMillis;
+
     @Bean
     public MongoClient mongoClient() {
         ConnectionString connectionString = new ConnectionString(mongoUri);
         MongoClientSettings mongoClientSettings = MongoClientSettings.builder()
                 .applyConnectionString(connectionString)
+                .applyToSocketSettings(builder -> builder
+                        .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                        .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS))
+                .applyToClusterSettings(builder -> builder
+                        .serverSelectionTimeout(serverSelectionTimeoutMillis, TimeUnit.MILLISECONDS))
                 .build();
 
         return MongoClients.create(mongoClientSettings);
@@ -408,12 +1524,20 @@ class ElasticsearchConfig {
     @Value("${elasticsearch.port}")
     private int elasticsearchPort;
 
+    @Value("${elasticsearch.connect-timeout-ms:2000}")
+    private int connectTimeoutMillis;
+
+    @Value("${elasticsearch.socket-timeout-ms:10000}")
+    private int socketTimeoutMillis;
+
     @Bean
     public RestHighLevelClient elasticsearchClient() {
         return new RestHighLevelClient(
                 RestClient.builder(
                         new HttpHost(elasticsearchHost, elasticsearchPort, "http")
-                )
+                ).setRequestConfigCallback(requestConfig -> requestConfig
+                        .setConnectTimeout(connectTimeoutMillis)
+                        .setSocketTimeout(socketTimeoutMillis))
         );
     }
 
@@ -424,502 +1548,3993 @@ class ElasticsearchConfig {
 }
 
 /**
- * Database Utilities và Helper Methods
+ * Startup: đánh dấu lazy-init cho các datastore độc lập (startup.lazy-beans)
+ * Beans này được khởi tạo khi dùng lần đầu hoặc bởi StartupWarmup ở background
  */
 @Component
-class DatabaseUtils {
+class StartupLazyInitializer implements BeanFactoryPostProcessor, EnvironmentAware {
 
-    private final DataSource dataSource;
-    private final Logger logger = LoggerFactory.getLogger(DatabaseUtils.class);
+    private static final String DEFAULT_LAZY_BEANS =
+        "analyticsDataSource,analyticsEntityManagerFactory,analyticsTransactionManager," +
+        "mongoClient,userMongoTemplate,elasticsearchClient,elasticsearchTemplate";
 
-    public DatabaseUtils(DataSource dataSource) {
-        this.dataSource = dataSource;
-    }
+    private final Logger logger = LoggerFactory.getLogger(StartupLazyInitializer.class);
+    private Environment environment;
 
-    /**
-     * Execute query với automatic retry và connection management
-     */
-    public <T> T executeQuery(String sql, Function<ResultSet, T> mapper, Object... params) {
-        return executeWithRetry(() -> {
-            try (Connection conn = dataSource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
 
-                // Set parameters
-                for (int i = 0; i < params.length; i++) {
-                    stmt.setObject(i + 1, params[i]);
-                }
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+        if (!environment.getProperty("startup.lazy-datastores", Boolean.class, true)) {
+            return;
+        }
 
-                try (ResultSet rs = stmt.executeQuery()) {
-                    return mapper.apply(rs);
-                }
+        List<String> lazyBeans = new ArrayList<>();
+        for (String beanName : environment.getProperty("startup.lazy-beans", DEFAULT_LAZY_BEANS).split(",")) {
+            String name = beanName.trim();
+            if (!name.isEmpty() && beanFactory.containsBeanDefinition(name)) {
+                beanFactory.getBeanDefinition(name).setLazyInit(true);
+                lazyBeans.add(name);
             }
-        });
+        }
+        logger.info("Lazy datastore beans: {}", lazyBeans);
     }
+}
 
-    /**
-     * Execute update với transaction support
-     */
-    public int executeUpdate(String sql, Object... params) {
-        return executeWithRetry(() -> {
-            try (Connection conn = dataSource.getConnection()) {
-                conn.setAutoCommit(false);
+/**
+ * Startup warm-up và readiness gate
+ * Sau khi context started: fill Hikari minimumIdle, chờ Hibernate metamodel, ping Redis/Mongo/Elasticsearch song song.
+ * Readiness probe (readinessStateHealthIndicator trong DatabaseHealthConfig) báo REFUSING_TRAFFIC tới khi isWarm()
+ */
+@Component
+class StartupWarmup {
 
-                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                    for (int i = 0; i < params.length; i++) {
-                        stmt.setObject(i + 1, params[i]);
-                    }
+    private final Logger logger = LoggerFactory.getLogger(StartupWarmup.class);
+    private final AtomicBoolean warm = new AtomicBoolean(false);
+    private final Map<String, Object> taskResults = new ConcurrentHashMap<>();
+    private volatile long warmupMillis = -1;
+    private volatile boolean failed;
 
-                    int result = stmt.executeUpdate();
-                    conn.commit();
+    @Autowired
+    private ConfigurableApplicationContext applicationContext;
 
-                    return result;
-                } catch (SQLException e) {
-                    conn.rollback();
-                    throw e;
-                }
-            }
-        });
-    }
+    @Autowired
+    @Qualifier("userDataSource")
+    private HikariDataSource userDataSource;
 
-    /**
-     * Batch insert với performance optimization
-     */
-    public int[] batchInsert(String sql, List<List<Object>> batchParams) {
-        return executeWithRetry(() -> {
-            try (Connection conn = dataSource.getConnection()) {
-                conn.setAutoCommit(false);
+    @Autowired
+    @Lazy
+    @Qualifier("userEntityManagerFactory")
+    private EntityManagerFactory entityManagerFactory;
 
-                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                    for (List<Object> params : batchParams) {
-                        for (int i = 0; i < params.size(); i++) {
-                            stmt.setObject(i + 1, params.get(i));
-                        }
-                        stmt.addBatch();
-                    }
+    @Autowired
+    @Lazy
+    private RedisConnectionFactory redisConnectionFactory;
 
-                    int[] results = stmt.executeBatch();
-                    conn.commit();
+    @Autowired
+    @Lazy
+    @Qualifier("userMongoTemplate")
+    private MongoTemplate userMongoTemplate;
 
-                    return results;
-                } catch (SQLException e) {
-                    conn.rollback();
-                    throw e;
+    @Autowired
+    @Lazy
+    private RestHighLevelClient elasticsearchClient;
+
+    @Value("${startup.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${startup.warmup.timeout-ms:30000}")
+    private long timeoutMillis;
+
+    @Value("${startup.warmup.retry-delay-ms:2000}")
+    private long retryDelayMillis;
+
+    @Value("${startup.warmup.required-deadline-ms:300000}")
+    private long requiredDeadlineMillis;
+
+    @Value("${startup.warmup.exit-on-failure:false}")
+    private boolean exitOnFailure;
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void startWarmup() {
+        if (!enabled) {
+            warm.set(true);
+            return;
+        }
+
+        Thread warmupThread = new Thread(this::runWarmup, "startup-warmup");
+        warmupThread.setDaemon(true);
+        warmupThread.start();
+    }
+
+    private void runWarmup() {
+        long startNanos = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "startup-warmup-task");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            // Required: không nhận traffic khi database/Hibernate chưa sẵn sàng, retry tới deadline
+            long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(requiredDeadlineMillis);
+            while (!runTasks(executor, Map.of(
+                    "database", this::warmDatabasePool,
+                    "hibernate", this::warmHibernate), true)) {
+                if (System.nanoTime() - deadlineNanos >= 0) {
+                    failWarmup(startNanos);
+                    return;
                 }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(retryDelayMillis));
             }
-        });
+
+            // Optional: cache/NoSQL/search lỗi chỉ log, không chặn readiness
+            runTasks(executor, Map.of(
+                "redis", this::warmRedis,
+                "mongo", this::warmMongo,
+                "elasticsearch", this::warmElasticsearch), false);
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        warmupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        warm.set(true);
+        logger.info("Startup warm-up completed in {}ms: {}", warmupMillis, taskResults);
     }
 
     /**
-     * Execute với retry logic cho transient failures
+     * Required tasks không thành công trước deadline: readiness giữ REFUSING_TRAFFIC, status báo failed;
+     * exit-on-failure=true thoát process để orchestrator restart thay vì pod không bao giờ ready
      */
-    private <T> T executeWithRetry(Supplier<T> operation) {
-        int maxRetries = 3;
-        long retryDelay = 1000; // milliseconds
-
-        for (int attempt = 1; attempt <= maxRetries; attempt++) {
-            try {
-                return operation.get();
-            } catch (SQLException e) {
-                if (attempt == maxRetries || !isRetryableException(e)) {
-                    logger.error("Database operation failed after {} attempts", maxRetries, e);
-                    throw new RuntimeException("Database operation failed", e);
-                }
+    private void failWarmup(long startNanos) {
+        warmupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        failed = true;
+        logger.error("Startup warm-up failed after {}ms, required tasks did not succeed: {}", warmupMillis, taskResults);
+        if (exitOnFailure) {
+            System.exit(SpringApplication.exit(applicationContext, () -> 1));
+        }
+    }
 
-                logger.warn("Database operation failed, retrying in {}ms (attempt {}/{})",
-                           retryDelay, attempt, maxRetries);
+    private boolean runTasks(ExecutorService executor, Map<String, Runnable> tasks, boolean required) {
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        tasks.forEach((name, task) -> futures.put(name, CompletableFuture.runAsync(() -> timed(name, task), executor)
+            .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)));
 
-                try {
-                    Thread.sleep(retryDelay);
-                    retryDelay *= 2; // Exponential backoff
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    throw new RuntimeException("Retry interrupted", ie);
+        boolean success = true;
+        for (Map.Entry<String, CompletableFuture<Void>> entry : futures.entrySet()) {
+            try {
+                entry.getValue().join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                taskResults.put(entry.getKey(), "FAILED: " + cause.getMessage());
+                success = false;
+                if (required) {
+                    logger.error("Required warm-up task {} failed, retrying: {}", entry.getKey(), cause.getMessage());
+                } else {
+                    logger.warn("Optional warm-up task {} failed: {}", entry.getKey(), cause.getMessage());
                 }
             }
         }
-
-        throw new RuntimeException("Should not reach here");
+        return success;
     }
 
-    private boolean isRetryableException(SQLException e) {
-        // Check for transient SQL exceptions
-        String sqlState = e.getSQLState();
-        int errorCode = e.getErrorCode();
-
-        // MySQL transient errors
-        return (sqlState != null && sqlState.startsWith("08")) || // Connection errors
-               errorCode == 1205 || // Lock wait timeout
-               errorCode == 1213 || // Deadlock
-               errorCode == 2006 || // Connection lost
-               errorCode == 2013;   // Connection lost during query
+    private void timed(String name, Runnable task) {
+        long startNanos = System.nanoTime();
+        task.run();
+        taskResults.put(name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + "ms");
     }
 
     /**
-     * Get database statistics
+     * Pool start với initializationFailTimeout=-1; mở đủ minimumIdle connections song song ở đây
      */
-    public Map<String, Object> getDatabaseStats() {
-        Map<String, Object> stats = new HashMap<>();
+    private void warmDatabasePool() {
+        int connections = Math.max(1, userDataSource.getMinimumIdle());
+        List<Connection> borrowed = new ArrayList<>();
+        try {
+            List<CompletableFuture<Connection>> futures = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        Connection connection = userDataSource.getConnection();
+                        connection.isValid(5);
+                        return connection;
+                    } catch (SQLException e) {
+                        throw new CompletionException(e);
+                    }
+                }));
+            }
+            for (CompletableFuture<Connection> future : futures) {
+                borrowed.add(future.join());
+            }
+        } finally {
+            for (Connection connection : borrowed) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    logger.debug("Could not return warm-up connection: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * EntityManagerFactory được build ở background (bootstrap executor); chờ xong và chạm metamodel
+     */
+    private void warmHibernate() {
+        int entities = entityManagerFactory.getMetamodel().getEntities().size();
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        entityManager.close();
+        logger.debug("Hibernate metamodel ready with {} entities", entities);
+    }
+
+    private void warmRedis() {
+        try (RedisConnection connection = redisConnectionFactory.getConnection()) {
+            connection.ping();
+        }
+    }
+
+    private void warmMongo() {
+        userMongoTemplate.executeCommand("{ ping: 1 }");
+    }
+
+    private void warmElasticsearch() {
+        try {
+            elasticsearchClient.ping(RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public boolean isWarm() {
+        return warm.get();
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    public Map<String, Object> getWarmupStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("warm", warm.get());
+        status.put("failed", failed);
+        status.put("durationMs", warmupMillis);
+        status.put("tasks", new LinkedHashMap<>(taskResults));
+        return status;
+    }
+}
+
+/**
+ * Startup timing per bean
+ * Đọc timeline từ BufferingApplicationStartup (set trong main) và log các beans khởi tạo chậm nhất
+ */
+@Component
+class StartupTimingReporter {
+
+    private final ApplicationStartup applicationStartup;
+    private final Logger logger = LoggerFactory.getLogger(StartupTimingReporter.class);
+    private volatile List<Map<String, Object>> slowestBeans = new ArrayList<>();
+
+    @Value("${startup.timing.top-beans:15}")
+    private int topBeans;
+
+    public StartupTimingReporter(ApplicationStartup applicationStartup) {
+        this.applicationStartup = applicationStartup;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reportBeanTimings() {
+        if (!(applicationStartup instanceof BufferingApplicationStartup)) {
+            return;
+        }
+
+        // Thời gian inclusive: bao gồm cả dependencies được khởi tạo bên trong
+        StartupTimeline timeline = ((BufferingApplicationStartup) applicationStartup).getBufferedTimeline();
+        slowestBeans = timeline.getEvents().stream()
+            .filter(event -> "spring.beans.instantiate".equals(event.getStartupStep().getName()))
+            .sorted(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed())
+            .limit(topBeans)
+            .map(event -> {
+                Map<String, Object> bean = new LinkedHashMap<>();
+                for (StartupStep.Tag tag : event.getStartupStep().getTags()) {
+                    if ("beanName".equals(tag.getKey())) {
+                        bean.put("bean", tag.getValue());
+                    }
+                }
+                bean.put("durationMs", event.getDuration().toMillis());
+                return bean;
+            })
+            .collect(Collectors.toList());
+
+        logger.info("Startup took {}ms, slowest beans: {}",
+                   Duration.between(timeline.getStartTime(), Instant.now()).toMillis(), slowestBeans);
+    }
+
+    public List<Map<String, Object>> getSlowestBeans() {
+        return slowestBeans;
+    }
+}
+
+/**
+ * JDBC operation có thể throw SQLException, dùng cho retry executor
+ */
+@FunctionalInterface
+interface SqlOperation<T> {
+    T execute() throws SQLException;
+}
+
+/**
+ * Phân loại SQL failures: conflict (retry ngay với backoff ngắn), connection (retry với backoff),
+ * permanent (không retry)
+ */
+enum SqlFailureClass {
+    TRANSIENT_CONFLICT, TRANSIENT_CONNECTION, PERMANENT
+}
+
+/**
+ * Classifier dựa trên SQLException hierarchy (JDBC 4), SQLState class và vendor codes,
+ * duyệt cả cause chain và getNextException
+ */
+class SqlExceptionClassifier {
+
+    // MySQL: deadlock, lock wait timeout, server gone away, lost connection, too many connections, read-only (failover)
+    private static final Set<Integer> CONFLICT_CODES = Set.of(1213, 1205);
+    private static final Set<Integer> CONNECTION_CODES = Set.of(2006, 2013, 1040, 1290, 1836);
+
+    private final Set<Integer> extraRetryableCodes;
+
+    SqlExceptionClassifier(Set<Integer> extraRetryableCodes) {
+        this.extraRetryableCodes = extraRetryableCodes;
+    }
+
+    SqlFailureClass classify(Throwable failure) {
+        SqlFailureClass result = SqlFailureClass.PERMANENT;
+        Set<Throwable> seen = new HashSet<>();
+        Throwable current = failure;
+
+        while (current != null && seen.add(current)) {
+            if (current instanceof SQLException) {
+                SQLException sqlException = (SQLException) current;
+                for (SQLException next = sqlException; next != null; next = next.getNextException()) {
+                    SqlFailureClass classified = classifySingle(next);
+                    if (classified == SqlFailureClass.TRANSIENT_CONFLICT) {
+                        return classified;
+                    }
+                    if (classified == SqlFailureClass.TRANSIENT_CONNECTION) {
+                        result = classified;
+                    }
+                    if (next.getNextException() == next) {
+                        break;
+                    }
+                }
+            }
+            current = current.getCause();
+        }
+        return result;
+    }
+
+    private SqlFailureClass classifySingle(SQLException e) {
+        String sqlState = e.getSQLState();
+        int errorCode = e.getErrorCode();
+
+        if (e instanceof SQLTransactionRollbackException
+                || CONFLICT_CODES.contains(errorCode)
+                || (sqlState != null && sqlState.startsWith("40"))) {
+            return SqlFailureClass.TRANSIENT_CONFLICT;
+        }
+        if (e instanceof SQLNonTransientException && !(e instanceof SQLNonTransientConnectionException)) {
+            // Integrity, syntax, data errors
+            return SqlFailureClass.PERMANENT;
+        }
+        if (e instanceof SQLTransientException
+                || e instanceof SQLRecoverableException
+                || e instanceof SQLNonTransientConnectionException
+                || CONNECTION_CODES.contains(errorCode)
+                || extraRetryableCodes.contains(errorCode)
+                || (sqlState != null && sqlState.startsWith("08"))) {
+            return SqlFailureClass.TRANSIENT_CONNECTION;
+        }
+        return SqlFailureClass.PERMANENT;
+    }
+}
+
+/**
+ * Retry budget dạng token ratio: mỗi request thành công nạp `ratio` token, mỗi retry tiêu 1 token.
+ * Retries luôn bị giới hạn ở ~ratio × traffic, nên số nodes trong cluster không khuếch đại retry storm.
+ */
+class RetryBudget {
+
+    private static final long SCALE = 1000;
+
+    private final long depositPerSuccess;
+    private final long maxTokens;
+    private final AtomicLong tokens;
+
+    RetryBudget(double ratio, int maxTokens) {
+        this.depositPerSuccess = Math.round(ratio * SCALE);
+        this.maxTokens = maxTokens * SCALE;
+        this.tokens = new AtomicLong(this.maxTokens);
+    }
+
+    void onSuccess() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= maxTokens) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(maxTokens, current + depositPerSuccess)));
+    }
+
+    boolean tryWithdraw() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    double available() {
+        return (double) tokens.get() / SCALE;
+    }
+}
+
+/**
+ * Request deadline (System.nanoTime) cho thread hiện tại; set bởi RequestDeadlineFilter
+ */
+final class RequestDeadline {
+
+    private static final ThreadLocal<Long> DEADLINE_NANOS = new ThreadLocal<>();
+
+    private RequestDeadline() {
+    }
+
+    static void set(long timeoutMillis) {
+        DEADLINE_NANOS.set(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    static void clear() {
+        DEADLINE_NANOS.remove();
+    }
+
+    /**
+     * Remaining nanos, hoặc Long.MAX_VALUE nếu không có deadline
+     */
+    static long remainingNanos() {
+        Long deadline = DEADLINE_NANOS.get();
+        return deadline == null ? Long.MAX_VALUE : deadline - System.nanoTime();
+    }
+}
+
+/**
+ * Đọc timeout budget từ X-Request-Timeout-Ms (hoặc default) và propagate qua RequestDeadline
+ */
+class RequestDeadlineFilter extends OncePerRequestFilter {
+
+    static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
+    private final long defaultTimeoutMillis;
+    private final long maxTimeoutMillis;
+
+    RequestDeadlineFilter(long defaultTimeoutMillis, long maxTimeoutMillis) {
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        this.maxTimeoutMillis = maxTimeoutMillis;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long timeout = defaultTimeoutMillis;
+        String header = request.getHeader(TIMEOUT_HEADER);
+        if (header != null) {
+            try {
+                timeout = Math.min(maxTimeoutMillis, Math.max(0, Long.parseLong(header.trim())));
+            } catch (NumberFormatException ignored) {
+                // Giữ default timeout
+            }
+        }
+
+        RequestDeadline.set(timeout);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            RequestDeadline.clear();
+        }
+    }
+}
+
+/**
+ * Retry executor cho DatabaseUtils: decorrelated-jitter backoff, retry budget, deadline, metrics
+ */
+@Component
+class DatabaseRetryExecutor {
+
+    private final Logger logger = LoggerFactory.getLogger(DatabaseRetryExecutor.class);
+
+    private final MeterRegistry meterRegistry;
+    private final SqlExceptionClassifier classifier;
+    private final RetryBudget budget;
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final Map<String, Map<String, Counter>> counters = new ConcurrentHashMap<>();
+
+    public DatabaseRetryExecutor(MeterRegistry meterRegistry,
+                                 @Value("${database.retry.max-attempts:4}") int maxAttempts,
+                                 @Value("${database.retry.base-delay-ms:5}") long baseDelayMillis,
+                                 @Value("${database.retry.max-delay-ms:250}") long maxDelayMillis,
+                                 @Value("${database.retry.budget-ratio:0.1}") double budgetRatio,
+                                 @Value("${database.retry.budget-max-tokens:50}") int budgetMaxTokens,
+                                 @Value("${database.retry.extra-retryable-codes:}") Set<Integer> extraRetryableCodes) {
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(baseDelayMillis);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.classifier = new SqlExceptionClassifier(extraRetryableCodes);
+        this.budget = new RetryBudget(budgetRatio, budgetMaxTokens);
+
+        Gauge.builder("db.retry.budget.tokens", budget, RetryBudget::available).register(meterRegistry);
+    }
+
+    public <T> T execute(String operation, SqlOperation<T> sqlOperation) {
+        long previousDelay = baseDelayNanos;
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = sqlOperation.execute();
+                budget.onSuccess();
+                if (attempt > 1) {
+                    count(operation, "recovered");
+                }
+                return result;
+            } catch (SQLException e) {
+                SqlFailureClass failureClass = classifier.classify(e);
+                String outcome = retryOutcome(failureClass, attempt);
+
+                long delay = 0;
+                if (outcome == null) {
+                    // Decorrelated jitter: sleep = min(cap, random(base, previous * 3))
+                    delay = Math.min(maxDelayNanos,
+                        ThreadLocalRandom.current().nextLong(baseDelayNanos, Math.max(baseDelayNanos + 1, previousDelay * 3)));
+                    if (failureClass == SqlFailureClass.TRANSIENT_CONFLICT && attempt == 1) {
+                        // Deadlock victim: retry gần như ngay lập tức lần đầu
+                        delay = Math.min(delay, baseDelayNanos);
+                    }
+                    if (RequestDeadline.remainingNanos() <= delay) {
+                        outcome = "deadline_exceeded";
+                    } else if (!budget.tryWithdraw()) {
+                        outcome = "budget_exhausted";
+                    }
+                }
+
+                if (outcome != null) {
+                    count(operation, outcome);
+                    logger.error("Database operation {} failed after {} attempt(s) ({}, {})",
+                                 operation, attempt, failureClass, outcome, e);
+                    throw new RuntimeException("Database operation failed", e);
+                }
+
+                count(operation, "retried");
+                logger.warn("Database operation {} failed ({}), retrying in {}us (attempt {}/{})",
+                            operation, failureClass, TimeUnit.NANOSECONDS.toMicros(delay), attempt, maxAttempts);
+
+                previousDelay = delay;
+                LockSupport.parkNanos(delay);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Retry interrupted", e);
+                }
+            }
+        }
+    }
+
+    SqlFailureClass classify(Throwable failure) {
+        return classifier.classify(failure);
+    }
+
+    private String retryOutcome(SqlFailureClass failureClass, int attempt) {
+        if (failureClass == SqlFailureClass.PERMANENT) {
+            return "not_retryable";
+        }
+        if (attempt >= maxAttempts) {
+            return "attempts_exhausted";
+        }
+        return null;
+    }
+
+    private void count(String operation, String outcome) {
+        counters.computeIfAbsent(operation, key -> new ConcurrentHashMap<>())
+            .computeIfAbsent(outcome, key -> Counter.builder("db.retry")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(meterRegistry))
+            .increment();
+    }
+}
+
+/**
+ * Typed parameter binding: setter theo runtime class (cache bằng ClassValue) thay vì setObject type sniffing
+ */
+final class ParameterBinders {
+
+    @FunctionalInterface
+    interface Binder {
+        void bind(PreparedStatement stmt, int index, Object value) throws SQLException;
+    }
+
+    private static final ClassValue<Binder> BINDERS = new ClassValue<Binder>() {
+        @Override
+        protected Binder computeValue(Class<?> type) {
+            return binderFor(type);
+        }
+    };
+
+    private ParameterBinders() {
+    }
+
+    static void bind(PreparedStatement stmt, Object... params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            bind(stmt, i + 1, params[i]);
+        }
+    }
+
+    static void bind(PreparedStatement stmt, List<?> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            bind(stmt, i + 1, params.get(i));
+        }
+    }
+
+    static void bind(PreparedStatement stmt, int index, Object value) throws SQLException {
+        if (value == null) {
+            stmt.setNull(index, Types.NULL);
+        } else {
+            BINDERS.get(value.getClass()).bind(stmt, index, value);
+        }
+    }
+
+    private static Binder binderFor(Class<?> type) {
+        if (type == Long.class) {
+            return (stmt, index, value) -> stmt.setLong(index, (Long) value);
+        }
+        if (type == Integer.class) {
+            return (stmt, index, value) -> stmt.setInt(index, (Integer) value);
+        }
+        if (type == String.class) {
+            return (stmt, index, value) -> stmt.setString(index, (String) value);
+        }
+        if (type == Boolean.class) {
+            return (stmt, index, value) -> stmt.setBoolean(index, (Boolean) value);
+        }
+        if (type == Double.class) {
+            return (stmt, index, value) -> stmt.setDouble(index, (Double) value);
+        }
+        if (type == BigDecimal.class) {
+            return (stmt, index, value) -> stmt.setBigDecimal(index, (BigDecimal) value);
+        }
+        if (type == LocalDateTime.class) {
+            return (stmt, index, value) -> stmt.setTimestamp(index, Timestamp.valueOf((LocalDateTime) value));
+        }
+        if (type == LocalDate.class) {
+            return (stmt, index, value) -> stmt.setDate(index, java.sql.Date.valueOf((LocalDate) value));
+        }
+        if (type == Instant.class) {
+            return (stmt, index, value) -> stmt.setTimestamp(index, Timestamp.from((Instant) value));
+        }
+        if (type == byte[].class) {
+            return (stmt, index, value) -> stmt.setBytes(index, (byte[]) value);
+        }
+        if (Enum.class.isAssignableFrom(type)) {
+            return (stmt, index, value) -> stmt.setString(index, ((Enum<?>) value).name());
+        }
+        return PreparedStatement::setObject;
+    }
+}
+
+/**
+ * Column-index-based mapper cho target class: compile một lần cho mỗi (class, column shape) từ ResultSetMetaData
+ * (driver cache với cacheResultSetMetadata), setters được bind qua LambdaMetafactory nên
+ * không có reflection trên mỗi row. Records được tạo qua canonical constructor.
+ * Plans cache theo class (ClassValue) và bounded theo số column shapes, không theo SQL text.
+ */
+final class TypedRowMapper<T> implements RowMapper<T> {
+
+    private static final int MAX_SHAPES_PER_CLASS = 32;
+    private static final ClassValue<Map<String, Compiled<?>>> PLANS = new ClassValue<>() {
+        @Override
+        protected Map<String, Compiled<?>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private final Class<T> type;
+    // Per query: mapper không được share giữa các queries có column shape khác nhau
+    private Compiled<T> compiled;
+
+    private TypedRowMapper(Class<T> type) {
+        this.type = type;
+    }
+
+    static <T> TypedRowMapper<T> of(Class<T> type) {
+        return new TypedRowMapper<>(type);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+        Compiled<T> current = compiled;
+        if (current == null || rowNum == 0) {
+            current = plan(rs.getMetaData());
+            compiled = current;
+        }
+
+        if (current.canonical != null) {
+            Object[] args = current.defaults.clone();
+            for (int i = 0; i < current.columns.length; i++) {
+                Object value = current.readers[i].read(rs, current.columns[i]);
+                if (value != null) {
+                    args[current.slots[i]] = value;
+                }
+            }
+            try {
+                return (T) current.canonical.invokeExact(args);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot construct " + type.getName(), e);
+            }
+        }
+
+        T target = current.constructor.get();
+        for (int i = 0; i < current.columns.length; i++) {
+            Object value = current.readers[i].read(rs, current.columns[i]);
+            if (value != null) {
+                current.setters[i].accept(target, value);
+            }
+        }
+        return target;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Compiled<T> plan(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        StringBuilder shape = new StringBuilder();
+        for (int i = 1; i <= columnCount; i++) {
+            shape.append(metaData.getColumnLabel(i)).append('\u0000');
+        }
+
+        Map<String, Compiled<?>> plans = PLANS.get(type);
+        Compiled<T> plan = (Compiled<T>) plans.get(shape.toString());
+        if (plan == null) {
+            plan = type.isRecord() ? compileRecord(metaData) : compile(metaData);
+            // Ad-hoc column lists không được làm cache tăng mãi: quá giới hạn thì dùng plan không cache
+            if (plans.size() < MAX_SHAPES_PER_CLASS) {
+                plans.putIfAbsent(shape.toString(), plan);
+            }
+        }
+        return plan;
+    }
+
+    private Compiled<T> compile(ResultSetMetaData metaData) throws SQLException {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            Supplier<T> constructor = constructorFor(lookup);
+
+            Map<String, Method> settersByProperty = new HashMap<>();
+            for (Method method : type.getMethods()) {
+                if (method.getName().startsWith("set") && method.getParameterCount() == 1
+                        && method.getReturnType() == void.class) {
+                    settersByProperty.put(method.getName().substring(3).toLowerCase(), method);
+                }
+            }
+
+            int columnCount = metaData.getColumnCount();
+            List<Integer> columns = new ArrayList<>();
+            List<CompiledRowShape.ColumnReader> readers = new ArrayList<>();
+            List<BiConsumer<T, Object>> setters = new ArrayList<>();
+            for (int i = 1; i <= columnCount; i++) {
+                Method setter = settersByProperty.get(propertyName(metaData.getColumnLabel(i)));
+                if (setter == null) {
+                    continue;
+                }
+                columns.add(i);
+                readers.add(readerFor(setter.getParameterTypes()[0]));
+                setters.add(setterFor(lookup, setter));
+            }
+
+            return Compiled.forBean(constructor, columns.stream().mapToInt(Integer::intValue).toArray(),
+                                    readers.toArray(new CompiledRowShape.ColumnReader[0]),
+                                    setters.toArray(new BiConsumer[0]));
+        } catch (SQLException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot compile row mapper for " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Record: columns map vào components theo tên, component không có column nhận null (hoặc 0/false cho primitives)
+     */
+    private Compiled<T> compileRecord(ResultSetMetaData metaData) throws SQLException {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            RecordComponent[] components = type.getRecordComponents();
+            Class<?>[] componentTypes = new Class<?>[components.length];
+            Object[] defaults = new Object[components.length];
+            Map<String, Integer> slotsByProperty = new HashMap<>();
+            for (int i = 0; i < components.length; i++) {
+                componentTypes[i] = components[i].getType();
+                if (componentTypes[i].isPrimitive()) {
+                    defaults[i] = MethodHandles.zero(componentTypes[i]).invoke();
+                }
+                slotsByProperty.put(components[i].getName().toLowerCase(), i);
+            }
+
+            MethodHandle canonical = lookup.findConstructor(type, MethodType.methodType(void.class, componentTypes))
+                .asSpreader(Object[].class, components.length)
+                .asType(MethodType.methodType(Object.class, Object[].class));
+
+            int columnCount = metaData.getColumnCount();
+            List<Integer> columns = new ArrayList<>();
+            List<Integer> slots = new ArrayList<>();
+            List<CompiledRowShape.ColumnReader> readers = new ArrayList<>();
+            for (int i = 1; i <= columnCount; i++) {
+                Integer slot = slotsByProperty.get(propertyName(metaData.getColumnLabel(i)));
+                if (slot == null) {
+                    continue;
+                }
+                columns.add(i);
+                slots.add(slot);
+                readers.add(readerFor(componentTypes[slot]));
+            }
+
+            return Compiled.forRecord(canonical, defaults, columns.stream().mapToInt(Integer::intValue).toArray(),
+                                      slots.stream().mapToInt(Integer::intValue).toArray(),
+                                      readers.toArray(new CompiledRowShape.ColumnReader[0]));
+        } catch (SQLException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot compile row mapper for " + type.getName(), e);
+        }
+    }
+
+    // snake_case column -> camelCase property, so khớp không phân biệt hoa thường
+    private static String propertyName(String columnLabel) {
+        return columnLabel.replace("_", "").toLowerCase();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Supplier<T> constructorFor(MethodHandles.Lookup lookup) throws Throwable {
+        MethodHandle constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+        CallSite site = LambdaMetafactory.metafactory(lookup, "get",
+            MethodType.methodType(Supplier.class),
+            MethodType.methodType(Object.class),
+            constructor,
+            MethodType.methodType(type));
+        return (Supplier<T>) site.getTarget().invoke();
+    }
+
+    @SuppressWarnings("unchecked")
+    private BiConsumer<T, Object> setterFor(MethodHandles.Lookup lookup, Method setter) throws Throwable {
+        MethodHandle handle = lookup.unreflect(setter);
+        Class<?> parameterType = setter.getParameterTypes()[0];
+        CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+            MethodType.methodType(BiConsumer.class),
+            MethodType.methodType(void.class, Object.class, Object.class),
+            handle,
+            MethodType.methodType(void.class, type, MethodType.methodType(parameterType).wrap().returnType()));
+        return (BiConsumer<T, Object>) site.getTarget().invoke();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static CompiledRowShape.ColumnReader readerFor(Class<?> propertyType) {
+        if (propertyType == long.class || propertyType == Long.class) {
+            return CompiledRowShape.readerFor(Types.BIGINT);
+        }
+        if (propertyType == int.class || propertyType == Integer.class) {
+            return CompiledRowShape.readerFor(Types.INTEGER);
+        }
+        if (propertyType == boolean.class || propertyType == Boolean.class) {
+            return CompiledRowShape.readerFor(Types.BOOLEAN);
+        }
+        if (propertyType == double.class || propertyType == Double.class) {
+            return CompiledRowShape.readerFor(Types.DOUBLE);
+        }
+        if (propertyType == BigDecimal.class) {
+            return CompiledRowShape.readerFor(Types.DECIMAL);
+        }
+        if (propertyType == String.class) {
+            return CompiledRowShape.readerFor(Types.VARCHAR);
+        }
+        if (propertyType == LocalDateTime.class) {
+            return CompiledRowShape.readerFor(Types.TIMESTAMP);
+        }
+        if (propertyType == LocalDate.class) {
+            return CompiledRowShape.readerFor(Types.DATE);
+        }
+        if (propertyType.isEnum()) {
+            Class<? extends Enum> enumType = (Class<? extends Enum>) propertyType;
+            return (rs, index) -> {
+                String value = rs.getString(index);
+                return value == null ? null : Enum.valueOf(enumType, value);
+            };
+        }
+        return (rs, index) -> rs.getObject(index, propertyType);
+    }
+
+    private static final class Compiled<T> {
+        final int[] columns;
+        final CompiledRowShape.ColumnReader[] readers;
+        // Bean: no-arg constructor + setters
+        final Supplier<T> constructor;
+        final BiConsumer<T, Object>[] setters;
+        // Record: canonical constructor (Object[] -> Object), slot của mỗi column trong arguments
+        final MethodHandle canonical;
+        final Object[] defaults;
+        final int[] slots;
+
+        private Compiled(int[] columns, CompiledRowShape.ColumnReader[] readers, Supplier<T> constructor,
+                         BiConsumer<T, Object>[] setters, MethodHandle canonical, Object[] defaults, int[] slots) {
+            this.columns = columns;
+            this.readers = readers;
+            this.constructor = constructor;
+            this.setters = setters;
+            this.canonical = canonical;
+            this.defaults = defaults;
+            this.slots = slots;
+        }
+
+        static <T> Compiled<T> forBean(Supplier<T> constructor, int[] columns,
+                                       CompiledRowShape.ColumnReader[] readers, BiConsumer<T, Object>[] setters) {
+            return new Compiled<>(columns, readers, constructor, setters, null, null, null);
+        }
+
+        static <T> Compiled<T> forRecord(MethodHandle canonical, Object[] defaults, int[] columns, int[] slots,
+                                         CompiledRowShape.ColumnReader[] readers) {
+            return new Compiled<>(columns, readers, null, null, canonical, defaults, slots);
+        }
+    }
+}
+
+/**
+ * Forward-only cursor (connection + statement + result set) cho streaming reads
+ * Close idempotent, được gọi khi đọc hết, khi lỗi, hoặc khi stream/subscription bị đóng
+ */
+class StreamingCursor implements AutoCloseable {
+
+    private final Connection connection;
+    private final PreparedStatement statement;
+    private final ResultSet resultSet;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private StreamingCursor(Connection connection, PreparedStatement statement, ResultSet resultSet) {
+        this.connection = connection;
+        this.statement = statement;
+        this.resultSet = resultSet;
+    }
+
+    static StreamingCursor open(DataSource dataSource, String sql, int fetchSize, Object... params) {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+            conn = dataSource.getConnection();
+            stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // useCursorFetch=true: fetchSize > 0 dùng server-side cursor thay vì buffer toàn bộ result
+            stmt.setFetchSize(fetchSize);
+            ParameterBinders.bind(stmt, params);
+            return new StreamingCursor(conn, stmt, stmt.executeQuery());
+        } catch (SQLException e) {
+            closeQuietly(stmt);
+            closeQuietly(conn);
+            throw new RuntimeException("Streaming query failed", e);
+        }
+    }
+
+    ResultSet getResultSet() {
+        return resultSet;
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            closeQuietly(resultSet);
+            closeQuietly(statement);
+            closeQuietly(connection);
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable resource) {
+        if (resource != null) {
+            try {
+                resource.close();
+            } catch (Exception ignored) {
+                // Best effort
+            }
+        }
+    }
+}
+
+/**
+ * Spliterator đọc từng row khi tryAdvance, không materialize result
+ */
+class ResultSetSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+    private final StreamingCursor cursor;
+    private final RowMapper<T> rowMapper;
+    private int rowNum = 0;
+
+    ResultSetSpliterator(StreamingCursor cursor, RowMapper<T> rowMapper) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.cursor = cursor;
+        this.rowMapper = rowMapper;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        try {
+            ResultSet rs = cursor.getResultSet();
+            if (!rs.next()) {
+                cursor.close();
+                return false;
+            }
+            action.accept(rowMapper.mapRow(rs, rowNum++));
+            return true;
+        } catch (SQLException e) {
+            cursor.close();
+            throw new RuntimeException("Streaming read failed at row " + rowNum, e);
+        }
+    }
+}
+
+/**
+ * Flow.Subscription chạy trên streaming executor, emit rows theo demand của subscriber
+ */
+class ResultSetSubscription<T> implements Flow.Subscription, Runnable {
+
+    private final Flow.Subscriber<? super T> subscriber;
+    private final Supplier<StreamingCursor> cursorFactory;
+    private final RowMapper<T> rowMapper;
+    private final AtomicLong demand = new AtomicLong();
+    private volatile boolean cancelled;
+    private volatile Throwable pendingError;
+    private volatile Thread worker;
+
+    ResultSetSubscription(Flow.Subscriber<? super T> subscriber, Supplier<StreamingCursor> cursorFactory, RowMapper<T> rowMapper) {
+        this.subscriber = subscriber;
+        this.cursorFactory = cursorFactory;
+        this.rowMapper = rowMapper;
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            // Signals chỉ đi từ worker (§1.3): worker dừng đọc, đóng cursor rồi mới emit onError
+            if (pendingError == null) {
+                pendingError = new IllegalArgumentException("Request must be positive (§3.9)");
+            }
+            LockSupport.unpark(worker);
+            return;
+        }
+        demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+        LockSupport.unpark(worker);
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        LockSupport.unpark(worker);
+    }
+
+    @Override
+    public void run() {
+        worker = Thread.currentThread();
+        try {
+            if (!cancelled && pendingError == null && emitRows()) {
+                return;
+            }
+        } catch (Exception e) {
+            if (!cancelled && pendingError == null) {
+                subscriber.onError(e);
+                return;
+            }
+        }
+
+        Throwable error = pendingError;
+        if (error != null && !cancelled) {
+            subscriber.onError(error);
+        }
+    }
+
+    /**
+     * true khi đã emit onComplete; false khi dừng vì cancel hoặc request không hợp lệ (cursor đã đóng khi trả về)
+     */
+    private boolean emitRows() throws Exception {
+        try (StreamingCursor cursor = cursorFactory.get()) {
+            ResultSet rs = cursor.getResultSet();
+            int rowNum = 0;
+            while (!cancelled && pendingError == null) {
+                if (demand.get() == 0) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                if (!rs.next()) {
+                    subscriber.onComplete();
+                    return true;
+                }
+                subscriber.onNext(rowMapper.mapRow(rs, rowNum++));
+                demand.decrementAndGet();
+            }
+            return false;
+        }
+    }
+}
+
+/**
+ * Map row mapper compile một lần cho mỗi result-set shape: labels và typed column readers
+ * được resolve từ metadata ở row đầu tiên, các rows sau chỉ đọc theo column index
+ */
+class CompiledRowShape {
+
+    private static final Map<String, CompiledRowShape> SHAPES = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    interface ColumnReader {
+        Object read(ResultSet rs, int index) throws SQLException;
+    }
+
+    private final String[] labels;
+    private final ColumnReader[] readers;
+
+    private CompiledRowShape(String[] labels, ColumnReader[] readers) {
+        this.labels = labels;
+        this.readers = readers;
+    }
+
+    static RowMapper<Map<String, Object>> mapperFor(String sql) {
+        return (rs, rowNum) -> {
+            CompiledRowShape shape = SHAPES.get(sql);
+            if (shape == null || shape.labels.length != rs.getMetaData().getColumnCount()) {
+                shape = compile(rs.getMetaData());
+                SHAPES.put(sql, shape);
+            }
+            return shape.map(rs);
+        };
+    }
+
+    static CompiledRowShape compile(ResultSetMetaData metaData) throws SQLException {
+        int columns = metaData.getColumnCount();
+        String[] labels = new String[columns];
+        ColumnReader[] readers = new ColumnReader[columns];
+        for (int i = 0; i < columns; i++) {
+            labels[i] = metaData.getColumnLabel(i + 1);
+            readers[i] = readerFor(metaData.getColumnType(i + 1));
+        }
+        return new CompiledRowShape(labels, readers);
+    }
+
+    static ColumnReader readerFor(int sqlType) {
+        switch (sqlType) {
+            case Types.BIGINT:
+                return (rs, index) -> { long value = rs.getLong(index); return rs.wasNull() ? null : value; };
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+                return (rs, index) -> { int value = rs.getInt(index); return rs.wasNull() ? null : value; };
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return (rs, index) -> { boolean value = rs.getBoolean(index); return rs.wasNull() ? null : value; };
+            case Types.DOUBLE:
+            case Types.FLOAT:
+                return (rs, index) -> { double value = rs.getDouble(index); return rs.wasNull() ? null : value; };
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return ResultSet::getBigDecimal;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+                return ResultSet::getString;
+            case Types.TIMESTAMP:
+                return (rs, index) -> rs.getObject(index, LocalDateTime.class);
+            case Types.DATE:
+                return (rs, index) -> rs.getObject(index, LocalDate.class);
+            default:
+                return ResultSet::getObject;
+        }
+    }
+
+    private Map<String, Object> map(ResultSet rs) throws SQLException {
+        Map<String, Object> row = new LinkedHashMap<>(labels.length * 2);
+        for (int i = 0; i < labels.length; i++) {
+            row.put(labels[i], readers[i].read(rs, i + 1));
+        }
+        return row;
+    }
+}
+
+/**
+ * Database Utilities và Helper Methods
+ */
+@Component
+class DatabaseUtils {
+
+    private static final int MAX_BATCH_ROWS = 500;
+
+    private final DataSource dataSource;
+    private final DatabaseRetryExecutor retryExecutor;
+    private final ExecutorService streamingExecutor;
+    private final Logger logger = LoggerFactory.getLogger(DatabaseUtils.class);
+
+    public DatabaseUtils(DataSource dataSource, DatabaseRetryExecutor retryExecutor,
+                         @Value("${database.streaming.max-concurrent:4}") int maxConcurrentStreams) {
+        this.dataSource = dataSource;
+        this.retryExecutor = retryExecutor;
+        // Mỗi publisher giữ một connection trong suốt quá trình stream, nên giới hạn song song
+        this.streamingExecutor = Executors.newFixedThreadPool(maxConcurrentStreams, runnable -> {
+            Thread thread = new Thread(runnable, "db-streaming");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Execute query với automatic retry và connection management
+     */
+    public <T> T executeQuery(String sql, Function<ResultSet, T> mapper, Object... params) {
+        return executeWithRetry("executeQuery", () -> {
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                // Typed parameter binding
+                ParameterBinders.bind(stmt, params);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return mapper.apply(rs);
+                }
+            }
+        });
+    }
+
+    /**
+     * Execute update với transaction support
+     */
+    public int executeUpdate(String sql, Object... params) {
+        return executeWithRetry("executeUpdate", () -> {
+            try (Connection conn = dataSource.getConnection()) {
+                conn.setAutoCommit(false);
+
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    ParameterBinders.bind(stmt, params);
+
+                    int result = stmt.executeUpdate();
+                    conn.commit();
+
+                    return result;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Batch insert với performance optimization
+     */
+    public int[] batchInsert(String sql, List<List<Object>> batchParams) {
+        return executeWithRetry("batchInsert", () -> {
+            try (Connection conn = dataSource.getConnection()) {
+                conn.setAutoCommit(false);
+
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (List<Object> params : batchParams) {
+                        ParameterBinders.bind(stmt, params);
+                        stmt.addBatch();
+                    }
+
+                    int[] results = stmt.executeBatch();
+                    conn.commit();
+
+                    return results;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Batch update tham gia transaction hiện tại (Spring-managed connection, không tự commit)
+     * Với rewriteBatchedStatements mỗi chunk là một statement, bất kể số rows.
+     * Không có transaction thì pool (autoCommit=false) rollback khi trả connection, nên fail fast
+     */
+    public int[] batchUpdateInTransaction(String sql, List<Object[]> batchParams) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("batchUpdateInTransaction requires an active transaction");
+        }
+        int[] results = new int[batchParams.size()];
+        if (batchParams.isEmpty()) {
+            return results;
+        }
+
+        Connection conn = DataSourceUtils.getConnection(dataSource);
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int offset = 0;
+            for (int start = 0; start < batchParams.size(); start += MAX_BATCH_ROWS) {
+                int end = Math.min(start + MAX_BATCH_ROWS, batchParams.size());
+                for (Object[] params : batchParams.subList(start, end)) {
+                    ParameterBinders.bind(stmt, params);
+                    stmt.addBatch();
+                }
+
+                int[] chunk = stmt.executeBatch();
+                System.arraycopy(chunk, 0, results, offset, chunk.length);
+                offset += chunk.length;
+            }
+            return results;
+        } catch (SQLException e) {
+            throw new RuntimeException("Batch update failed: " + e.getMessage(), e);
+        } finally {
+            DataSourceUtils.releaseConnection(conn, dataSource);
+        }
+    }
+
+    /**
+     * Query map thẳng vào target class bằng TypedRowMapper (plans cache theo class + column shape)
+     */
+    public <T> List<T> queryForList(String sql, Class<T> type, Object... params) {
+        TypedRowMapper<T> rowMapper = TypedRowMapper.of(type);
+        return executeQuery(sql, rs -> {
+            List<T> results = new ArrayList<>();
+            try {
+                int rowNum = 0;
+                while (rs.next()) {
+                    results.add(rowMapper.mapRow(rs, rowNum++));
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException("Row mapping failed for " + type.getSimpleName(), e);
+            }
+            return results;
+        }, params);
+    }
+
+    public <T> Optional<T> queryForObject(String sql, Class<T> type, Object... params) {
+        List<T> results = queryForList(sql, type, params);
+        return results.isEmpty() ? Optional.empty() : Optional.of(results.get(0));
+    }
+
+    public <T> Stream<T> stream(String sql, Class<T> type, int fetchSize, Object... params) {
+        return stream(sql, TypedRowMapper.of(type), fetchSize, params);
+    }
+
+    /**
+     * Streaming query: rows được đọc lazily theo server cursor (fetchSize), memory không phụ thuộc số rows.
+     * Stream phải được close (try-with-resources); connection cũng tự đóng khi đọc hết.
+     */
+    public <T> Stream<T> stream(String sql, RowMapper<T> rowMapper, int fetchSize, Object... params) {
+        StreamingCursor cursor = StreamingCursor.open(dataSource, sql, fetchSize, params);
+        return StreamSupport.stream(new ResultSetSpliterator<>(cursor, rowMapper), false)
+            .onClose(cursor::close);
+    }
+
+    /**
+     * Streaming query với mapper compile một lần cho mỗi result-set shape (column labels/types)
+     */
+    public Stream<Map<String, Object>> streamRows(String sql, int fetchSize, Object... params) {
+        return stream(sql, CompiledRowShape.mapperFor(sql), fetchSize, params);
+    }
+
+    /**
+     * Push-based variant với backpressure: rows chỉ được đọc khi subscriber request(n)
+     */
+    public <T> Flow.Publisher<T> publish(String sql, RowMapper<T> rowMapper, int fetchSize, Object... params) {
+        return subscriber -> {
+            ResultSetSubscription<T> subscription =
+                new ResultSetSubscription<>(subscriber, () -> StreamingCursor.open(dataSource, sql, fetchSize, params), rowMapper);
+            subscriber.onSubscribe(subscription);
+            streamingExecutor.execute(subscription);
+        };
+    }
+
+    @PreDestroy
+    public void shutdownStreaming() {
+        streamingExecutor.shutdownNow();
+    }
+
+    /**
+     * Execute với retry logic cho transient failures (xem DatabaseRetryExecutor)
+     */
+    private <T> T executeWithRetry(String operation, SqlOperation<T> sqlOperation) {
+        return retryExecutor.execute(operation, sqlOperation);
+    }
+
+    /**
+     * Get database statistics
+     */
+    public Map<String, Object> getDatabaseStats() {
+        Map<String, Object> stats = new HashMap<>();
+
+        try (Connection conn = dataSource.getConnection()) {
+            DatabaseMetaData metaData = conn.getMetaData();
+
+            stats.put("databaseProductName", metaData.getDatabaseProductName());
+            stats.put("databaseProductVersion", metaData.getDatabaseProductVersion());
+            stats.put("driverName", metaData.getDriverName());
+            stats.put("driverVersion", metaData.getDriverVersion());
+            stats.put("url", metaData.getURL());
+
+            // Get table count
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT COUNT(*) as table_count FROM information_schema.tables WHERE table_schema = ?")) {
+                stmt.setString(1, conn.getCatalog());
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        stats.put("tableCount", rs.getInt("table_count"));
+                    }
+                }
+            }
+
+        } catch (SQLException e) {
+            logger.error("Failed to get database stats", e);
+            stats.put("error", e.getMessage());
+        }
+
+        return stats;
+    }
+}
+
+/**
+ * Database Connection Pool Monitoring
+ * Sample HikariPoolMXBean mỗi giây và resize pool theo queueing model (Little's law)
+ */
+@Component
+class ConnectionPoolMonitor {
+
+    private static final double LOAD_SMOOTHING = 0.3;
+    private static final int SHRINK_AFTER_SAMPLES = 30;
+
+    private final HikariDataSource dataSource;
+    private final PoolLatencyRecorder latencyRecorder;
+    private final Logger logger = LoggerFactory.getLogger(ConnectionPoolMonitor.class);
+
+    // Thread riêng: sampler 1s không bị trễ bởi các @Scheduled jobs dài trên pool dùng chung
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pool-monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final double targetUtilization;
+    private final long maxAcquireWaitNanos;
+
+    private PoolLatencyRecorder.Snapshot lastSnapshot;
+    private double smoothedLoad = 0;
+    private int samplesBelowTarget = 0;
+
+    private volatile int targetPoolSize;
+    private volatile double offeredLoad;
+    private volatile long acquireP50Nanos;
+    private volatile long acquireP99Nanos;
+    private volatile long acquireP999Nanos;
+    private volatile long acquireMaxNanos;
+    private volatile double meanUsageMillis;
+
+    public ConnectionPoolMonitor(@Qualifier("userDataSource") HikariDataSource dataSource,
+                                 PoolLatencyRecorder latencyRecorder,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${datasource.pool.min-size:5}") int minPoolSize,
+                                 @Value("${datasource.pool.max-size:50}") int maxPoolSize,
+                                 @Value("${datasource.pool.target-utilization:0.7}") double targetUtilization,
+                                 @Value("${datasource.pool.max-acquire-wait-ms:50}") long maxAcquireWaitMillis) {
+        this.dataSource = dataSource;
+        this.latencyRecorder = latencyRecorder;
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.targetUtilization = targetUtilization;
+        this.maxAcquireWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxAcquireWaitMillis);
+        this.targetPoolSize = dataSource.getMaximumPoolSize();
+        this.lastSnapshot = latencyRecorder.snapshot();
+
+        Gauge.builder("db.pool.target.size", this, monitor -> monitor.targetPoolSize).register(meterRegistry);
+        Gauge.builder("db.pool.offered.load", this, monitor -> monitor.offeredLoad).register(meterRegistry);
+        Gauge.builder("db.pool.acquire.p50", this, monitor -> monitor.acquireP50Nanos / 1_000_000.0)
+            .baseUnit("milliseconds").register(meterRegistry);
+        Gauge.builder("db.pool.acquire.p99", this, monitor -> monitor.acquireP99Nanos / 1_000_000.0)
+            .baseUnit("milliseconds").register(meterRegistry);
+        Gauge.builder("db.pool.acquire.p999", this, monitor -> monitor.acquireP999Nanos / 1_000_000.0)
+            .baseUnit("milliseconds").register(meterRegistry);
+        Gauge.builder("db.pool.acquire.max", this, monitor -> monitor.acquireMaxNanos / 1_000_000.0)
+            .baseUnit("milliseconds").register(meterRegistry);
+        Gauge.builder("db.pool.usage.mean", this, monitor -> monitor.meanUsageMillis)
+            .baseUnit("milliseconds").register(meterRegistry);
+        Gauge.builder("db.pool.threads.awaiting", dataSource,
+            ds -> ds.getHikariPoolMXBean().getThreadsAwaitingConnection()).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void startSampling() {
+        sampler.scheduleAtFixedRate(() -> {
+            try {
+                samplePool();
+            } catch (RuntimeException e) {
+                // Exception sẽ huỷ các lần chạy sau của scheduleAtFixedRate
+                logger.warn("Connection pool sampling failed", e);
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stopSampling() {
+        sampler.shutdownNow();
+    }
+
+    /**
+     * Sample pool mỗi giây và điều chỉnh maximumPoolSize trong [min, max]
+     */
+    void samplePool() {
+        HikariPoolMXBean poolMXBean = dataSource.getHikariPoolMXBean();
+        if (poolMXBean == null) {
+            return;
+        }
+
+        PoolLatencyRecorder.Snapshot snapshot = latencyRecorder.snapshot();
+        PoolLatencyRecorder.Snapshot interval = snapshot.minus(lastSnapshot);
+        lastSnapshot = snapshot;
+
+        double seconds = Math.max(0.001, interval.getElapsedNanos() / 1_000_000_000.0);
+        double arrivalRate = interval.getAcquisitions() / seconds;
+        meanUsageMillis = interval.getUsageCount() > 0
+            ? (double) interval.getUsageMillis() / interval.getUsageCount()
+            : meanUsageMillis;
+        acquireP50Nanos = interval.acquirePercentile(0.50);
+        acquireP99Nanos = interval.acquirePercentile(0.99);
+        acquireP999Nanos = interval.acquirePercentile(0.999);
+        acquireMaxNanos = interval.acquireMax();
+
+        // Little's law: số connections bận trung bình = arrival rate × service time
+        double load = arrivalRate * meanUsageMillis / 1000.0;
+        smoothedLoad = LOAD_SMOOTHING * load + (1 - LOAD_SMOOTHING) * smoothedLoad;
+        offeredLoad = smoothedLoad;
+
+        int desired = (int) Math.ceil(smoothedLoad / targetUtilization);
+        int waiting = poolMXBean.getThreadsAwaitingConnection();
+        if (waiting > 0 && acquireP99Nanos > maxAcquireWaitNanos) {
+            desired = Math.max(desired, poolMXBean.getTotalConnections() + waiting);
+        }
+        desired = Math.max(minPoolSize, Math.min(maxPoolSize, desired));
+
+        int current = targetPoolSize;
+        if (desired > current) {
+            // Grow ngay lập tức
+            resize(desired, current);
+            samplesBelowTarget = 0;
+        } else if (desired < current) {
+            // Shrink có hysteresis để tránh dao động
+            if (++samplesBelowTarget >= SHRINK_AFTER_SAMPLES) {
+                resize(Math.max(desired, current - 1), current);
+                samplesBelowTarget = 0;
+            }
+        } else {
+            samplesBelowTarget = 0;
+        }
+    }
+
+    @Scheduled(fixedRate = 300000) // Every 5 minutes
+    public void logPoolStats() {
+        HikariPoolMXBean poolMXBean = dataSource.getHikariPoolMXBean();
+
+        logger.info("Connection Pool Stats:");
+        logger.info("  Active Connections: {}", poolMXBean.getActiveConnections());
+        logger.info("  Idle Connections: {}", poolMXBean.getIdleConnections());
+        logger.info("  Total Connections: {}", poolMXBean.getTotalConnections());
+        logger.info("  Threads Awaiting Connection: {}", poolMXBean.getThreadsAwaitingConnection());
+        logger.info("  Target Pool Size: {} (offered load {})", targetPoolSize, String.format("%.2f", offeredLoad));
+        logger.info("  Acquire Latency p50/p99: {}ms / {}ms", acquireP50Nanos / 1_000_000, acquireP99Nanos / 1_000_000);
+
+        if (poolMXBean.getActiveConnections() >= targetPoolSize * 0.8) {
+            logger.warn("High connection pool usage detected!");
+        }
+    }
+
+    public Map<String, Object> getPoolStats() {
+        HikariPoolMXBean poolMXBean = dataSource.getHikariPoolMXBean();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("active", poolMXBean.getActiveConnections());
+        stats.put("idle", poolMXBean.getIdleConnections());
+        stats.put("total", poolMXBean.getTotalConnections());
+        stats.put("threadsAwaiting", poolMXBean.getThreadsAwaitingConnection());
+        stats.put("targetSize", targetPoolSize);
+        stats.put("saturation", targetPoolSize > 0 ? (double) poolMXBean.getActiveConnections() / targetPoolSize : 0);
+        stats.put("offeredLoad", offeredLoad);
+        stats.put("acquireP50Millis", acquireP50Nanos / 1_000_000.0);
+        stats.put("acquireP99Millis", acquireP99Nanos / 1_000_000.0);
+        stats.put("acquireP999Millis", acquireP999Nanos / 1_000_000.0);
+        stats.put("acquireMaxMillis", acquireMaxNanos / 1_000_000.0);
+        stats.put("meanUsageMillis", meanUsageMillis);
+        return stats;
+    }
+
+    private void resize(int newSize, int oldSize) {
+        HikariConfigMXBean configMXBean = dataSource.getHikariConfigMXBean();
+        configMXBean.setMaximumPoolSize(newSize);
+        configMXBean.setMinimumIdle(Math.min(minPoolSize, newSize));
+        targetPoolSize = newSize;
+
+        logger.info("Resized connection pool from {} to {} (offered load {}, acquire p99 {}ms)",
+                    oldSize, newSize, String.format("%.2f", offeredLoad), acquireP99Nanos / 1_000_000);
+    }
+}
+
+/**
+ * Hikari metrics tracker ghi acquire latency vào HdrHistogram Recorder (lock-free, 2 significant digits).
+ * Hikari chỉ nhận một MetricsTrackerFactory, nên mọi callback được forward tới delegate (Micrometer)
+ */
+class PoolLatencyRecorder implements MetricsTrackerFactory {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final MetricsTrackerFactory delegate;
+
+    private final Recorder acquireRecorder = new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong usageCount = new AtomicLong();
+    private final AtomicLong usageMillis = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    PoolLatencyRecorder(MetricsTrackerFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        IMetricsTracker next = delegate != null ? delegate.create(poolName, poolStats) : new IMetricsTracker() { };
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                next.recordConnectionCreatedMillis(connectionCreatedMillis);
+            }
+
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquireRecorder.recordValue(Math.max(0, Math.min(HIGHEST_TRACKABLE_NANOS, elapsedAcquiredNanos)));
+                acquisitions.incrementAndGet();
+                next.recordConnectionAcquiredNanos(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usageCount.incrementAndGet();
+                usageMillis.addAndGet(elapsedBorrowedMillis);
+                next.recordConnectionUsageMillis(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.incrementAndGet();
+                next.recordConnectionTimeout();
+            }
+
+            @Override
+            public void close() {
+                next.close();
+            }
+        };
+    }
+
+    /**
+     * Counters cumulative; acquire histogram là interval kể từ snapshot trước (một consumer: ConnectionPoolMonitor)
+     */
+    Snapshot snapshot() {
+        return new Snapshot(System.nanoTime(), acquireRecorder.getIntervalHistogram(), acquisitions.get(),
+                            usageCount.get(), usageMillis.get(), timeouts.get());
+    }
+
+    static class Snapshot {
+        private final long takenAtNanos;
+        private final long elapsedNanos;
+        private final Histogram acquireHistogram;
+        private final long acquisitions;
+        private final long usageCount;
+        private final long usageMillis;
+        private final long timeouts;
+
+        Snapshot(long takenAtNanos, Histogram acquireHistogram, long acquisitions, long usageCount, long usageMillis, long timeouts) {
+            this(takenAtNanos, 0, acquireHistogram, acquisitions, usageCount, usageMillis, timeouts);
+        }
+
+        private Snapshot(long takenAtNanos, long elapsedNanos, Histogram acquireHistogram, long acquisitions,
+                         long usageCount, long usageMillis, long timeouts) {
+            this.takenAtNanos = takenAtNanos;
+            this.elapsedNanos = elapsedNanos;
+            this.acquireHistogram = acquireHistogram;
+            this.acquisitions = acquisitions;
+            this.usageCount = usageCount;
+            this.usageMillis = usageMillis;
+            this.timeouts = timeouts;
+        }
+
+        /**
+         * Histogram đã là interval (Recorder), chỉ counters cần trừ
+         */
+        Snapshot minus(Snapshot previous) {
+            return new Snapshot(takenAtNanos, takenAtNanos - previous.takenAtNanos, acquireHistogram,
+                                acquisitions - previous.acquisitions, usageCount - previous.usageCount,
+                                usageMillis - previous.usageMillis, timeouts - previous.timeouts);
+        }
+
+        /**
+         * Percentile (0..1) của acquire latency trong interval, sai số ~1% (2 significant digits)
+         */
+        long acquirePercentile(double percentile) {
+            return acquireHistogram.getTotalCount() == 0 ? 0 : acquireHistogram.getValueAtPercentile(percentile * 100.0);
+        }
+
+        long acquireMax() {
+            return acquireHistogram.getTotalCount() == 0 ? 0 : acquireHistogram.getMaxValue();
+        }
+
+        public long getElapsedNanos() { return elapsedNanos; }
+        public long getAcquisitions() { return acquisitions; }
+        public long getUsageCount() { return usageCount; }
+        public long getUsageMillis() { return usageMillis; }
+        public long getTimeouts() { return timeouts; }
+    }
+}
+
+/**
+ * Custom JPA Repository với advanced features
+ */
+@NoRepositoryBean
+interface BaseRepository<T, ID> extends JpaRepository<T, ID> {
+
+    /**
+     * Find by multiple criteria với pagination
+     */
+    Page<T> findByCriteria(Map<String, Object> criteria, Pageable pageable);
+
+    /**
+     * Bulk update operation
+     */
+    @Modifying
+    @Query("UPDATE #{#entityName} e SET e.updatedAt = CURRENT_TIMESTAMP WHERE e.id IN :ids")
+    int bulkUpdateTimestamp(@Param("ids") List<ID> ids);
 
-        try (Connection conn = dataSource.getConnection()) {
-            DatabaseMetaData metaData = conn.getMetaData();
+    /**
+     * Find with projections
+     */
+    <P> List<P> findBy(Class<P> projectionClass);
+
+    /**
+     * Custom query với named parameters
+     */
+    @Query("SELECT e FROM #{#entityName} e WHERE e.createdAt >= :startDate")
+    List<T> findRecent(@Param("startDate") LocalDateTime startDate);
+}
+
+/**
+ * Example Custom Repository Implementation
+ */
+@Repository
+interface UserRepository extends BaseRepository<User, Long> {
+
+    List<User> findByRoleAndActive(UserRole role, boolean active);
+
+    List<User> findByEmailContaining(String emailPart);
+
+    @Query("SELECT u FROM User u WHERE u.lastLoginAt < :cutoffDate")
+    List<User> findInactiveUsers(@Param("cutoffDate") LocalDateTime cutoffDate);
+
+    @Query(value = "SELECT * FROM users WHERE email LIKE %:email%", nativeQuery = true)
+    List<User> findByEmailNative(@Param("email") String email);
+
+    @Modifying
+    @Query("UPDATE User u SET u.failedLoginAttempts = u.failedLoginAttempts + 1 WHERE u.email = :email")
+    int incrementFailedAttempts(@Param("email") String email);
+}
+
+/**
+ * Database Backup và Recovery Service
+ * Logical backup trong JVM: đọc song song trên consistent-snapshot connections,
+ * ghi gzip chunk files qua FileChannel, manifest cho resume; restore song song qua batchInsert
+ */
+@Service
+class DatabaseBackupService {
+
+    static final String MANIFEST_FILE = "manifest.json";
+    private static final String RESTORE_PROGRESS_FILE = "restore.progress";
+    private static final int RESTORE_BATCH_ROWS = 1000;
+    private static final Set<String> INTEGER_TYPES = Set.of("tinyint", "smallint", "mediumint", "int", "bigint");
+
+    private final DataSource dataSource;
+    private final DatabaseUtils databaseUtils;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Logger logger = LoggerFactory.getLogger(DatabaseBackupService.class);
+
+    private final int parallelism;
+    private final long chunkRows;
+    private final int fetchSize;
+    private final boolean globalReadLock;
+    private final String watermarkColumn;
+    private final Map<String, String> watermarkColumns;
+    private final Set<String> appendOnlyTables;
+    private final long watermarkOverlapSeconds;
+    private final boolean trackDeletes;
+    private final boolean allowResumedRestore;
+
+    public DatabaseBackupService(DataSource dataSource,
+                                 DatabaseUtils databaseUtils,
+                                 @Value("${backup.parallelism:4}") int parallelism,
+                                 @Value("${backup.chunk-rows:200000}") long chunkRows,
+                                 @Value("${backup.fetch-size:5000}") int fetchSize,
+                                 @Value("${backup.global-read-lock:true}") boolean globalReadLock,
+                                 @Value("${backup.incremental.watermark-column:updated_at}") String watermarkColumn,
+                                 @Value("${backup.incremental.watermark-columns:stock_ledger=changed_at}") String watermarkColumns,
+                                 @Value("${backup.incremental.append-only-tables:}") String appendOnlyTables,
+                                 @Value("${backup.incremental.overlap-seconds:60}") long watermarkOverlapSeconds,
+                                 @Value("${backup.incremental.track-deletes:false}") boolean trackDeletes,
+                                 @Value("${backup.restore.allow-resumed:false}") boolean allowResumedRestore) {
+        this.dataSource = dataSource;
+        this.databaseUtils = databaseUtils;
+        this.parallelism = parallelism;
+        this.chunkRows = chunkRows;
+        this.fetchSize = fetchSize;
+        this.globalReadLock = globalReadLock;
+        this.watermarkColumn = watermarkColumn;
+        // "table=column,...": watermark riêng cho tables không có updated_at (ví dụ ledger dùng changed_at)
+        this.watermarkColumns = new HashMap<>();
+        for (String mapping : watermarkColumns.split(",")) {
+            String[] parts = mapping.trim().split("=", 2);
+            if (parts.length == 2 && !parts[0].isEmpty() && !parts[1].isEmpty()) {
+                this.watermarkColumns.put(parts[0].trim(), parts[1].trim());
+            }
+        }
+        // Append-only tables với integer PK: delta chỉ chứa rows có PK lớn hơn high-water mark của parent
+        this.appendOnlyTables = Arrays.stream(appendOnlyTables.split(","))
+            .map(String::trim).filter(table -> !table.isEmpty()).collect(Collectors.toSet());
+        this.watermarkOverlapSeconds = watermarkOverlapSeconds;
+        this.trackDeletes = trackDeletes;
+        this.allowResumedRestore = allowResumedRestore;
+    }
+
+    /**
+     * Create full database backup vào thư mục backupPath (resume nếu manifest chưa hoàn tất)
+     */
+    public boolean createBackup(String backupPath) {
+        long startNanos = System.nanoTime();
+        Path directory = Paths.get(backupPath);
+
+        try {
+            Files.createDirectories(directory);
+            BackupManifest manifest = loadManifest(directory);
+            if (manifest != null && BackupManifest.COMPLETED.equals(manifest.status)) {
+                logger.info("Backup at {} is already complete", backupPath);
+                return true;
+            }
+
+            List<Connection> workers = openSnapshotConnections();
+            try {
+                if (manifest == null) {
+                    manifest = planBackup(workers.get(0), null, null);
+                } else {
+                    logger.warn("Resuming backup {} - resumed chunks come from a new snapshot", manifest.backupId);
+                    manifest.resumed = true;
+                }
+                saveManifest(directory, manifest);
+
+                BackupStats stats = runChunks(directory, manifest, workers);
+
+                manifest.status = BackupManifest.COMPLETED;
+                manifest.completedAt = Instant.now().toString();
+                saveManifest(directory, manifest);
+
+                double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+                logger.info("Database backup created successfully: {} ({} rows, {} MB raw, {} MB compressed, {} MB/s)",
+                           backupPath, stats.rows.sum(), megabytes(stats.rawBytes.sum()),
+                           megabytes(stats.compressedBytes.sum()), String.format("%.1f", megabytes(stats.rawBytes.sum()) / seconds));
+                return true;
+            } finally {
+                for (Connection connection : workers) {
+                    closeSnapshot(connection);
+                }
+            }
+
+        } catch (Exception e) {
+            logger.error("Failed to create database backup", e);
+            return false;
+        }
+    }
+
+    /**
+     * Incremental backup: chỉ rows có watermark column (updated_at) thay đổi kể từ snapshot của parent
+     * Thời gian backup tỉ lệ với lượng thay đổi (index range scan), không với kích thước table
+     */
+    public boolean createIncrementalBackup(String backupPath, String parentBackupPath) {
+        long startNanos = System.nanoTime();
+        Path directory = Paths.get(backupPath);
+
+        try {
+            Path parentDirectory = Paths.get(parentBackupPath);
+            BackupManifest parent = loadManifest(parentDirectory);
+            if (parent == null || !BackupManifest.COMPLETED.equals(parent.status) || parent.snapshotAt == null) {
+                logger.error("Parent backup is missing or incomplete: {}", parentBackupPath);
+                return false;
+            }
+
+            Files.createDirectories(directory);
+            BackupManifest manifest = loadManifest(directory);
+            if (manifest != null && BackupManifest.COMPLETED.equals(manifest.status)) {
+                logger.info("Incremental backup at {} is already complete", backupPath);
+                return true;
+            }
+
+            List<Connection> workers = openSnapshotConnections();
+            try {
+                if (manifest == null) {
+                    manifest = planBackup(workers.get(0), parent, parentDirectory.toAbsolutePath().toString());
+                } else {
+                    manifest.resumed = true;
+                }
+                saveManifest(directory, manifest);
+
+                BackupStats stats = runChunks(directory, manifest, workers);
+                if (trackDeletes) {
+                    writeKeyFiles(workers.get(0), directory, manifest);
+                }
+
+                manifest.status = BackupManifest.COMPLETED;
+                manifest.completedAt = Instant.now().toString();
+                saveManifest(directory, manifest);
+
+                double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+                logger.info("Incremental backup created: {} ({} changed rows, {} MB compressed, {}s)",
+                           backupPath, stats.rows.sum(), megabytes(stats.compressedBytes.sum()), String.format("%.1f", seconds));
+                return true;
+            } finally {
+                for (Connection connection : workers) {
+                    closeSnapshot(connection);
+                }
+            }
+
+        } catch (Exception e) {
+            logger.error("Failed to create incremental backup", e);
+            return false;
+        }
+    }
+
+    /**
+     * Restore database từ backup; với incremental backup, restore base rồi apply lần lượt các deltas.
+     * Full backup thay thế hoàn toàn các tables có trong manifest (drop + recreate khi bắt đầu);
+     * tables không có trong backup được giữ nguyên
+     */
+    public boolean restoreFromBackup(String backupPath) {
+        long startNanos = System.nanoTime();
+
+        try {
+            Deque<Path> chain = new ArrayDeque<>();
+            BackupManifest manifest = null;
+            for (Path current = Paths.get(backupPath); current != null; ) {
+                manifest = loadManifest(current);
+                if (manifest == null || !BackupManifest.COMPLETED.equals(manifest.status)) {
+                    logger.error("Cannot restore from incomplete backup: {}", current);
+                    return false;
+                }
+                if (manifest.resumed) {
+                    // Chunks trước và sau resume đến từ hai snapshots khác nhau: không point-in-time consistent
+                    if (!allowResumedRestore) {
+                        logger.error("Backup {} was resumed and is not consistent; set backup.restore.allow-resumed=true to restore it anyway", current);
+                        return false;
+                    }
+                    logger.warn("Restoring resumed backup {} - data is not consistent to a single point in time", current);
+                }
+                chain.addFirst(current);
+                current = manifest.parentBackup != null ? Paths.get(manifest.parentBackup) : null;
+            }
+            if (!BackupManifest.FULL.equals(manifest.type)) {
+                logger.error("Backup chain for {} does not start with a full backup", backupPath);
+                return false;
+            }
+
+            BackupStats stats = new BackupStats();
+            for (Path directory : chain) {
+                restoreSingle(directory, loadManifest(directory), stats);
+            }
+
+            double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+            logger.info("Database restored successfully from: {} ({} backups, {} rows, {} MB/s)",
+                       backupPath, chain.size(), stats.rows.sum(), String.format("%.1f", megabytes(stats.rawBytes.sum()) / seconds));
+            return true;
+
+        } catch (Exception e) {
+            logger.error("Failed to restore database", e);
+            return false;
+        }
+    }
+
+    /**
+     * Restore một backup: tables theo thứ tự foreign key, chunks song song qua batchInsert
+     * Delta chunks dùng upsert; key files (nếu có) loại bỏ rows đã bị xoá
+     */
+    private void restoreSingle(Path directory, BackupManifest manifest, BackupStats stats) throws Exception {
+        boolean upsert = BackupManifest.INCREMENTAL.equals(manifest.type);
+        Set<String> restored = loadRestoreProgress(directory);
+        if (!upsert && restored.isEmpty()) {
+            dropTables(manifest);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            for (List<String> level : dependencyLevels(manifest)) {
+                List<Future<?>> futures = new ArrayList<>();
+                // Level của foreign key cycle: tables tham chiếu lẫn nhau, CREATE và INSERT với FOREIGN_KEY_CHECKS = 0
+                boolean foreignKeyChecks = level.stream()
+                    .noneMatch(table -> manifest.tables.get(table).dependsOn.stream()
+                        .anyMatch(dependency -> level.contains(dependency) && !dependency.equals(table)));
+                for (String table : level) {
+                    BackupManifest.TableEntry entry = manifest.tables.get(table);
+                    String createStatement = entry.createStatement.replaceFirst("^CREATE TABLE", "CREATE TABLE IF NOT EXISTS");
+                    if (foreignKeyChecks) {
+                        databaseUtils.executeUpdate(createStatement);
+                    } else {
+                        executeWithoutForeignKeyChecks(createStatement);
+                    }
+                    // Table được copy toàn bộ trong delta: thay thế thay vì upsert, rows đã xoá ở nguồn không quay lại
+                    boolean replace = upsert && entry.replace;
+                    if (replace && entry.chunks.stream().noneMatch(chunk -> restored.contains(chunk.file))) {
+                        executeWithoutForeignKeyChecks("DELETE FROM `" + table + "`");
+                    }
+
+                    for (BackupManifest.ChunkEntry chunk : entry.chunks) {
+                        if (restored.contains(chunk.file)) {
+                            continue;
+                        }
+                        futures.add(executor.submit(() -> {
+                            if (!upsert || replace) {
+                                // Chunk có thể đã được insert một phần trước khi crash
+                                clearChunkRange(table, entry, chunk);
+                            }
+                            restoreChunk(directory, table, chunk, upsert && !replace, foreignKeyChecks, stats);
+                            markRestored(directory, chunk.file);
+                            return null;
+                        }));
+                    }
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+
+            for (Map.Entry<String, BackupManifest.TableEntry> table : manifest.tables.entrySet()) {
+                BackupManifest.TableEntry entry = table.getValue();
+                if (entry.keysFile != null && !restored.contains(entry.keysFile)) {
+                    applyDeletes(directory, table.getKey(), entry);
+                    markRestored(directory, entry.keysFile);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Full restore bắt đầu từ tables rỗng: rows chỉ có ở DB đích không được sống sót qua restore
+     */
+    private void dropTables(BackupManifest manifest) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement()) {
+            // Một session để drop được cả tables có foreign key vòng
+            stmt.execute("SET FOREIGN_KEY_CHECKS = 0");
+            try {
+                for (String table : manifest.tables.keySet()) {
+                    stmt.execute("DROP TABLE IF EXISTS `" + table + "`");
+                }
+            } finally {
+                stmt.execute("SET FOREIGN_KEY_CHECKS = 1");
+            }
+        }
+        logger.info("Dropped {} tables before full restore", manifest.tables.size());
+    }
+
+    /**
+     * Xoá key range của chunk để replay lại chunk là idempotent (children ở level sau chưa được restore)
+     */
+    private void clearChunkRange(String table, BackupManifest.TableEntry entry, BackupManifest.ChunkEntry chunk) throws SQLException {
+        if (chunk.lowerBound != null) {
+            executeWithoutForeignKeyChecks("DELETE FROM `" + table + "` WHERE `" + entry.pkColumn + "` BETWEEN ? AND ?",
+                                          chunk.lowerBound, chunk.upperBound);
+        } else {
+            executeWithoutForeignKeyChecks("DELETE FROM `" + table + "`");
+        }
+    }
+
+    /**
+     * Delete khi restore thay thế một table (children trỏ vào rows sắp được insert lại không bị chặn hay cascade)
+     * và CREATE TABLE của foreign key cycle
+     */
+    private void executeWithoutForeignKeyChecks(String sql, Object... params) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement session = connection.createStatement()) {
+            session.execute("SET FOREIGN_KEY_CHECKS = 0");
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                ParameterBinders.bind(stmt, params);
+                stmt.executeUpdate();
+                if (!connection.getAutoCommit()) {
+                    connection.commit();
+                }
+            } finally {
+                session.execute("SET FOREIGN_KEY_CHECKS = 1");
+            }
+        }
+    }
+
+    /**
+     * Mở N connections cùng một consistent snapshot (FTWRL ngắn để đồng bộ điểm bắt đầu, giống mydumper).
+     * Connections được lấy trước khi lock để FTWRL chỉ bao quanh các lệnh START TRANSACTION
+     */
+    List<Connection> openSnapshotConnections() throws SQLException {
+        List<Connection> connections = new ArrayList<>();
+        Connection lockConnection = null;
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                Connection connection = dataSource.getConnection();
+                connections.add(connection);
+                connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            }
+
+            if (globalReadLock) {
+                lockConnection = dataSource.getConnection();
+                try (Statement stmt = lockConnection.createStatement()) {
+                    stmt.execute("FLUSH TABLES WITH READ LOCK");
+                } catch (SQLException e) {
+                    logger.warn("FLUSH TABLES WITH READ LOCK not permitted ({}), worker snapshots may differ slightly",
+                               e.getMessage());
+                    lockConnection.close();
+                    lockConnection = null;
+                }
+            }
+
+            for (Connection connection : connections) {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT, READ ONLY");
+                }
+            }
+            return connections;
+
+        } catch (SQLException e) {
+            for (Connection connection : connections) {
+                closeSnapshot(connection);
+            }
+            throw e;
+        } finally {
+            if (lockConnection != null) {
+                try (Statement stmt = lockConnection.createStatement()) {
+                    stmt.execute("UNLOCK TABLES");
+                } finally {
+                    lockConnection.close();
+                }
+            }
+        }
+    }
+
+    void closeSnapshot(Connection connection) {
+        try {
+            connection.rollback();
+            connection.close();
+        } catch (SQLException e) {
+            logger.warn("Failed to close snapshot connection: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Chia mỗi table thành primary-key ranges (~chunkRows rows) để đọc song song
+     */
+    private BackupManifest planBackup(Connection connection, BackupManifest parent, String parentPath) throws SQLException {
+        BackupManifest manifest = new BackupManifest();
+        manifest.backupId = UUID.randomUUID().toString();
+        manifest.type = parent == null ? BackupManifest.FULL : BackupManifest.INCREMENTAL;
+        manifest.parentBackup = parentPath;
+        manifest.status = BackupManifest.IN_PROGRESS;
+        manifest.startedAt = Instant.now().toString();
+        manifest.snapshotAt = snapshotTime(connection).toString();
+        manifest.tables = new LinkedHashMap<>();
+
+        for (String table : listTables(connection)) {
+            BackupManifest.TableEntry entry = describeTable(connection, table);
+            BackupManifest.TableEntry parentEntry = parent != null ? parent.tables.get(table) : null;
+            long[] bounds = entry.pkColumn != null ? pkBounds(connection, table, entry.pkColumn) : null;
+            entry.maxKey = bounds != null ? bounds[1] : null;
+            entry.appendOnly = entry.watermarkColumn == null && entry.pkColumn != null && appendOnlyTables.contains(table);
+
+            if (parentEntry != null && entry.watermarkColumn != null) {
+                // Delta: watermark range (parent snapshot - overlap, snapshot]; upsert nên overlap an toàn
+                BackupManifest.ChunkEntry chunk = BackupManifest.ChunkEntry.of(table, 0, null, null);
+                chunk.fromWatermark = LocalDateTime.parse(parent.snapshotAt).minusSeconds(watermarkOverlapSeconds).toString();
+                chunk.toWatermark = manifest.snapshotAt;
+                entry.chunks.add(chunk);
+            } else if (parentEntry != null && entry.appendOnly && parentEntry.maxKey != null) {
+                // Delta append-only: (high-water mark của parent, max hiện tại]; không có rows mới thì không có chunk
+                if (bounds != null && bounds[1] > parentEntry.maxKey) {
+                    entry.chunks.add(BackupManifest.ChunkEntry.of(table, 0, parentEntry.maxKey + 1, bounds[1]));
+                }
+                manifest.tables.put(table, entry);
+                continue;
+            } else if (entry.pkColumn != null) {
+                // Full copy; trong delta restore thay thế toàn bộ table để rows đã xoá không quay lại
+                entry.replace = parent != null;
+                long estimatedRows = estimateRows(connection, table);
+                long ranges = Math.max(1, (estimatedRows + chunkRows - 1) / chunkRows);
+                long width = bounds == null ? 0 : Math.max(1, (bounds[1] - bounds[0] + ranges) / ranges);
+
+                for (long lower = bounds == null ? 0 : bounds[0]; bounds != null && lower <= bounds[1]; lower += width) {
+                    entry.chunks.add(BackupManifest.ChunkEntry.of(table, entry.chunks.size(), lower, Math.min(bounds[1], lower + width - 1)));
+                }
+            }
+            if (entry.chunks.isEmpty()) {
+                entry.replace = parent != null && entry.watermarkColumn == null;
+                entry.chunks.add(BackupManifest.ChunkEntry.of(table, 0, null, null));
+            }
+            manifest.tables.put(table, entry);
+        }
+        return manifest;
+    }
+
+    private BackupStats runChunks(Path directory, BackupManifest manifest, List<Connection> workers) throws Exception {
+        BlockingQueue<Object[]> queue = new LinkedBlockingQueue<>();
+        for (Map.Entry<String, BackupManifest.TableEntry> table : manifest.tables.entrySet()) {
+            for (BackupManifest.ChunkEntry chunk : table.getValue().chunks) {
+                if (!chunk.complete || !Files.exists(directory.resolve(chunk.file))) {
+                    queue.add(new Object[] { table.getKey(), table.getValue(), chunk });
+                }
+            }
+        }
+
+        BackupStats stats = new BackupStats();
+        ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Connection connection : workers) {
+                futures.add(executor.submit(() -> {
+                    Object[] unit;
+                    while ((unit = queue.poll()) != null) {
+                        BackupManifest.ChunkEntry chunk = (BackupManifest.ChunkEntry) unit[2];
+                        long[] written = dumpChunk(connection, directory, (String) unit[0], (BackupManifest.TableEntry) unit[1], chunk, stats);
+                        // Manifest được serialize bởi workers khác: chỉ mutate chunk dưới cùng lock
+                        synchronized (manifest) {
+                            chunk.rows = written[0];
+                            chunk.bytes = written[1];
+                            chunk.complete = true;
+                            saveManifest(directory, manifest);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return stats;
+    }
+
+    /**
+     * Dump một chunk ra file; trả về {rows, compressed bytes}, caller ghi vào manifest
+     */
+    private long[] dumpChunk(Connection connection, Path directory, String table, BackupManifest.TableEntry entry,
+                             BackupManifest.ChunkEntry chunk, BackupStats stats) throws SQLException, IOException {
+        String sql = "SELECT * FROM `" + table + "`";
+        if (chunk.fromWatermark != null) {
+            sql += " WHERE `" + entry.watermarkColumn + "` > ? AND `" + entry.watermarkColumn + "` <= ?";
+        } else if (chunk.lowerBound != null) {
+            sql += " WHERE `" + entry.pkColumn + "` BETWEEN ? AND ?";
+        }
+
+        Path target = directory.resolve(chunk.file);
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".part");
+
+        long[] written;
+        try (PreparedStatement stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(fetchSize);
+            if (chunk.fromWatermark != null) {
+                stmt.setTimestamp(1, Timestamp.valueOf(LocalDateTime.parse(chunk.fromWatermark)));
+                stmt.setTimestamp(2, Timestamp.valueOf(LocalDateTime.parse(chunk.toWatermark)));
+            } else if (chunk.lowerBound != null) {
+                stmt.setLong(1, chunk.lowerBound);
+                stmt.setLong(2, chunk.upperBound);
+            }
+
+            try (ResultSet rs = stmt.executeQuery();
+                 BackupChunkWriter writer = BackupChunkWriter.open(temp, entry.columns)) {
+                int columns = entry.columns.size();
+                Object[] row = new Object[columns];
+                while (rs.next()) {
+                    for (int i = 0; i < columns; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                    writer.write(row);
+                }
+                writer.finish();
+
+                written = new long[] { writer.getRows(), writer.getCompressedBytes() };
+                stats.rows.add(writer.getRows());
+                stats.rawBytes.add(writer.getRawBytes());
+                stats.compressedBytes.add(writer.getCompressedBytes());
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    void restoreChunk(Path directory, String table, BackupManifest.ChunkEntry chunk, boolean upsert,
+                      boolean foreignKeyChecks, BackupStats stats) throws IOException, SQLException {
+        try (BackupChunkReader reader = BackupChunkReader.open(directory.resolve(chunk.file))) {
+            List<String> columns = reader.getColumns();
+            String sql = "INSERT INTO `" + table + "` (" +
+                columns.stream().map(column -> "`" + column + "`").collect(Collectors.joining(", ")) +
+                ") VALUES (" + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+            if (upsert) {
+                sql += " ON DUPLICATE KEY UPDATE " +
+                    columns.stream().map(column -> "`" + column + "` = VALUES(`" + column + "`)").collect(Collectors.joining(", "));
+            }
+
+            List<List<Object>> batch = new ArrayList<>(RESTORE_BATCH_ROWS);
+            Object[] row;
+            while ((row = reader.next()) != null) {
+                batch.add(Arrays.asList(row));
+                if (batch.size() == RESTORE_BATCH_ROWS) {
+                    insertBatch(sql, batch, foreignKeyChecks);
+                    stats.rows.add(batch.size());
+                    batch = new ArrayList<>(RESTORE_BATCH_ROWS);
+                }
+            }
+            if (!batch.isEmpty()) {
+                insertBatch(sql, batch, foreignKeyChecks);
+                stats.rows.add(batch.size());
+            }
+            stats.rawBytes.add(reader.getRawBytes());
+        }
+    }
+
+    /**
+     * Rows của foreign key cycle có thể trỏ vào rows chưa restore (chunk khác hoặc table cùng level)
+     */
+    private void insertBatch(String sql, List<List<Object>> batch, boolean foreignKeyChecks) throws SQLException {
+        if (foreignKeyChecks) {
+            databaseUtils.batchInsert(sql, batch);
+            return;
+        }
+        try (Connection connection = dataSource.getConnection();
+             Statement session = connection.createStatement()) {
+            session.execute("SET FOREIGN_KEY_CHECKS = 0");
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                for (List<Object> params : batch) {
+                    ParameterBinders.bind(stmt, params);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                if (!connection.getAutoCommit()) {
+                    connection.commit();
+                }
+            } finally {
+                session.execute("SET FOREIGN_KEY_CHECKS = 1");
+            }
+        }
+    }
+
+    List<String> listTables(Connection connection) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT table_name FROM information_schema.tables " +
+                "WHERE table_schema = DATABASE() AND table_type = 'BASE TABLE' ORDER BY table_name");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                tables.add(rs.getString(1));
+            }
+        }
+        return tables;
+    }
+
+    BackupManifest.TableEntry describeTable(Connection connection, String table) throws SQLException {
+        BackupManifest.TableEntry entry = new BackupManifest.TableEntry();
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SHOW CREATE TABLE `" + table + "`")) {
+            rs.next();
+            entry.createStatement = rs.getString(2);
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT column_name, column_key, data_type FROM information_schema.columns " +
+                "WHERE table_schema = DATABASE() AND table_name = ? ORDER BY ordinal_position")) {
+            stmt.setString(1, table);
+            List<String> primaryKey = new ArrayList<>();
+            String pkType = null;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    entry.columns.add(rs.getString(1));
+                    if (watermarkColumns.getOrDefault(table, watermarkColumn).equalsIgnoreCase(rs.getString(1))) {
+                        entry.watermarkColumn = rs.getString(1);
+                    }
+                    if ("PRI".equals(rs.getString(2))) {
+                        primaryKey.add(rs.getString(1));
+                        pkType = rs.getString(3);
+                    }
+                }
+            }
+            // Chỉ chia range khi PK là một cột integer
+            if (primaryKey.size() == 1 && INTEGER_TYPES.contains(pkType)) {
+                entry.pkColumn = primaryKey.get(0);
+            }
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT DISTINCT referenced_table_name FROM information_schema.key_column_usage " +
+                "WHERE table_schema = DATABASE() AND table_name = ? AND referenced_table_name IS NOT NULL")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (!table.equals(rs.getString(1))) {
+                        entry.dependsOn.add(rs.getString(1));
+                    }
+                }
+            }
+        }
+        return entry;
+    }
 
-            stats.put("databaseProductName", metaData.getDatabaseProductName());
-            stats.put("databaseProductVersion", metaData.getDatabaseProductVersion());
-            stats.put("driverName", metaData.getDriverName());
-            stats.put("driverVersion", metaData.getDriverVersion());
-            stats.put("url", metaData.getURL());
+    private LocalDateTime snapshotTime(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT NOW(6)")) {
+            rs.next();
+            return rs.getTimestamp(1).toLocalDateTime();
+        }
+    }
 
-            // Get table count
-            try (PreparedStatement stmt = conn.prepareStatement(
-                    "SELECT COUNT(*) as table_count FROM information_schema.tables WHERE table_schema = ?")) {
-                stmt.setString(1, conn.getCatalog());
+    /**
+     * Key file: toàn bộ primary keys (sorted) tại snapshot, để restore phát hiện rows đã bị xoá.
+     * Chỉ đọc PK index nhưng vẫn tỉ lệ với số rows, nên là tuỳ chọn (backup.incremental.track-deletes)
+     */
+    private void writeKeyFiles(Connection connection, Path directory, BackupManifest manifest) throws SQLException, IOException {
+        for (Map.Entry<String, BackupManifest.TableEntry> table : manifest.tables.entrySet()) {
+            BackupManifest.TableEntry entry = table.getValue();
+            if (entry.pkColumn == null || (entry.watermarkColumn == null && !entry.appendOnly)) {
+                continue;
+            }
 
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        stats.put("tableCount", rs.getInt("table_count"));
+            entry.keysFile = table.getKey() + "/keys.bin.gz";
+            Path target = directory.resolve(entry.keysFile);
+            Files.createDirectories(target.getParent());
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "SELECT `" + entry.pkColumn + "` FROM `" + table.getKey() + "` ORDER BY `" + entry.pkColumn + "`",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(fetchSize);
+                try (ResultSet rs = stmt.executeQuery();
+                     BackupChunkWriter writer = BackupChunkWriter.open(target, Collections.singletonList(entry.pkColumn))) {
+                    Object[] row = new Object[1];
+                    while (rs.next()) {
+                        row[0] = rs.getLong(1);
+                        writer.write(row);
                     }
+                    writer.finish();
                 }
             }
+        }
+    }
 
-        } catch (SQLException e) {
-            logger.error("Failed to get database stats", e);
-            stats.put("error", e.getMessage());
+    /**
+     * Xoá rows không còn trong key file (merge hai danh sách PK đã sort)
+     */
+    private void applyDeletes(Path directory, String table, BackupManifest.TableEntry entry) throws IOException {
+        String pk = entry.pkColumn;
+        List<List<Object>> deletes = new ArrayList<>();
+
+        try (BackupChunkReader keys = BackupChunkReader.open(directory.resolve(entry.keysFile));
+             Stream<Long> existing = databaseUtils.stream(
+                 "SELECT `" + pk + "` FROM `" + table + "` ORDER BY `" + pk + "`", (rs, rowNum) -> rs.getLong(1), fetchSize)) {
+            Object[] key = keys.next();
+            Iterator<Long> iterator = existing.iterator();
+            while (iterator.hasNext()) {
+                long id = iterator.next();
+                while (key != null && (Long) key[0] < id) {
+                    key = keys.next();
+                }
+                if (key == null || (Long) key[0] != id) {
+                    deletes.add(Collections.singletonList(id));
+                }
+            }
+        }
+
+        String sql = "DELETE FROM `" + table + "` WHERE `" + pk + "` = ?";
+        for (int start = 0; start < deletes.size(); start += RESTORE_BATCH_ROWS) {
+            databaseUtils.batchInsert(sql, deletes.subList(start, Math.min(deletes.size(), start + RESTORE_BATCH_ROWS)));
+        }
+        if (!deletes.isEmpty()) {
+            logger.info("Removed {} deleted rows from {}", deletes.size(), table);
+        }
+    }
+
+    private long[] pkBounds(Connection connection, String table, String pkColumn) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                 "SELECT MIN(`" + pkColumn + "`), MAX(`" + pkColumn + "`) FROM `" + table + "`")) {
+            rs.next();
+            long min = rs.getLong(1);
+            return rs.wasNull() ? null : new long[] { min, rs.getLong(2) };
+        }
+    }
+
+    private long estimateRows(Connection connection, String table) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT table_rows FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = ?")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Nhóm tables theo foreign key levels: level sau chỉ phụ thuộc các level trước
+     */
+    List<List<String>> dependencyLevels(BackupManifest manifest) {
+        List<List<String>> levels = new ArrayList<>();
+        Set<String> done = new HashSet<>();
+        Set<String> remaining = new LinkedHashSet<>(manifest.tables.keySet());
+
+        while (!remaining.isEmpty()) {
+            List<String> level = new ArrayList<>();
+            for (String table : remaining) {
+                List<String> dependsOn = manifest.tables.get(table).dependsOn;
+                if (dependsOn.stream().allMatch(dependency -> done.contains(dependency) || !manifest.tables.containsKey(dependency))) {
+                    level.add(table);
+                }
+            }
+            if (level.isEmpty()) {
+                // Cycle: restore phần còn lại cùng nhau
+                level.addAll(remaining);
+            }
+            levels.add(level);
+            done.addAll(level);
+            remaining.removeAll(level);
+        }
+        return levels;
+    }
+
+    BackupManifest loadManifest(Path directory) throws IOException {
+        Path manifestPath = directory.resolve(MANIFEST_FILE);
+        return Files.exists(manifestPath) ? objectMapper.readValue(manifestPath.toFile(), BackupManifest.class) : null;
+    }
+
+    void saveManifest(Path directory, BackupManifest manifest) throws IOException {
+        Path temp = directory.resolve(MANIFEST_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifest)));
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(MANIFEST_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Set<String> loadRestoreProgress(Path directory) throws IOException {
+        Path progress = directory.resolve(RESTORE_PROGRESS_FILE);
+        return Files.exists(progress)
+            ? new HashSet<>(Files.readAllLines(progress, StandardCharsets.UTF_8))
+            : new HashSet<>();
+    }
+
+    private synchronized void markRestored(Path directory, String chunkFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve(RESTORE_PROGRESS_FILE),
+                                                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap((chunkFile + "\n").getBytes(StandardCharsets.UTF_8)));
+            channel.force(false);
+        }
+    }
+
+    static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    static class BackupStats {
+        final LongAdder rows = new LongAdder();
+        final LongAdder rawBytes = new LongAdder();
+        final LongAdder compressedBytes = new LongAdder();
+    }
+}
+
+/**
+ * Backup manifest (JSON): tables, chunks và trạng thái hoàn tất của từng chunk
+ */
+class BackupManifest {
+    static final String FULL = "FULL";
+    static final String INCREMENTAL = "INCREMENTAL";
+    static final String IN_PROGRESS = "IN_PROGRESS";
+    static final String COMPLETED = "COMPLETED";
+
+    public String backupId;
+    public String type;
+    public String status;
+    public String startedAt;
+    public String completedAt;
+    public String snapshotAt;
+    public String parentBackup;
+    public boolean resumed;
+    public Map<String, TableEntry> tables = new LinkedHashMap<>();
+
+    static class TableEntry {
+        public String createStatement;
+        public String pkColumn;
+        public String watermarkColumn;
+        public String keysFile;
+        public Long maxKey;
+        public boolean appendOnly;
+        public boolean replace;
+        public List<String> columns = new ArrayList<>();
+        public List<String> dependsOn = new ArrayList<>();
+        public List<ChunkEntry> chunks = new ArrayList<>();
+    }
+
+    static class ChunkEntry {
+        public String file;
+        public Long lowerBound;
+        public Long upperBound;
+        public String fromWatermark;
+        public String toWatermark;
+        public long rows;
+        public long bytes;
+        public boolean complete;
+
+        static ChunkEntry of(String table, int index, Long lowerBound, Long upperBound) {
+            ChunkEntry chunk = new ChunkEntry();
+            chunk.file = String.format("%s/chunk-%05d.bin.gz", table, index);
+            chunk.lowerBound = lowerBound;
+            chunk.upperBound = upperBound;
+            return chunk;
+        }
+    }
+}
+
+/**
+ * Chunk file: gzip stream (FileChannel) chứa header columns và rows đã encode theo type tag
+ */
+class BackupChunkWriter implements AutoCloseable {
+
+    static final int MAGIC = 0x554D424B; // "UMBK"
+    static final int VERSION = 1;
+
+    private final FileChannel channel;
+    private final CountingOutputStream rawCounter;
+    private final DataOutputStream out;
+    private long rows;
+    private boolean finished;
+
+    private BackupChunkWriter(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.rawCounter = new CountingOutputStream(
+            new GZIPOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+        this.out = new DataOutputStream(new BufferedOutputStream(rawCounter, 64 * 1024));
+    }
+
+    static BackupChunkWriter open(Path path, List<String> columns) throws IOException {
+        BackupChunkWriter writer = new BackupChunkWriter(FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+        writer.out.writeInt(MAGIC);
+        writer.out.writeInt(VERSION);
+        writer.out.writeInt(columns.size());
+        for (String column : columns) {
+            writer.out.writeUTF(column);
+        }
+        return writer;
+    }
+
+    void write(Object[] row) throws IOException {
+        out.writeByte(1);
+        for (Object value : row) {
+            BackupValueCodec.write(out, value);
+        }
+        rows++;
+    }
+
+    void finish() throws IOException {
+        out.writeByte(0);
+        out.flush();
+        ((GZIPOutputStream) rawCounter.delegate()).finish();
+        channel.force(true);
+        finished = true;
+    }
+
+    long getRows() { return rows; }
+    long getRawBytes() { return rawCounter.getCount(); }
+
+    long getCompressedBytes() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            channel.close();
+            return;
+        }
+        out.close();
+    }
+}
+
+class BackupChunkReader implements AutoCloseable {
+
+    private final CountingInputStream rawCounter;
+    private final DataInputStream in;
+    private final List<String> columns;
+
+    private BackupChunkReader(InputStream input) throws IOException {
+        this.rawCounter = new CountingInputStream(new GZIPInputStream(input, 64 * 1024));
+        this.in = new DataInputStream(new BufferedInputStream(rawCounter, 64 * 1024));
+
+        if (in.readInt() != BackupChunkWriter.MAGIC || in.readInt() != BackupChunkWriter.VERSION) {
+            throw new IOException("Not a backup chunk file");
+        }
+        int columnCount = in.readInt();
+        List<String> names = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            names.add(in.readUTF());
+        }
+        this.columns = names;
+    }
+
+    static BackupChunkReader open(Path path) throws IOException {
+        return new BackupChunkReader(Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ)));
+    }
+
+    List<String> getColumns() { return columns; }
+    long getRawBytes() { return rawCounter.getCount(); }
+
+    /**
+     * Row tiếp theo, hoặc null khi hết chunk
+     */
+    Object[] next() throws IOException {
+        if (in.readByte() == 0) {
+            return null;
+        }
+        Object[] row = new Object[columns.size()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = BackupValueCodec.read(in);
+        }
+        return row;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
+
+/**
+ * Type-tagged value encoding cho chunk files
+ */
+final class BackupValueCodec {
+
+    private static final byte NULL = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte DECIMAL = 3;
+    private static final byte STRING = 4;
+    private static final byte BYTES = 5;
+    private static final byte DATETIME = 6;
+    private static final byte DATE = 7;
+    private static final byte TIME = 8;
+    private static final byte BOOLEAN = 9;
+
+    private BackupValueCodec() {
+    }
+
+    static void write(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+            out.writeByte(DECIMAL);
+            writeString(out, value.toString());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            out.writeInt(((byte[]) value).length);
+            out.write((byte[]) value);
+        } else if (value instanceof LocalDateTime || value instanceof Timestamp) {
+            LocalDateTime dateTime = value instanceof Timestamp ? ((Timestamp) value).toLocalDateTime() : (LocalDateTime) value;
+            out.writeByte(DATETIME);
+            out.writeLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(dateTime.getNano());
+        } else if (value instanceof LocalDate || value instanceof java.sql.Date) {
+            LocalDate date = value instanceof java.sql.Date ? ((java.sql.Date) value).toLocalDate() : (LocalDate) value;
+            out.writeByte(DATE);
+            out.writeLong(date.toEpochDay());
+        } else if (value instanceof LocalTime || value instanceof Time) {
+            LocalTime time = value instanceof Time ? ((Time) value).toLocalTime() : (LocalTime) value;
+            out.writeByte(TIME);
+            out.writeLong(time.toNanoOfDay());
+        } else {
+            out.writeByte(STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    static Object read(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case DECIMAL:
+                return new BigDecimal(readString(in));
+            case STRING:
+                return readString(in);
+            case BYTES:
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return bytes;
+            case DATETIME:
+                return LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+            case DATE:
+                return LocalDate.ofEpochDay(in.readLong());
+            case TIME:
+                return LocalTime.ofNanoOfDay(in.readLong());
+            case BOOLEAN:
+                return in.readBoolean();
+            default:
+                throw new IOException("Unknown value tag: " + tag);
+        }
+    }
+
+    // writeUTF giới hạn 64KB, TEXT columns có thể lớn hơn
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
+
+class CountingOutputStream extends FilterOutputStream {
+    private long count;
+
+    CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+
+    OutputStream delegate() { return out; }
+    long getCount() { return count; }
+}
+
+class CountingInputStream extends FilterInputStream {
+    private long count;
+
+    CountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+            count++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0) {
+            count += read;
+        }
+        return read;
+    }
+
+    long getCount() { return count; }
+}
+
+/**
+ * Second-level cache regions (JCache/Caffeine), size và TTL override qua cache.l2.regions.<region>.*
+ * Entity của region được cache read-write qua hibernate.classcache; mapping entity -> region đọc từ Hibernate metamodel
+ * Order không cache: ghi thường xuyên, invalidation tốn hơn lợi ích
+ */
+enum SecondLevelCacheRegion {
+    PRODUCT("product", "com.codeprefency.usermanagement.entity.Product", 20000, Duration.ofMinutes(30)),
+    USER("user", "com.codeprefency.usermanagement.entity.User", 50000, Duration.ofMinutes(10));
+
+    private final String regionName;
+    private final String entityClassName;
+    private final long defaultMaxEntries;
+    private final Duration defaultTtl;
+
+    SecondLevelCacheRegion(String regionName, String entityClassName, long defaultMaxEntries, Duration defaultTtl) {
+        this.regionName = regionName;
+        this.entityClassName = entityClassName;
+        this.defaultMaxEntries = defaultMaxEntries;
+        this.defaultTtl = defaultTtl;
+    }
+
+    public String getRegionName() { return regionName; }
+    public String getEntityClassName() { return entityClassName; }
+    public long getDefaultMaxEntries() { return defaultMaxEntries; }
+    public Duration getDefaultTtl() { return defaultTtl; }
+}
+
+/**
+ * Cluster invalidation cho second-level cache: sau commit publish "region:id" qua Redis,
+ * các node khác evict entry local. Đồng thời export hit/miss metrics theo region.
+ */
+@Component
+class SecondLevelCacheCoordinator implements PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    private static final String INVALIDATION_CHANNEL = "l2cache:invalidate";
+
+    private final Logger logger = LoggerFactory.getLogger(SecondLevelCacheCoordinator.class);
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Autowired
+    @Qualifier("userEntityManagerFactory")
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private RedisConnectionFactory redisConnectionFactory;
+
+    @Autowired
+    private CacheManager secondLevelCacheManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${cache.l2.cluster-invalidation:true}")
+    private boolean clusterInvalidation;
+
+    // Entity name -> region của các entities thực sự cacheable trong persistence unit
+    private final Map<String, String> regionByEntity = new ConcurrentHashMap<>();
+
+    private StringRedisTemplate redisTemplate;
+    private RedisMessageListenerContainer listenerContainer;
+
+    @PostConstruct
+    public void init() {
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        for (EntityPersister persister : sessionFactory.getMetamodel().entityPersisters().values()) {
+            if (persister.canWriteToCache()) {
+                regionByEntity.put(persister.getEntityName(), persister.getCacheAccessStrategy().getRegion().getName());
+            }
+        }
+
+        for (String regionName : new TreeSet<>(regionByEntity.values())) {
+            Cache<Object, Object> cache = secondLevelCacheManager.getCache(regionName);
+            if (cache != null) {
+                JCacheMetrics.monitor(meterRegistry, cache, "region", regionName);
+            }
+        }
+        if (regionByEntity.isEmpty()) {
+            logger.warn("Second-level cache is on but no entity in the persistence unit is cacheable");
+        } else {
+            logger.info("Second-level cache enabled for {} entities: {}", regionByEntity.size(), regionByEntity);
+        }
+
+        if (!clusterInvalidation) {
+            return;
+        }
+
+        EventListenerRegistry registry = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+
+        redisTemplate = new StringRedisTemplate(redisConnectionFactory);
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(redisConnectionFactory);
+        listenerContainer.addMessageListener(this::onInvalidation, new ChannelTopic(INVALIDATION_CHANNEL));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
         }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        publish(event.getPersister(), event.getId());
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+        // Transaction rollback: cache local không bị thay đổi, không cần invalidate
+    }
 
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        publish(event.getPersister(), event.getId());
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+        // Transaction rollback: cache local không bị thay đổi, không cần invalidate
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return regionByEntity.containsKey(persister.getEntityName());
+    }
+
+    public Map<String, Object> getRegionStats() {
+        Map<String, List<String>> entitiesByRegion = new TreeMap<>();
+        regionByEntity.forEach((entity, region) -> entitiesByRegion.computeIfAbsent(region, key -> new ArrayList<>()).add(entity));
+
+        Map<String, Object> stats = new HashMap<>();
+        entitiesByRegion.forEach((region, entities) -> stats.put(region, Map.of(
+            "entities", entities,
+            "hits", counterValue("cache.gets", region, "hit"),
+            "misses", counterValue("cache.gets", region, "miss")
+        )));
         return stats;
     }
+
+    private double counterValue(String name, String regionName, String result) {
+        FunctionCounter counter = meterRegistry.find(name)
+            .tags("region", regionName, "result", result)
+            .functionCounter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    private void publish(EntityPersister persister, Serializable id) {
+        String entityName = persister.getEntityName();
+        if (!regionByEntity.containsKey(entityName) || id == null) {
+            return;
+        }
+
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, nodeId + "|" + entityName + ":" + id);
+        } catch (Exception e) {
+            // Node khác vẫn hội tụ nhờ TTL của region
+            logger.warn("Failed to publish cache invalidation for {}:{}: {}", entityName, id, e.getMessage());
+        }
+    }
+
+    private void onInvalidation(Message message, byte[] pattern) {
+        String payload = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = payload.indexOf('|');
+        int colon = payload.lastIndexOf(':');
+        if (separator < 0 || colon < separator || payload.startsWith(nodeId + "|")) {
+            return;
+        }
+
+        String entityName = payload.substring(separator + 1, colon);
+        if (!regionByEntity.containsKey(entityName)) {
+            return;
+        }
+
+        try {
+            Long id = Long.valueOf(payload.substring(colon + 1));
+            entityManagerFactory.unwrap(SessionFactory.class).getCache().evictEntityData(entityName, id);
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring malformed cache invalidation: {}", payload);
+        }
+    }
 }
 
 /**
- * Database Connection Pool Monitoring
+ * Database Query Performance Monitor
  */
 @Component
-class ConnectionPoolMonitor {
+@Aspect
+class QueryPerformanceMonitor {
 
-    private final HikariDataSource dataSource;
-    private final Logger logger = LoggerFactory.getLogger(ConnectionPoolMonitor.class);
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final int MAX_PARAMETER_LENGTH = 200;
 
-    public ConnectionPoolMonitor(@Qualifier("userDataSource") HikariDataSource dataSource) {
-        this.dataSource = dataSource;
+    private final Logger logger = LoggerFactory.getLogger(QueryPerformanceMonitor.class);
+
+    // Key theo JoinPoint.StaticPart (identity) để hot path không phải build signature string
+    private final Map<JoinPoint.StaticPart, QueryStats> statsByJoinPoint = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    private final long slowQueryThresholdNanos;
+    private final boolean captureSlowParameters;
+    private final int slowSamplesPerQuery;
+
+    // Merge của các interval histograms: mỗi query đóng góp theo số calls của nó
+    private final Histogram aggregateInterval = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+    private volatile double aggregateP99Millis;
+
+    public QueryPerformanceMonitor(MeterRegistry meterRegistry,
+                                   @Value("${monitor.query.slow-threshold-ms:1000}") long slowQueryThresholdMillis,
+                                   @Value("${monitor.query.capture-slow-parameters:false}") boolean captureSlowParameters,
+                                   @Value("${monitor.query.slow-samples-per-query:5}") int slowSamplesPerQuery) {
+        this.meterRegistry = meterRegistry;
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMillis);
+        this.captureSlowParameters = captureSlowParameters;
+        this.slowSamplesPerQuery = slowSamplesPerQuery;
     }
 
-    @Scheduled(fixedRate = 300000) // Every 5 minutes
-    public void logPoolStats() {
-        HikariPoolMXBean poolMXBean = dataSource.getHikariPoolMXBean();
+    @Around("execution(* com.codeprefency.usermanagement.repository.*.*(..))")
+    public Object monitorQueryPerformance(ProceedingJoinPoint joinPoint) throws Throwable {
+        QueryStats stats = statsByJoinPoint.get(joinPoint.getStaticPart());
+        if (stats == null) {
+            stats = statsByJoinPoint.computeIfAbsent(joinPoint.getStaticPart(), this::registerQuery);
+        }
 
-        logger.info("Connection Pool Stats:");
-        logger.info("  Active Connections: {}", poolMXBean.getActiveConnections());
-        logger.info("  Idle Connections: {}", poolMXBean.getIdleConnections());
-        logger.info("  Total Connections: {}", poolMXBean.getTotalConnections());
-        logger.info("  Threads Awaiting Connection: {}", poolMXBean.getThreadsAwaitingConnection());
+        long startTime = System.nanoTime();
+        try {
+            Object result = joinPoint.proceed();
+
+            long executionTime = System.nanoTime() - startTime;
+            stats.record(executionTime, countRows(result));
+
+            if (executionTime > slowQueryThresholdNanos) {
+                logger.warn("Slow query detected in {}: {}ms",
+                           stats.getName(),
+                           TimeUnit.NANOSECONDS.toMillis(executionTime));
+                if (captureSlowParameters) {
+                    stats.sampleSlowCall(executionTime, joinPoint.getArgs(), slowSamplesPerQuery);
+                }
+            }
+
+            return result;
+
+        } catch (Throwable throwable) {
+            long executionTime = System.nanoTime() - startTime;
+            stats.recordError(executionTime);
+
+            logger.error("Query failed in {} after {}ms: {}",
+                        stats.getName(),
+                        TimeUnit.NANOSECONDS.toMillis(executionTime),
+                        throwable.getMessage());
+
+            throw throwable;
+        }
+    }
 
-        if (poolMXBean.getTotalConnections() > 15) {
-            logger.warn("High connection pool usage detected!");
+    /**
+     * Refresh interval snapshot cho Micrometer gauges và /api/health/queries
+     */
+    @Scheduled(fixedRate = 10000)
+    public void rollIntervals() {
+        statsByJoinPoint.values().forEach(QueryStats::roll);
+
+        aggregateInterval.reset();
+        for (QueryStats stats : statsByJoinPoint.values()) {
+            aggregateInterval.add(stats.getLastInterval());
         }
+        aggregateP99Millis = aggregateInterval.getTotalCount() == 0
+            ? 0 : aggregateInterval.getValueAtPercentile(99.0) / 1_000_000.0;
     }
-}
 
-/**
- * Custom JPA Repository với advanced features
- */
-@NoRepositoryBean
-interface BaseRepository<T, ID> extends JpaRepository<T, ID> {
+    public List<Map<String, Object>> getQueryStats() {
+        return getQueryStats(true);
+    }
 
     /**
-     * Find by multiple criteria với pagination
+     * includeSamples=false bỏ slowestCalls (bind parameters có thể chứa email, tokens)
      */
-    Page<T> findByCriteria(Map<String, Object> criteria, Pageable pageable);
+    public List<Map<String, Object>> getQueryStats(boolean includeSamples) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (QueryStats stats : statsByJoinPoint.values()) {
+            result.add(stats.toMap(includeSamples));
+        }
+        result.sort(Comparator.comparingDouble((Map<String, Object> entry) -> (Double) entry.get("p99Ms")).reversed());
+        return result;
+    }
 
     /**
-     * Bulk update operation
+     * p99 (last interval) của toàn bộ repository calls, weighted theo số calls, dùng để throttle background work.
+     * Một query hiếm nhưng chậm không còn kéo throttle như khi lấy max của p99 từng query
      */
-    @Modifying
-    @Query("UPDATE #{#entityName} e SET e.updatedAt = CURRENT_TIMESTAMP WHERE e.id IN :ids")
-    int bulkUpdateTimestamp(@Param("ids") List<ID> ids);
+    public double getAggregateP99Millis() {
+        return aggregateP99Millis;
+    }
+
+    private QueryStats registerQuery(JoinPoint.StaticPart staticPart) {
+        String repository = staticPart.getSignature().getDeclaringType().getSimpleName();
+        String method = staticPart.getSignature().getName();
+        QueryStats stats = new QueryStats(staticPart.getSignature().toShortString());
+
+        Tags tags = Tags.of("repository", repository, "method", method);
+        FunctionCounter.builder("db.query.calls", stats, QueryStats::getCalls).tags(tags).register(meterRegistry);
+        FunctionCounter.builder("db.query.errors", stats, QueryStats::getErrors).tags(tags).register(meterRegistry);
+        FunctionCounter.builder("db.query.rows", stats, QueryStats::getRows).tags(tags).register(meterRegistry);
+        Gauge.builder("db.query.latency", stats, s -> s.percentileMillis(50.0))
+            .tags(tags).tag("quantile", "0.5").baseUnit("milliseconds").register(meterRegistry);
+        Gauge.builder("db.query.latency", stats, s -> s.percentileMillis(99.0))
+            .tags(tags).tag("quantile", "0.99").baseUnit("milliseconds").register(meterRegistry);
+        Gauge.builder("db.query.latency", stats, s -> s.percentileMillis(99.9))
+            .tags(tags).tag("quantile", "0.999").baseUnit("milliseconds").register(meterRegistry);
+        return stats;
+    }
 
     /**
-     * Find with projections
+     * Số rows trả về: collection/page size, 1 cho entity đơn, update count cho @Modifying
      */
-    <P> List<P> findBy(Class<P> projectionClass);
+    private static long countRows(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Page) {
+            return ((Page<?>) result).getNumberOfElements();
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        if (result instanceof Integer || result instanceof Long) {
+            return ((Number) result).longValue();
+        }
+        return 1;
+    }
 
     /**
-     * Custom query với named parameters
+     * Per-query stats: Recorder cho lock-free writes, interval histogram cho reads
      */
-    @Query("SELECT e FROM #{#entityName} e WHERE e.createdAt >= :startDate")
-    List<T> findRecent(@Param("startDate") LocalDateTime startDate);
-}
+    static class QueryStats {
+        private final String name;
+        private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private final List<SlowCallSample> slowSamples = new ArrayList<>();
+
+        private Histogram intervalHistogram;
+        private volatile Histogram lastInterval = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+
+        QueryStats(String name) {
+            this.name = name;
+        }
 
-/**
- * Example Custom Repository Implementation
- */
-@Repository
-interface UserRepository extends BaseRepository<User, Long> {
+        void record(long nanos, long rowCount) {
+            recorder.recordValue(Math.min(nanos, HIGHEST_TRACKABLE_NANOS));
+            calls.incrementAndGet();
+            if (rowCount > 0) {
+                rows.addAndGet(rowCount);
+            }
+        }
 
-    List<User> findByRoleAndActive(UserRole role, boolean active);
+        void recordError(long nanos) {
+            recorder.recordValue(Math.min(nanos, HIGHEST_TRACKABLE_NANOS));
+            calls.incrementAndGet();
+            errors.incrementAndGet();
+        }
 
-    List<User> findByEmailContaining(String emailPart);
+        synchronized void roll() {
+            intervalHistogram = recorder.getIntervalHistogram(intervalHistogram);
+            lastInterval = intervalHistogram.copy();
+        }
 
-    @Query("SELECT u FROM User u WHERE u.lastLoginAt < :cutoffDate")
-    List<User> findInactiveUsers(@Param("cutoffDate") LocalDateTime cutoffDate);
+        /**
+         * Chỉ giữ N calls chậm nhất, bind parameters được render và cắt ngắn
+         */
+        void sampleSlowCall(long nanos, Object[] args, int limit) {
+            synchronized (slowSamples) {
+                if (slowSamples.size() >= limit && slowSamples.get(slowSamples.size() - 1).durationNanos >= nanos) {
+                    return;
+                }
+                slowSamples.add(new SlowCallSample(nanos, renderParameters(args), LocalDateTime.now()));
+                slowSamples.sort(Comparator.comparingLong((SlowCallSample sample) -> sample.durationNanos).reversed());
+                while (slowSamples.size() > limit) {
+                    slowSamples.remove(slowSamples.size() - 1);
+                }
+            }
+        }
 
-    @Query(value = "SELECT * FROM users WHERE email LIKE %:email%", nativeQuery = true)
-    List<User> findByEmailNative(@Param("email") String email);
+        Histogram getLastInterval() {
+            return lastInterval;
+        }
 
-    @Modifying
-    @Query("UPDATE User u SET u.failedLoginAttempts = u.failedLoginAttempts + 1 WHERE u.email = :email")
-    int incrementFailedAttempts(@Param("email") String email);
+        double percentileMillis(double percentile) {
+            Histogram histogram = lastInterval;
+            return histogram.getTotalCount() == 0 ? 0 : histogram.getValueAtPercentile(percentile) / 1_000_000.0;
+        }
+
+        Map<String, Object> toMap(boolean includeSamples) {
+            Histogram histogram = lastInterval;
+            Map<String, Object> map = new HashMap<>();
+            map.put("query", name);
+            map.put("calls", calls.get());
+            map.put("errors", errors.get());
+            map.put("rows", rows.get());
+            map.put("intervalCount", histogram.getTotalCount());
+            map.put("p50Ms", percentileMillis(50.0));
+            map.put("p99Ms", percentileMillis(99.0));
+            map.put("p999Ms", percentileMillis(99.9));
+            map.put("maxMs", histogram.getTotalCount() == 0 ? 0 : histogram.getMaxValue() / 1_000_000.0);
+            if (!includeSamples) {
+                return map;
+            }
+
+            List<Map<String, Object>> samples = new ArrayList<>();
+            synchronized (slowSamples) {
+                for (SlowCallSample sample : slowSamples) {
+                    samples.add(Map.of(
+                        "durationMs", sample.durationNanos / 1_000_000.0,
+                        "parameters", sample.parameters,
+                        "capturedAt", sample.capturedAt
+                    ));
+                }
+            }
+            map.put("slowestCalls", samples);
+            return map;
+        }
+
+        private static String renderParameters(Object[] args) {
+            String rendered = Arrays.toString(args);
+            return rendered.length() > MAX_PARAMETER_LENGTH
+                ? rendered.substring(0, MAX_PARAMETER_LENGTH) + "..."
+                : rendered;
+        }
+
+        public String getName() { return name; }
+        public long getCalls() { return calls.get(); }
+        public long getErrors() { return errors.get(); }
+        public long getRows() { return rows.get(); }
+    }
+
+    static class SlowCallSample {
+        final long durationNanos;
+        final String parameters;
+        final LocalDateTime capturedAt;
+
+        SlowCallSample(long durationNanos, String parameters, LocalDateTime capturedAt) {
+            this.durationNanos = durationNanos;
+            this.parameters = parameters;
+            this.capturedAt = capturedAt;
+        }
+    }
 }
 
 /**
- * Database Backup và Recovery Service
+ * Runtime-toggleable Hibernate statistics
+ * Tắt mặc định: interceptor chỉ đọc một volatile flag; bật lúc incident qua /api/health/hibernate.
+ * sampleRate chỉ áp dụng cho per-endpoint sampling; Hibernate Statistics là global của SessionFactory,
+ * khi bật thì mọi session (kể cả requests không được sample) đều ghi counters, nên chỉ bật trong lúc điều tra
  */
-@Service
-class DatabaseBackupService {
+class HibernateStatisticsSampler extends EmptyInterceptor implements SmartInitializingSingleton {
 
-    private final DataSource dataSource;
-    private final Logger logger = LoggerFactory.getLogger(DatabaseBackupService.class);
+    private static final ThreadLocal<SampledRequest> CURRENT = new ThreadLocal<>();
+    private static final int SLOW_QUERY_LIMIT = 10;
 
-    public DatabaseBackupService(DataSource dataSource) {
-        this.dataSource = dataSource;
+    private final transient Logger logger = LoggerFactory.getLogger(HibernateStatisticsSampler.class);
+    private final transient Map<String, EndpointStats> endpointStats = new ConcurrentHashMap<>();
+
+    @Autowired
+    @Lazy
+    @Qualifier("userEntityManagerFactory")
+    private transient EntityManagerFactory entityManagerFactory;
+
+    private volatile boolean enabled;
+    private volatile double sampleRate;
+    private volatile long slowQueryThresholdMillis;
+    private volatile LocalDateTime enabledAt;
+
+    HibernateStatisticsSampler(boolean enabled, double sampleRate, long slowQueryThresholdMillis) {
+        this.enabled = enabled;
+        this.sampleRate = sampleRate;
+        this.slowQueryThresholdMillis = slowQueryThresholdMillis;
+        this.enabledAt = enabled ? LocalDateTime.now() : null;
     }
 
     /**
-     * Create full database backup
+     * Sampler được tạo bên trong userEntityManagerFactory(), nên chỉ chạm EntityManagerFactory
+     * sau khi mọi singletons đã khởi tạo (tránh BeanCurrentlyInCreationException)
      */
-    public boolean createBackup(String backupPath) {
-        try {
-            // Get database name and credentials
-            String dbName = getDatabaseName();
-            String username = getDatabaseUsername();
-            String password = getDatabasePassword();
-            String host = getDatabaseHost();
-
-            // Create backup command
-            String command = String.format(
-                "mysqldump -h %s -u %s -p%s %s > %s",
-                host, username, password, dbName, backupPath
-            );
-
-            Process process = Runtime.getRuntime().exec(command);
-            int exitCode = process.waitFor();
-
-            if (exitCode == 0) {
-                logger.info("Database backup created successfully: {}", backupPath);
-                return true;
-            } else {
-                logger.error("Database backup failed with exit code: {}", exitCode);
-                return false;
-            }
-
-        } catch (Exception e) {
-            logger.error("Failed to create database backup", e);
-            return false;
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (enabled) {
+            statistics().setStatisticsEnabled(true);
         }
     }
 
     /**
-     * Restore database từ backup
+     * Bật/tắt statistics không cần redeploy; reset counters khi bật
      */
-    public boolean restoreFromBackup(String backupPath) {
-        try {
-            String dbName = getDatabaseName();
-            String username = getDatabaseUsername();
-            String password = getDatabasePassword();
-            String host = getDatabaseHost();
-
-            // Create restore command
-            String command = String.format(
-                "mysql -h %s -u %s -p%s %s < %s",
-                host, username, password, dbName, backupPath
-            );
-
-            Process process = Runtime.getRuntime().exec(command);
-            int exitCode = process.waitFor();
-
-            if (exitCode == 0) {
-                logger.info("Database restored successfully from: {}", backupPath);
-                return true;
-            } else {
-                logger.error("Database restore failed with exit code: {}", exitCode);
-                return false;
-            }
+    public synchronized void configure(boolean enable, double rate, long slowThresholdMillis) {
+        this.sampleRate = Math.max(0.0, Math.min(1.0, rate));
+        this.slowQueryThresholdMillis = slowThresholdMillis;
+
+        Statistics statistics = statistics();
+        if (enable && !enabled) {
+            statistics.clear();
+            endpointStats.clear();
+            enabledAt = LocalDateTime.now();
+        }
+        statistics.setStatisticsEnabled(enable);
+        this.enabled = enable;
 
-        } catch (Exception e) {
-            logger.error("Failed to restore database", e);
-            return false;
+        logger.warn("Hibernate statistics {} for all sessions (endpoint sample rate {}, slow query threshold {}ms)",
+                   enable ? "enabled" : "disabled", sampleRate, slowThresholdMillis);
+    }
+
+    boolean shouldSample() {
+        return enabled && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    void beginRequest() {
+        CURRENT.set(new SampledRequest());
+    }
+
+    void endRequest(String endpoint) {
+        SampledRequest sample = CURRENT.get();
+        CURRENT.remove();
+        if (sample != null && enabled) {
+            endpointStats.computeIfAbsent(endpoint, key -> new EndpointStats()).add(sample);
         }
     }
 
-    private String getDatabaseName() {
-        try (Connection conn = dataSource.getConnection()) {
-            return conn.getCatalog();
-        } catch (SQLException e) {
-            throw new RuntimeException("Cannot get database name", e);
+    @Override
+    public boolean onLoad(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+        if (enabled) {
+            SampledRequest sample = CURRENT.get();
+            if (sample != null) {
+                sample.entityLoads++;
+            }
         }
+        return false;
     }
 
-    private String getDatabaseUsername() {
-        // Get from configuration
-        return "root"; // Simplified for example
+    @Override
+    public String onPrepareStatement(String sql) {
+        if (enabled) {
+            SampledRequest sample = CURRENT.get();
+            if (sample != null) {
+                sample.statements++;
+            }
+        }
+        return sql;
     }
 
-    private String getDatabasePassword() {
-        // Get from configuration
-        return ""; // Simplified for example
+    @Override
+    public void preFlush(Iterator entities) {
+        if (enabled) {
+            SampledRequest sample = CURRENT.get();
+            if (sample != null) {
+                sample.flushStartNanos = System.nanoTime();
+            }
+        }
     }
 
-    private String getDatabaseHost() {
-        // Get from configuration
-        return "localhost"; // Simplified for example
+    @Override
+    public void postFlush(Iterator entities) {
+        if (enabled) {
+            SampledRequest sample = CURRENT.get();
+            if (sample != null && sample.flushStartNanos != 0) {
+                sample.flushes++;
+                sample.flushNanos += System.nanoTime() - sample.flushStartNanos;
+                sample.flushStartNanos = 0;
+                while (entities.hasNext()) {
+                    entities.next();
+                    sample.flushedEntities++;
+                }
+            }
+        }
     }
-}
 
-/**
- * Database Query Performance Monitor
- */
-@Component
-@Aspect
-class QueryPerformanceMonitor {
+    public Map<String, Object> getReport() {
+        Map<String, Object> report = new HashMap<>();
+        report.put("enabled", enabled);
+        report.put("sampleRate", sampleRate);
+        report.put("slowQueryThresholdMs", slowQueryThresholdMillis);
+        report.put("enabledAt", enabledAt);
+        if (!enabled) {
+            return report;
+        }
 
-    private final Logger logger = LoggerFactory.getLogger(QueryPerformanceMonitor.class);
+        Statistics statistics = statistics();
+        long planHits = statistics.getQueryPlanCacheHitCount();
+        long planMisses = statistics.getQueryPlanCacheMissCount();
+        Map<String, Object> global = new HashMap<>();
+        global.put("sessionsOpened", statistics.getSessionOpenCount());
+        global.put("entityLoads", statistics.getEntityLoadCount());
+        global.put("entityFetches", statistics.getEntityFetchCount());
+        global.put("flushes", statistics.getFlushCount());
+        global.put("queryExecutions", statistics.getQueryExecutionCount());
+        global.put("queryPlanCacheHits", planHits);
+        global.put("queryPlanCacheMisses", planMisses);
+        global.put("queryPlanCacheHitRatio", planHits + planMisses == 0 ? 0 : (double) planHits / (planHits + planMisses));
+        global.put("secondLevelCacheHits", statistics.getSecondLevelCacheHitCount());
+        global.put("secondLevelCacheMisses", statistics.getSecondLevelCacheMissCount());
+        report.put("global", global);
+
+        List<Map<String, Object>> slowQueries = new ArrayList<>();
+        for (String query : statistics.getQueries()) {
+            QueryStatistics queryStatistics = statistics.getQueryStatistics(query);
+            if (queryStatistics.getExecutionMaxTime() >= slowQueryThresholdMillis) {
+                slowQueries.add(Map.of(
+                    "query", query,
+                    "executions", queryStatistics.getExecutionCount(),
+                    "avgMs", queryStatistics.getExecutionAvgTime(),
+                    "maxMs", queryStatistics.getExecutionMaxTime(),
+                    "rows", queryStatistics.getExecutionRowCount()
+                ));
+            }
+        }
+        slowQueries.sort(Comparator.comparingLong((Map<String, Object> query) -> (Long) query.get("maxMs")).reversed());
+        report.put("slowQueries", slowQueries.size() > SLOW_QUERY_LIMIT ? slowQueries.subList(0, SLOW_QUERY_LIMIT) : slowQueries);
 
-    @Around("execution(* com.codeprefency.usermanagement.repository.*.*(..))")
-    public Object monitorQueryPerformance(ProceedingJoinPoint joinPoint) throws Throwable {
-        long startTime = System.currentTimeMillis();
+        Map<String, Object> endpoints = new HashMap<>();
+        endpointStats.forEach((endpoint, stats) -> endpoints.put(endpoint, stats.toMap()));
+        report.put("endpoints", endpoints);
+        return report;
+    }
 
-        try {
-            Object result = joinPoint.proceed();
+    private Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
 
-            long executionTime = System.currentTimeMillis() - startTime;
+    /**
+     * Counters của một sampled request; chỉ được ghi bởi request thread
+     */
+    static class SampledRequest {
+        long entityLoads;
+        long statements;
+        long flushes;
+        long flushedEntities;
+        long flushNanos;
+        long flushStartNanos;
+    }
 
-            // Log slow queries
-            if (executionTime > 1000) { // More than 1 second
-                logger.warn("Slow query detected in {}: {}ms",
-                           joinPoint.getSignature().toShortString(),
-                           executionTime);
-            }
+    static class EndpointStats {
+        private final LongAdder samples = new LongAdder();
+        private final LongAdder entityLoads = new LongAdder();
+        private final LongAdder statements = new LongAdder();
+        private final LongAdder flushes = new LongAdder();
+        private final LongAdder flushedEntities = new LongAdder();
+        private final LongAdder flushNanos = new LongAdder();
+        private final AtomicLong maxStatements = new AtomicLong();
+
+        void add(SampledRequest sample) {
+            samples.increment();
+            entityLoads.add(sample.entityLoads);
+            statements.add(sample.statements);
+            flushes.add(sample.flushes);
+            flushedEntities.add(sample.flushedEntities);
+            flushNanos.add(sample.flushNanos);
+            maxStatements.accumulateAndGet(sample.statements, Math::max);
+        }
 
-            // Log query statistics
-            logger.debug("Query executed in {}: {}ms",
-                        joinPoint.getSignature().toShortString(),
-                        executionTime);
+        Map<String, Object> toMap() {
+            long count = Math.max(1, samples.sum());
+            Map<String, Object> map = new HashMap<>();
+            map.put("samples", samples.sum());
+            map.put("avgEntityLoads", (double) entityLoads.sum() / count);
+            map.put("avgStatements", (double) statements.sum() / count);
+            map.put("maxStatements", maxStatements.get());
+            map.put("avgFlushes", (double) flushes.sum() / count);
+            map.put("avgFlushedEntities", (double) flushedEntities.sum() / count);
+            map.put("avgFlushMs", flushNanos.sum() / 1_000_000.0 / count);
+            return map;
+        }
+    }
+}
 
-            return result;
+/**
+ * Đánh dấu sampled requests cho HibernateStatisticsSampler, key theo handler pattern
+ */
+class HibernateSamplingFilter extends OncePerRequestFilter {
 
-        } catch (Throwable throwable) {
-            long executionTime = System.currentTimeMillis() - startTime;
+    private final HibernateStatisticsSampler sampler;
 
-            logger.error("Query failed in {} after {}ms: {}",
-                        joinPoint.getSignature().toShortString(),
-                        executionTime,
-                        throwable.getMessage());
+    HibernateSamplingFilter(HibernateStatisticsSampler sampler) {
+        this.sampler = sampler;
+    }
 
-            throw throwable;
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!sampler.shouldSample()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        sampler.beginRequest();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            // Request không khớp handler (404, static, scanners) gom chung, raw URI làm endpointStats tăng mãi
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            sampler.endRequest(request.getMethod() + " " + (pattern != null ? pattern : "unmatched"));
         }
     }
 }
 
 /**
  * Database Schema Validation
+ * Bulk đọc information_schema một lần, so sánh song song với expected model
+ * (JPA metamodel + schema.sql + baseline), skip hoàn toàn khi fingerprint không đổi
  */
 @Service
 class SchemaValidator {
 
+    private static final String FINGERPRINT_KEY_PREFIX = "schema:validated:";
+    private static final Map<String, List<String>> BASELINE_TABLES = Map.of(
+        "users", List.of("id", "email", "name", "role", "created_at"),
+        "products", List.of("id"),
+        "orders", List.of("id"),
+        "categories", List.of("id")
+    );
+    private static final Pattern CREATE_TABLE = Pattern.compile(
+        "CREATE\\s+TABLE\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?[`\"]?(\\w+)[`\"]?\\s*\\((.*?)\\);", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern CREATE_INDEX = Pattern.compile(
+        "CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?\\w+\\s+ON\\s+[`\"]?(\\w+)[`\"]?\\s*\\(([^)]*)\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern INLINE_INDEX = Pattern.compile("^(?:UNIQUE\\s+)?(?:INDEX|KEY)\\s+\\w+\\s*\\(([^)]*)\\)", Pattern.CASE_INSENSITIVE);
+    // Chỉ table-level constraints: InnoDB parse nhưng bỏ qua REFERENCES ở mức column
+    private static final Pattern FOREIGN_KEY = Pattern.compile(
+        "^(?:CONSTRAINT\\s+[`\"]?\\w*[`\"]?\\s*)?FOREIGN\\s+KEY\\s*(?:[`\"]?\\w+[`\"]?\\s*)?\\([^)]*\\)\\s*REFERENCES\\s+[`\"]?(\\w+)[`\"]?",
+        Pattern.CASE_INSENSITIVE);
+
     private final DataSource dataSource;
     private final Logger logger = LoggerFactory.getLogger(SchemaValidator.class);
 
+    @Autowired
+    @Lazy
+    @Qualifier("userEntityManagerFactory")
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    // database/schemas/schema.sql, đóng gói vào classpath root bởi pom.xml
+    @Value("${schema.validation.schema-sql:classpath:schema.sql}")
+    private String schemaSqlLocation;
+
+    @Value("${schema.validation.on-startup:true}")
+    private boolean validateOnStartup;
+
+    @Value("${schema.validation.cache-ttl-days:30}")
+    private long cacheTtlDays;
+
     public SchemaValidator(DataSource dataSource) {
         this.dataSource = dataSource;
     }
 
+    /**
+     * Chạy trên thread riêng: ApplicationReadyEvent listeners chạy tuần tự trên main thread
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void validateAtStartup() {
+        if (!validateOnStartup) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            List<String> issues = validateSchema();
+            if (issues.isEmpty()) {
+                logger.info("Database schema validation passed");
+            } else {
+                issues.forEach(issue -> logger.warn("Schema issue: {}", issue));
+            }
+        }, "schema-validation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     /**
      * Validate database schema
      */
     public List<String> validateSchema() {
-        List<String> issues = new ArrayList<>();
+        long startNanos = System.nanoTime();
 
-        try (Connection conn = dataSource.getConnection()) {
-            // Check required tables
-            String[] requiredTables = {"users", "products", "orders", "categories"};
-            for (String table : requiredTables) {
-                if (!tableExists(conn, table)) {
-                    issues.add("Missing required table: " + table);
-                }
-            }
+        try {
+            SchemaModel expected = buildExpectedModel();
 
-            // Check table structures
-            issues.addAll(validateUsersTable(conn));
-            issues.addAll(validateProductsTable(conn));
-            issues.addAll(validateOrdersTable(conn));
+            // Fingerprint: một aggregate query trên information_schema + hash của expected model
+            String fingerprint = fingerprint(expected);
+            if (isValidated(fingerprint)) {
+                logger.info("Schema fingerprint {} unchanged, skipping validation", fingerprint.substring(0, 12));
+                return new ArrayList<>();
+            }
 
-            // Check indexes
-            issues.addAll(validateIndexes(conn));
+            SchemaModel actual = loadActualModel();
+            List<String> issues = expected.tables.entrySet().parallelStream()
+                .flatMap(entry -> validateTable(entry.getKey(), entry.getValue(), actual.tables.get(entry.getKey())).stream())
+                .sorted()
+                .collect(Collectors.toList());
 
-            // Check foreign key constraints
-            issues.addAll(validateForeignKeys(conn));
+            if (issues.isEmpty()) {
+                markValidated(fingerprint);
+            }
+            logger.info("Schema validated in {}ms ({} tables, {} issues)",
+                       TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), expected.tables.size(), issues.size());
+            return issues;
 
-        } catch (SQLException e) {
+        } catch (Exception e) {
+            List<String> issues = new ArrayList<>();
             issues.add("Schema validation failed: " + e.getMessage());
+            return issues;
+        }
+    }
+
+    private List<String> validateTable(String table, SchemaModel.TableModel expected, SchemaModel.TableModel actual) {
+        List<String> issues = new ArrayList<>();
+        if (actual == null) {
+            issues.add("Missing required table: " + table);
+            return issues;
         }
 
+        for (String column : expected.columns) {
+            if (!actual.columns.contains(column)) {
+                issues.add(table + " table missing required column: " + column);
+            }
+        }
+        for (List<String> index : expected.indexes) {
+            // Index khớp nếu có index thực tế bắt đầu bằng các cột mong đợi (leftmost prefix)
+            boolean covered = actual.indexes.stream()
+                .anyMatch(candidate -> candidate.size() >= index.size() && candidate.subList(0, index.size()).equals(index));
+            if (!covered) {
+                issues.add(table + " table missing index on " + index);
+            }
+        }
+        for (String foreignKey : expected.foreignKeys) {
+            if (!actual.foreignKeys.contains(foreignKey)) {
+                issues.add(table + " table missing foreign key to " + foreignKey);
+            }
+        }
         return issues;
     }
 
-    private boolean tableExists(Connection conn, String tableName) throws SQLException {
-        try (PreparedStatement stmt = conn.prepareStatement(
-                "SELECT COUNT(*) FROM information_schema.tables WHERE table_name = ?")) {
-            stmt.setString(1, tableName);
-            try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next() && rs.getInt(1) > 0;
+    /**
+     * Expected model = baseline tables + JPA entities (tables/columns) + schema.sql (columns, indexes, FKs)
+     */
+    SchemaModel buildExpectedModel() throws IOException {
+        SchemaModel model = new SchemaModel();
+        BASELINE_TABLES.forEach((table, columns) -> model.table(table).columns.addAll(columns));
+
+        MetamodelImplementor metamodel = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getMetamodel();
+        for (EntityPersister persister : metamodel.entityPersisters().values()) {
+            if (!(persister instanceof AbstractEntityPersister)) {
+                continue;
+            }
+            AbstractEntityPersister entityPersister = (AbstractEntityPersister) persister;
+            SchemaModel.TableModel table = model.table(normalize(entityPersister.getTableName()));
+            for (String column : entityPersister.getIdentifierColumnNames()) {
+                table.columns.add(normalize(column));
+            }
+            for (int i = 0; i < entityPersister.getPropertyNames().length; i++) {
+                for (String column : entityPersister.getPropertyColumnNames(i)) {
+                    if (column != null) {
+                        table.columns.add(normalize(column));
+                    }
+                }
+            }
+        }
+
+        Resource schemaSql = resourceLoader.getResource(schemaSqlLocation);
+        if (schemaSql.exists()) {
+            try (InputStream input = schemaSql.getInputStream()) {
+                parseSchemaSql(new String(input.readAllBytes(), StandardCharsets.UTF_8), model);
             }
+        } else {
+            logger.warn("Schema SQL {} not found, indexes and foreign keys are not validated", schemaSqlLocation);
         }
+        return model;
     }
 
-    private List<String> validateUsersTable(Connection conn) {
-        List<String> issues = new ArrayList<>();
+    void parseSchemaSql(String sql, SchemaModel model) {
+        String withoutComments = sql.replaceAll("--[^\\n]*", "");
+
+        Matcher tables = CREATE_TABLE.matcher(withoutComments);
+        while (tables.find()) {
+            SchemaModel.TableModel table = model.table(normalize(tables.group(1)));
+            for (String definition : splitTopLevel(tables.group(2))) {
+                String trimmed = definition.trim();
+                Matcher inlineIndex = INLINE_INDEX.matcher(trimmed);
+                if (inlineIndex.find()) {
+                    table.indexes.add(columnList(inlineIndex.group(1)));
+                    continue;
+                }
+                Matcher foreignKey = FOREIGN_KEY.matcher(trimmed);
+                if (foreignKey.find()) {
+                    table.foreignKeys.add(normalize(foreignKey.group(1)));
+                    continue;
+                }
+                String firstToken = trimmed.split("\\s+")[0].toUpperCase();
+                if (Set.of("CONSTRAINT", "PRIMARY", "UNIQUE", "CHECK", "FOREIGN").contains(firstToken) || trimmed.isEmpty()) {
+                    continue;
+                }
+                table.columns.add(normalize(trimmed.split("\\s+")[0]));
+            }
+        }
+
+        Matcher indexes = CREATE_INDEX.matcher(withoutComments);
+        while (indexes.find()) {
+            model.table(normalize(indexes.group(1))).indexes.add(columnList(indexes.group(2)));
+        }
+    }
+
+    /**
+     * Actual model: information_schema được đọc bulk, ba queries chạy song song trên connections riêng
+     */
+    SchemaModel loadActualModel() throws Exception {
+        SchemaModel model = new SchemaModel();
+
+        CompletableFuture<List<String[]>> columns = CompletableFuture.supplyAsync(() -> queryRows(
+            "SELECT table_name, column_name FROM information_schema.columns WHERE table_schema = DATABASE()", 2));
+        CompletableFuture<List<String[]>> indexes = CompletableFuture.supplyAsync(() -> queryRows(
+            "SELECT table_name, index_name, column_name FROM information_schema.statistics " +
+            "WHERE table_schema = DATABASE() ORDER BY table_name, index_name, seq_in_index", 3));
+        CompletableFuture<List<String[]>> foreignKeys = CompletableFuture.supplyAsync(() -> queryRows(
+            "SELECT table_name, referenced_table_name FROM information_schema.key_column_usage " +
+            "WHERE table_schema = DATABASE() AND referenced_table_name IS NOT NULL", 2));
+
+        for (String[] row : columns.get()) {
+            model.table(normalize(row[0])).columns.add(normalize(row[1]));
+        }
+
+        Map<String, List<String>> indexColumns = new LinkedHashMap<>();
+        for (String[] row : indexes.get()) {
+            indexColumns.computeIfAbsent(normalize(row[0]) + "." + row[1], key -> new ArrayList<>()).add(normalize(row[2]));
+        }
+        indexColumns.forEach((key, indexed) -> model.table(key.substring(0, key.indexOf('.'))).indexes.add(indexed));
+
+        for (String[] row : foreignKeys.get()) {
+            model.table(normalize(row[0])).foreignKeys.add(normalize(row[1]));
+        }
+        return model;
+    }
+
+    private String fingerprint(SchemaModel expected) throws NoSuchAlgorithmException {
+        String actualChecksum = queryRows(
+            "SELECT " +
+            "(SELECT CONCAT(COUNT(*), ':', COALESCE(SUM(CRC32(CONCAT_WS('|', table_name, column_name, column_type, is_nullable))), 0)) " +
+            "   FROM information_schema.columns WHERE table_schema = DATABASE()), " +
+            "(SELECT CONCAT(COUNT(*), ':', COALESCE(SUM(CRC32(CONCAT_WS('|', table_name, index_name, column_name, seq_in_index))), 0)) " +
+            "   FROM information_schema.statistics WHERE table_schema = DATABASE()), " +
+            "(SELECT CONCAT(COUNT(*), ':', COALESCE(SUM(CRC32(CONCAT_WS('|', table_name, constraint_name, referenced_table_name))), 0)) " +
+            "   FROM information_schema.key_column_usage WHERE table_schema = DATABASE())", 3).stream()
+            .findFirst().map(row -> String.join("/", row)).orElse("");
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(actualChecksum.getBytes(StandardCharsets.UTF_8));
+        digest.update(expected.canonical().getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
 
+    private boolean isValidated(String fingerprint) {
         try {
-            DatabaseMetaData metaData = conn.getMetaData();
-            try (ResultSet columns = metaData.getColumns(null, null, "users", null)) {
-                Set<String> columnNames = new HashSet<>();
+            return Boolean.TRUE.equals(redisTemplate.hasKey(FINGERPRINT_KEY_PREFIX + fingerprint));
+        } catch (Exception e) {
+            // Redis không khả dụng: validate bình thường
+            return false;
+        }
+    }
 
-                while (columns.next()) {
-                    columnNames.add(columns.getString("COLUMN_NAME").toLowerCase());
-                }
+    private void markValidated(String fingerprint) {
+        try {
+            redisTemplate.opsForValue().set(FINGERPRINT_KEY_PREFIX + fingerprint, Instant.now().toString(),
+                                            Duration.ofDays(cacheTtlDays));
+        } catch (Exception e) {
+            logger.debug("Could not cache schema fingerprint: {}", e.getMessage());
+        }
+    }
 
-                // Check required columns
-                String[] requiredColumns = {"id", "email", "name", "role", "created_at"};
-                for (String column : requiredColumns) {
-                    if (!columnNames.contains(column)) {
-                        issues.add("Users table missing required column: " + column);
-                    }
+    private List<String[]> queryRows(String sql, int columnCount) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            List<String[]> rows = new ArrayList<>();
+            while (rs.next()) {
+                String[] row = new String[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    row[i] = rs.getString(i + 1);
                 }
+                rows.add(row);
             }
+            return rows;
         } catch (SQLException e) {
-            issues.add("Failed to validate users table: " + e.getMessage());
+            throw new RuntimeException("Schema query failed: " + e.getMessage(), e);
         }
+    }
 
-        return issues;
+    private static List<String> splitTopLevel(String definitions) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < definitions.length(); i++) {
+            char c = definitions.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                parts.add(definitions.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(definitions.substring(start));
+        return parts;
     }
 
-    private List<String> validateProductsTable(Connection conn) {
-        // Similar validation for products table
-        return new ArrayList<>();
+    private static List<String> columnList(String columns) {
+        List<String> result = new ArrayList<>();
+        for (String column : columns.split(",")) {
+            result.add(normalize(column.trim().split("\\s+")[0]));
+        }
+        return result;
+    }
+
+    private static String normalize(String identifier) {
+        return identifier.replace("`", "").replace("\"", "").toLowerCase();
     }
+}
 
-    private List<String> validateOrdersTable(Connection conn) {
-        // Similar validation for orders table
-        return new ArrayList<>();
+/**
+ * Schema model (expected hoặc actual): columns, indexes (ordered column lists), referenced tables
+ */
+class SchemaModel {
+
+    final Map<String, TableModel> tables = new ConcurrentHashMap<>();
+
+    TableModel table(String name) {
+        return tables.computeIfAbsent(name, key -> new TableModel());
     }
 
-    private List<String> validateIndexes(Connection conn) {
-        // Check for required indexes
-        return new ArrayList<>();
+    /**
+     * Canonical form (sorted) dùng cho fingerprint
+     */
+    String canonical() {
+        StringBuilder builder = new StringBuilder();
+        new TreeMap<>(tables).forEach((name, table) -> builder
+            .append(name).append('{')
+            .append(new TreeSet<>(table.columns)).append(';')
+            .append(table.indexes.stream().map(Object::toString).sorted().collect(Collectors.toList())).append(';')
+            .append(new TreeSet<>(table.foreignKeys)).append('}'));
+        return builder.toString();
     }
 
-    private List<String> validateForeignKeys(Connection conn) {
-        // Check foreign key constraints
-        return new ArrayList<>();
+    static class TableModel {
+        final Set<String> columns = ConcurrentHashMap.newKeySet();
+        final List<List<String>> indexes = new CopyOnWriteArrayList<>();
+        final Set<String> foreignKeys = ConcurrentHashMap.newKeySet();
     }
 }
 
@@ -978,7 +5593,6 @@ import org.apache.http.HttpHost;
 import org.springframework.data.elasticsearch.client.ClientConfiguration;
 import org.springframework.data.elasticsearch.client.RestClients;
 import java.util.function.Function;
-import java.util.function.Supplier;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
@@ -992,3 +5606,189 @@ import org.springframework.data.domain.Pageable;
 import java.time.LocalDateTime;
 import org.springframework.data.repository.query.Param;
 import java.util.Date;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Tags;
+import org.aspectj.lang.JoinPoint;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Optional;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.persistence.Entity;
+import javax.persistence.EntityManagerFactory;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.stat.Statistics;
+import org.hibernate.type.Type;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.core.Ordered;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import java.nio.charset.StandardCharsets;
+import java.util.OptionalLong;
+import java.util.UUID;
+import javax.annotation.PreDestroy;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import io.micrometer.core.instrument.Counter;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLNonTransientException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.SQLTransientException;
+import java.util.concurrent.locks.LockSupport;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.springframework.jdbc.core.RowMapper;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.function.BiConsumer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Time;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.ClassUtils;
+import javax.cache.Cache;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import javax.mail.MessagingException;
+import org.bson.Document;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
+import javax.persistence.EntityManager;
+import org.elasticsearch.client.RequestOptions;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.actuate.availability.ReadinessStateHealthIndicator;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.AvailabilityState;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.repository.config.BootstrapMode;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.hibernate.metamodel.spi.MetamodelImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
@@ -886,32 +886,47 @@ public class AnalyticsController {
 public class HealthController {
 
     @Autowired
-    private DatabaseUtils databaseUtils;
+    private HealthProbeRegistry healthProbeRegistry;
+
+    @Autowired
+    private ConnectionPoolMonitor connectionPoolMonitor;
+
+    @Autowired
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    @Autowired
+    private QueryPerformanceMonitor queryPerformanceMonitor;
+
+    @Autowired
+    private HibernateStatisticsSampler hibernateStatisticsSampler;
+
+    @Autowired
+    private OnlineMigrationRunner onlineMigrationRunner;
+
+    @Autowired
+    private StartupWarmup startupWarmup;
 
     /**
-     * Basic health check
+     * Basic health check - chỉ đọc kết quả probes đã cache, không chạm database
      */
     @GetMapping
     public ResponseEntity<Map<String, Object>> healthCheck() {
         Map<String, Object> health = new HashMap<>();
 
         // Application health
-        health.put("status", "UP");
+        String status = healthProbeRegistry.getOverallStatus();
+        health.put("status", status);
         health.put("timestamp", LocalDateTime.now());
         health.put("uptime", getUptime());
 
-        // Database health
-        try {
-            Map<String, Object> dbStats = databaseUtils.getDatabaseStats();
-            health.put("database", Map.of(
-                "status", "UP",
-                "details", dbStats
-            ));
-        } catch (Exception e) {
-            health.put("database", Map.of(
-                "status", "DOWN",
-                "error", e.getMessage()
-            ));
+        // Cached probe results với age
+        health.put("checks", healthProbeRegistry.getSummary());
+
+        // Warm-up: failed khi required tasks không xong trước startup.warmup.required-deadline-ms
+        health.put("warmup", startupWarmup.getWarmupStatus());
+        if (startupWarmup.isFailed()) {
+            status = "DOWN";
+            health.put("status", status);
         }
 
         // Memory usage
@@ -922,58 +937,98 @@ public class HealthController {
             "free", runtime.freeMemory()
         ));
 
-        return ResponseEntity.ok(health);
+        HttpStatus httpStatus = "DOWN".equals(status) ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.OK;
+        return ResponseEntity.status(httpStatus).body(health);
     }
 
     /**
-     * Detailed health check
+     * Detailed health check: probe details và latency, pool saturation, replica lag, query percentiles
      */
     @GetMapping("/detailed")
+    @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Map<String, Object>> detailedHealthCheck() {
         Map<String, Object> health = new HashMap<>();
 
-        // Add more detailed checks
-        health.put("checks", Map.of(
-            "database", checkDatabase(),
-            "cache", checkCache(),
-            "externalServices", checkExternalServices()
-        ));
+        health.put("status", healthProbeRegistry.getOverallStatus());
+        health.put("timestamp", LocalDateTime.now());
+        health.put("checks", healthProbeRegistry.getDetailedResults());
+        health.put("connectionPool", connectionPoolMonitor.getPoolStats());
+        health.put("replicaRouting", replicaRoutingDataSource.getRoutingStats());
+
+        // Các queries có p99 cao nhất trong interval gần nhất
+        List<Map<String, Object>> queries = queryPerformanceMonitor.getQueryStats(false);
+        health.put("slowestQueries", queries.subList(0, Math.min(5, queries.size())));
 
         return ResponseEntity.ok(health);
     }
 
-    private String getUptime() {
-        // Calculate uptime (simplified)
-        return "Unknown";
+    /**
+     * Per-query latency percentiles (last interval), error và row counts
+     */
+    @GetMapping("/queries")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> queryStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("timestamp", LocalDateTime.now());
+        response.put("queries", queryPerformanceMonitor.getQueryStats());
+        return ResponseEntity.ok(response);
     }
 
-    private Map<String, Object> checkDatabase() {
-        Map<String, Object> check = new HashMap<>();
+    /**
+     * Sampled Hibernate statistics report
+     */
+    @GetMapping("/hibernate")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> hibernateStats() {
+        return ResponseEntity.ok(hibernateStatisticsSampler.getReport());
+    }
 
-        try {
-            Map<String, Object> stats = databaseUtils.getDatabaseStats();
-            check.put("status", "UP");
-            check.put("details", stats);
-        } catch (Exception e) {
-            check.put("status", "DOWN");
-            check.put("error", e.getMessage());
-        }
+    /**
+     * Bật/tắt Hibernate statistics lúc runtime (incident), không cần redeploy
+     */
+    @PostMapping("/hibernate")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> configureHibernateStats(
+            @RequestParam boolean enabled,
+            @RequestParam(defaultValue = "0.05") double sampleRate,
+            @RequestParam(defaultValue = "500") long slowQueryMs) {
+        hibernateStatisticsSampler.configure(enabled, sampleRate, slowQueryMs);
+        return ResponseEntity.ok(hibernateStatisticsSampler.getReport());
+    }
+
+    /**
+     * Online data migrations: progress, chunk size hiện tại, lỗi gần nhất
+     */
+    @GetMapping("/migrations")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> onlineMigrations() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("timestamp", LocalDateTime.now());
+        response.put("migrations", onlineMigrationRunner.getMigrations());
+        return ResponseEntity.ok(response);
+    }
 
-        return check;
+    @PostMapping("/migrations/{id}/pause")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> pauseMigration(@PathVariable String id) {
+        if (!onlineMigrationRunner.pause(id)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "Migration is not pending or running"));
+        }
+        return ResponseEntity.ok(Map.of("id", id, "status", OnlineMigrationRunner.PAUSED));
     }
 
-    private Map<String, Object> checkCache() {
-        // Check Redis/cache health
-        Map<String, Object> check = new HashMap<>();
-        check.put("status", "UP");
-        return check;
+    @PostMapping("/migrations/{id}/resume")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> resumeMigration(@PathVariable String id) {
+        if (!onlineMigrationRunner.resume(id)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "Migration is not paused or failed"));
+        }
+        return ResponseEntity.ok(Map.of("id", id, "status", OnlineMigrationRunner.PENDING));
     }
 
-    private Map<String, Object> checkExternalServices() {
-        // Check external service health
-        Map<String, Object> check = new HashMap<>();
-        check.put("status", "UP");
-        return check;
+    private String getUptime() {
+        // Calculate uptime (simplified)
+        return "Unknown";
     }
 }
 
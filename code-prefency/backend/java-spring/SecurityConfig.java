@@ -51,6 +51,13 @@ public class SecurityConfig {
         return new BCryptPasswordEncoder(12); // Strength 12 for better security
     }
 
+    /**
+     * Password policy cho packages khác (UserService); implementation là PasswordPolicyValidator
+     */
+    public interface PasswordPolicy {
+        List<String> validate(String password);
+    }
+
     @Bean
     public AuthenticationManager authenticationManager(AuthenticationConfiguration authenticationConfiguration) throws Exception {
         return authenticationConfiguration.getAuthenticationManager();
@@ -261,95 +268,356 @@ class SecurityMonitoringConfig {
 }
 
 /**
- * Advanced Security Features
+ * Password Policy Validator
+ * Shared engine cho AdvancedSecurity và UserService: phân loại ký tự trong một lần duyệt,
+ * kiểm tra breached passwords qua memory-mapped sorted hash file (không tốn heap)
  */
 @Component
-class AdvancedSecurity {
+class PasswordPolicyValidator implements SecurityConfig.PasswordPolicy {
+
+    public static final int MIN_LENGTH = 8;
+
+    private static final String SPECIAL_CHARACTERS = "!@#$%^&*()_+-=[]{};':\"\\|,.<>/?";
+    private static final boolean[] SPECIAL_LOOKUP = new boolean[128];
+    private static final Set<String> COMMON_PASSWORDS = Set.of(
+        "password", "123456", "password123", "admin", "qwerty",
+        "letmein", "welcome", "monkey", "123456789", "password1"
+    );
+    private static final int HASH_BYTES = 8;
+    private static final long MAX_SEGMENT_BYTES = (Integer.MAX_VALUE / HASH_BYTES) * (long) HASH_BYTES;
+
+    static {
+        for (int i = 0; i < SPECIAL_CHARACTERS.length(); i++) {
+            SPECIAL_LOOKUP[SPECIAL_CHARACTERS.charAt(i)] = true;
+        }
+    }
 
-    private final PasswordEncoder passwordEncoder;
-    private final Logger logger = LoggerFactory.getLogger(AdvancedSecurity.class);
+    private final Logger logger = LoggerFactory.getLogger(PasswordPolicyValidator.class);
 
-    public AdvancedSecurity(PasswordEncoder passwordEncoder) {
-        this.passwordEncoder = passwordEncoder;
+    private final ThreadLocal<MessageDigest> sha1 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    });
+
+    private final MappedByteBuffer[] breachedSegments;
+    private final long breachedEntries;
+
+    /**
+     * breached-hash-file: các 8 bytes đầu (big-endian) của SHA-1(lowercase UTF-8 password), đã sort tăng dần
+     */
+    public PasswordPolicyValidator(@Value("${security.password.breached-hash-file:}") String breachedHashFile) {
+        MappedByteBuffer[] segments = new MappedByteBuffer[0];
+        long entries = 0;
+
+        if (!breachedHashFile.isEmpty()) {
+            try (FileChannel channel = FileChannel.open(Paths.get(breachedHashFile), StandardOpenOption.READ)) {
+                long size = channel.size() - channel.size() % HASH_BYTES;
+                int segmentCount = (int) ((size + MAX_SEGMENT_BYTES - 1) / MAX_SEGMENT_BYTES);
+                segments = new MappedByteBuffer[segmentCount];
+
+                for (int i = 0; i < segmentCount; i++) {
+                    long offset = i * MAX_SEGMENT_BYTES;
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAX_SEGMENT_BYTES, size - offset));
+                }
+                entries = size / HASH_BYTES;
+
+                logger.info("Loaded breached password corpus with {} entries from {}", entries, breachedHashFile);
+            } catch (IOException e) {
+                logger.error("Failed to map breached password corpus {}, falling back to built-in list", breachedHashFile, e);
+                segments = new MappedByteBuffer[0];
+                entries = 0;
+            }
+        }
+
+        this.breachedSegments = segments;
+        this.breachedEntries = entries;
     }
 
     /**
-     * Comprehensive password validation
+     * Validate password và trả về toàn bộ violations
      */
-    public List<String> validatePassword(String password) {
-        List<String> errors = new ArrayList<>();
+    @Override
+    public List<String> validate(String password) {
+        List<String> errors = new ArrayList<>(4);
 
-        if (password == null || password.length() < 8) {
-            errors.add("Password must be at least 8 characters long");
+        if (password == null) {
+            errors.add("Password must be at least " + MIN_LENGTH + " characters long");
+            return errors;
         }
 
-        if (!password.matches(".*[a-z].*")) {
-            errors.add("Password must contain at least one lowercase letter");
+        boolean hasLower = false;
+        boolean hasUpper = false;
+        boolean hasDigit = false;
+        boolean hasSpecial = false;
+        boolean hasSequence = false;
+
+        char previous = 0;
+        int run = 1;
+
+        // Single pass - thay cho 5 lần String.matches
+        for (int i = 0; i < password.length(); i++) {
+            char c = password.charAt(i);
+
+            if (c >= 'a' && c <= 'z') {
+                hasLower = true;
+            } else if (c >= 'A' && c <= 'Z') {
+                hasUpper = true;
+            } else if (c >= '0' && c <= '9') {
+                hasDigit = true;
+            } else if (c < 128 && SPECIAL_LOOKUP[c]) {
+                hasSpecial = true;
+            }
+
+            char lower = Character.toLowerCase(c);
+            run = (i > 0 && lower == previous + 1) ? run + 1 : 1;
+            if (run >= 3) {
+                hasSequence = true;
+            }
+            previous = lower;
         }
 
-        if (!password.matches(".*[A-Z].*")) {
+        if (password.length() < MIN_LENGTH) {
+            errors.add("Password must be at least " + MIN_LENGTH + " characters long");
+        }
+        if (!hasLower) {
+            errors.add("Password must contain at least one lowercase letter");
+        }
+        if (!hasUpper) {
             errors.add("Password must contain at least one uppercase letter");
         }
-
-        if (!password.matches(".*\\d.*")) {
+        if (!hasDigit) {
             errors.add("Password must contain at least one digit");
         }
-
-        if (!password.matches(".*[!@#$%^&*()_+\\-=\\[\\]{};':\"\\\\|,.<>\\/?].*")) {
+        if (!hasSpecial) {
             errors.add("Password must contain at least one special character");
         }
-
-        // Check for common passwords
         if (isCommonPassword(password)) {
             errors.add("Password is too common. Please choose a stronger password");
         }
-
-        // Check for sequential characters
-        if (hasSequentialChars(password)) {
+        if (hasSequence) {
             errors.add("Password should not contain sequential characters");
         }
 
         return errors;
     }
 
-    private boolean isCommonPassword(String password) {
-        // In production, this should check against a database of common passwords
-        String[] commonPasswords = {
-            "password", "123456", "password123", "admin", "qwerty",
-            "letmein", "welcome", "monkey", "123456789", "password1"
-        };
+    /**
+     * Check built-in list và breached corpus
+     */
+    public boolean isCommonPassword(String password) {
+        String normalized = password.toLowerCase(Locale.ROOT);
+        if (COMMON_PASSWORDS.contains(normalized)) {
+            return true;
+        }
+
+        if (breachedEntries == 0) {
+            return false;
+        }
+
+        MessageDigest digest = sha1.get();
+        byte[] hash = digest.digest(normalized.getBytes(StandardCharsets.UTF_8));
+
+        long prefix = 0;
+        for (int i = 0; i < HASH_BYTES; i++) {
+            prefix = (prefix << 8) | (hash[i] & 0xff);
+        }
+
+        return containsHash(prefix);
+    }
 
-        return Arrays.asList(commonPasswords).contains(password.toLowerCase());
+    public long getBreachedCorpusSize() {
+        return breachedEntries;
     }
 
-    private boolean hasSequentialChars(String password) {
-        String lower = password.toLowerCase();
+    private boolean containsHash(long target) {
+        long low = 0;
+        long high = breachedEntries - 1;
 
-        // Check for sequential letters (abc, bcd, etc.)
-        for (int i = 0; i < lower.length() - 2; i++) {
-            char a = lower.charAt(i);
-            char b = lower.charAt(i + 1);
-            char c = lower.charAt(i + 2);
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            int comparison = Long.compareUnsigned(hashAt(mid), target);
 
-            if (b == a + 1 && c == b + 1) {
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
                 return true;
             }
         }
 
-        // Check for sequential numbers (123, 234, etc.)
-        for (int i = 0; i < lower.length() - 2; i++) {
-            char a = lower.charAt(i);
-            char b = lower.charAt(i + 1);
-            char c = lower.charAt(i + 2);
+        return false;
+    }
 
-            if (Character.isDigit(a) && Character.isDigit(b) && Character.isDigit(c)) {
-                if (b == a + 1 && c == b + 1) {
-                    return true;
-                }
-            }
+    private long hashAt(long entry) {
+        long offset = entry * HASH_BYTES;
+        int segment = (int) (offset / MAX_SEGMENT_BYTES);
+        // Absolute get - MappedByteBuffer dùng chung giữa các threads an toàn
+        return breachedSegments[segment].getLong((int) (offset % MAX_SEGMENT_BYTES));
+    }
+}
+
+/**
+ * Field Encryption Service
+ * AES-GCM với cached derived keys và Cipher per thread (JDK dùng AES-NI/CLMUL intrinsics)
+ * Format: IV (12 bytes) || ciphertext || GCM tag (16 bytes)
+ */
+@Component
+class FieldEncryptionService {
+
+    public static final int IV_LENGTH = 12;
+    public static final int TAG_LENGTH = 16;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int MAX_REGISTERED_KEYS = 1024;
+
+    private final Map<String, SecretKey> derivedKeys = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new IllegalStateException("AES/GCM not available", e);
         }
+    });
+    private final ThreadLocal<SecureRandom> random = ThreadLocal.withInitial(SecureRandom::new);
 
-        return false;
+    /**
+     * Encrypt một field, trả về Base64(IV || ciphertext)
+     */
+    public String encrypt(String data, String key) {
+        byte[] plaintext = data.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer output = ByteBuffer.allocate(encryptedSize(plaintext.length));
+
+        encrypt(ByteBuffer.wrap(plaintext), output, key);
+
+        return Base64.getEncoder().encodeToString(output.array());
+    }
+
+    public String decrypt(String encryptedData, String key) {
+        ByteBuffer input = ByteBuffer.wrap(Base64.getDecoder().decode(encryptedData));
+        ByteBuffer output = ByteBuffer.allocate(Math.max(0, input.remaining() - IV_LENGTH - TAG_LENGTH));
+
+        decrypt(input, output, key);
+
+        return new String(output.array(), 0, output.position(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Zero-copy encrypt: đọc từ plaintext, ghi IV + ciphertext vào output (có thể là direct buffer)
+     */
+    public void encrypt(ByteBuffer plaintext, ByteBuffer output, String key) {
+        Cipher cipher = ciphers.get();
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            random.get().nextBytes(iv);
+
+            cipher.init(Cipher.ENCRYPT_MODE, deriveKey(key), new GCMParameterSpec(TAG_LENGTH * 8, iv));
+            output.put(iv);
+            cipher.doFinal(plaintext, output);
+        } catch (GeneralSecurityException e) {
+            throw new SecurityException("Failed to encrypt data", e);
+        }
+    }
+
+    /**
+     * Zero-copy decrypt: IV được đọc từ đầu input
+     */
+    public void decrypt(ByteBuffer input, ByteBuffer output, String key) {
+        if (input.remaining() < IV_LENGTH + TAG_LENGTH) {
+            throw new SecurityException("Encrypted data is too short");
+        }
+
+        Cipher cipher = ciphers.get();
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            input.get(iv);
+
+            cipher.init(Cipher.DECRYPT_MODE, deriveKey(key), new GCMParameterSpec(TAG_LENGTH * 8, iv));
+            cipher.doFinal(input, output);
+        } catch (GeneralSecurityException e) {
+            throw new SecurityException("Failed to decrypt data", e);
+        }
+    }
+
+    /**
+     * Batch mode cho cả result set - key chỉ resolve một lần
+     */
+    public List<String> encryptAll(List<String> values, String key) {
+        deriveKey(key);
+
+        List<String> encrypted = new ArrayList<>(values.size());
+        for (String value : values) {
+            encrypted.add(value != null ? encrypt(value, key) : null);
+        }
+        return encrypted;
+    }
+
+    public List<String> decryptAll(List<String> values, String key) {
+        deriveKey(key);
+
+        List<String> decrypted = new ArrayList<>(values.size());
+        for (String value : values) {
+            decrypted.add(value != null ? decrypt(value, key) : null);
+        }
+        return decrypted;
+    }
+
+    public int encryptedSize(int plaintextLength) {
+        return IV_LENGTH + plaintextLength + TAG_LENGTH;
+    }
+
+    /**
+     * Derive AES-256 key từ key material (SHA-256) và cache lại
+     */
+    private SecretKey deriveKey(String key) {
+        SecretKey secretKey = derivedKeys.get(key);
+        if (secretKey != null) {
+            return secretKey;
+        }
+
+        try {
+            byte[] material = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            secretKey = new SecretKeySpec(material, "AES");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+
+        if (derivedKeys.size() < MAX_REGISTERED_KEYS) {
+            derivedKeys.putIfAbsent(key, secretKey);
+        }
+        return secretKey;
+    }
+}
+
+/**
+ * Advanced Security Features
+ */
+@Component
+class AdvancedSecurity {
+
+    private static final String API_KEY_SPECIAL_CHARACTERS = "!@#$%^&*()_+-=[]{}|;:,.<>?";
+
+    private final PasswordEncoder passwordEncoder;
+    private final PasswordPolicyValidator passwordPolicyValidator;
+    private final FieldEncryptionService fieldEncryptionService;
+    private final Logger logger = LoggerFactory.getLogger(AdvancedSecurity.class);
+
+    public AdvancedSecurity(PasswordEncoder passwordEncoder, PasswordPolicyValidator passwordPolicyValidator,
+                            FieldEncryptionService fieldEncryptionService) {
+        this.passwordEncoder = passwordEncoder;
+        this.passwordPolicyValidator = passwordPolicyValidator;
+        this.fieldEncryptionService = fieldEncryptionService;
+    }
+
+    /**
+     * Comprehensive password validation
+     */
+    public List<String> validatePassword(String password) {
+        return passwordPolicyValidator.validate(password);
     }
 
     /**
@@ -379,15 +647,8 @@ class AdvancedSecurity {
      */
     public String encryptData(String data, String key) {
         try {
-            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-            SecretKey secretKey = new SecretKeySpec(key.getBytes(), "AES");
-            GCMParameterSpec parameterSpec = new GCMParameterSpec(128, generateIV());
-
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey, parameterSpec);
-
-            byte[] encryptedBytes = cipher.doFinal(data.getBytes());
-            return Base64.getEncoder().encodeToString(encryptedBytes);
-        } catch (Exception e) {
+            return fieldEncryptionService.encrypt(data, key);
+        } catch (SecurityException e) {
             logger.error("Encryption failed", e);
             throw new SecurityException("Failed to encrypt data");
         }
@@ -398,26 +659,13 @@ class AdvancedSecurity {
      */
     public String decryptData(String encryptedData, String key) {
         try {
-            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-            SecretKey secretKey = new SecretKeySpec(key.getBytes(), "AES");
-            GCMParameterSpec parameterSpec = new GCMParameterSpec(128, generateIV());
-
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, parameterSpec);
-
-            byte[] decryptedBytes = cipher.doFinal(Base64.getDecoder().decode(encryptedData));
-            return new String(decryptedBytes);
-        } catch (Exception e) {
+            return fieldEncryptionService.decrypt(encryptedData, key);
+        } catch (SecurityException | IllegalArgumentException e) {
             logger.error("Decryption failed", e);
             throw new SecurityException("Failed to decrypt data");
         }
     }
 
-    private byte[] generateIV() {
-        byte[] iv = new byte[12];
-        new SecureRandom().nextBytes(iv);
-        return iv;
-    }
-
     /**
      * Validate API key format và strength
      */
@@ -426,11 +674,24 @@ class AdvancedSecurity {
             return false;
         }
 
-        // Check for required character types
-        boolean hasUpper = apiKey.chars().anyMatch(Character::isUpperCase);
-        boolean hasLower = apiKey.chars().anyMatch(Character::isLowerCase);
-        boolean hasDigit = apiKey.chars().anyMatch(Character::isDigit);
-        boolean hasSpecial = apiKey.chars().anyMatch(ch -> "!@#$%^&*()_+-=[]{}|;:,.<>?".indexOf(ch) >= 0);
+        // Check for required character types trong một lần duyệt
+        boolean hasUpper = false;
+        boolean hasLower = false;
+        boolean hasDigit = false;
+        boolean hasSpecial = false;
+
+        for (int i = 0; i < apiKey.length(); i++) {
+            char ch = apiKey.charAt(i);
+            if (Character.isUpperCase(ch)) {
+                hasUpper = true;
+            } else if (Character.isLowerCase(ch)) {
+                hasLower = true;
+            } else if (Character.isDigit(ch)) {
+                hasDigit = true;
+            } else if (API_KEY_SPECIAL_CHARACTERS.indexOf(ch) >= 0) {
+                hasSpecial = true;
+            }
+        }
 
         return hasUpper && hasLower && hasDigit && hasSpecial;
     }
@@ -442,7 +703,7 @@ class AdvancedSecurity {
         String upperCase = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
         String lowerCase = "abcdefghijklmnopqrstuvwxyz";
         String digits = "0123456789";
-        String special = "!@#$%^&*()_+-=[]{}|;:,.<>?";
+        String special = API_KEY_SPECIAL_CHARACTERS;
 
         String allChars = upperCase + lowerCase + digits + special;
         SecureRandom random = new SecureRandom();
@@ -484,6 +745,12 @@ class SecurityAuditService {
     @Autowired
     private SecurityEventRepository securityEventRepository;
 
+    @Autowired
+    private SecurityAuditWriter securityAuditWriter;
+
+    @Autowired
+    private SuspiciousActivityDetector suspiciousActivityDetector;
+
     /**
      * Log security event
      */
@@ -497,9 +764,11 @@ class SecurityAuditService {
         event.setUserId(userId);
         event.setTimestamp(LocalDateTime.now());
 
-        securityEventRepository.save(event);
+        // Ghi bất đồng bộ theo batch, request thread chỉ enqueue
+        securityAuditWriter.submit(event);
+        suspiciousActivityDetector.onEvent(event);
 
-        logger.info("Security event logged: {} - {} from IP: {}",
+        logger.debug("Security event logged: {} - {} from IP: {}",
                    eventType, description, ipAddress);
     }
 
@@ -514,175 +783,1173 @@ class SecurityAuditService {
      * Detect suspicious activities
      */
     public List<SuspiciousActivity> detectSuspiciousActivities() {
-        List<SuspiciousActivity> suspiciousActivities = new ArrayList<>();
-
-        LocalDateTime oneHourAgo = LocalDateTime.now().minusHours(1);
-
-        // Multiple failed login attempts
-        List<SecurityEvent> failedLogins = securityEventRepository
-            .findByEventTypeAndTimestampAfter(SecurityEventType.FAILED_LOGIN, oneHourAgo);
-
-        Map<String, Long> failedLoginCounts = failedLogins.stream()
-            .collect(Collectors.groupingBy(SecurityEvent::getIpAddress, Collectors.counting()));
-
-        failedLoginCounts.forEach((ip, count) -> {
-            if (count >= 5) {
-                suspiciousActivities.add(new SuspiciousActivity(
-                    "Multiple failed login attempts",
-                    "IP: " + ip + " has " + count + " failed attempts in the last hour",
-                    ip,
-                    LocalDateTime.now()
-                ));
-            }
-        });
-
-        // Unusual access patterns
-        List<SecurityEvent> accessEvents = securityEventRepository
-            .findByEventTypeAndTimestampAfter(SecurityEventType.API_ACCESS, oneHourAgo);
-
-        // Analyze for unusual patterns...
-
-        return suspiciousActivities;
+        // Alerts được tính liên tục bởi streaming detector, không còn scan DB
+        return suspiciousActivityDetector.getActiveAlerts();
     }
 }
 
 /**
- * Two-Factor Authentication Service
+ * Asynchronous Security Audit Writer
+ * Lock-free ring buffer + background thread ghi JDBC batches, spill ra file khi DB down
  */
-@Service
-class TwoFactorAuthService {
-
-    private final String issuer = "UserManagementApp";
-
-    /**
-     * Generate 2FA secret
-     */
-    public String generateSecret() {
-        return Base32.random();
+@Component
+class SecurityAuditWriter {
+
+    private static final String INSERT_SQL =
+        "INSERT INTO security_events (event_type, description, ip_address, user_agent, user_id, timestamp) " +
+        "VALUES (?, ?, ?, ?, ?, ?)";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long BLOCK_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long SPILL_REPLAY_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final Logger logger = LoggerFactory.getLogger(SecurityAuditWriter.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AuditRingBuffer ringBuffer;
+    // Overflow của SPILL policy: request thread chỉ enqueue, writer thread ghi + fsync
+    private final Queue<SecurityEvent> spillQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger spillQueueSize = new AtomicInteger();
+    private final int spillQueueCapacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final AuditOverflowPolicy overflowPolicy;
+    private final Path spillFile;
+    private final Thread writerThread;
+
+    private volatile boolean running = true;
+    private long lastReplayAttempt = 0;
+    private long replaySequence = 0;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    public SecurityAuditWriter(DataSource dataSource,
+                               @Value("${security.audit.buffer-size:65536}") int bufferSize,
+                               @Value("${security.audit.batch-size:500}") int batchSize,
+                               @Value("${security.audit.flush-interval-ms:200}") long flushIntervalMillis,
+                               @Value("${security.audit.overflow-policy:SPILL}") AuditOverflowPolicy overflowPolicy,
+                               @Value("${security.audit.spill-file:./data/security-audit.spill}") String spillFile,
+                               @Value("${security.audit.spill-queue-size:65536}") int spillQueueCapacity) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // Pool chạy autoCommit=false: mỗi batch commit trong transaction riêng
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.ringBuffer = new AuditRingBuffer(bufferSize);
+        this.spillQueueCapacity = spillQueueCapacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.overflowPolicy = overflowPolicy;
+        this.spillFile = Paths.get(spillFile);
+
+        this.writerThread = new Thread(this::runWriter, "security-audit-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
     }
 
     /**
-     * Generate QR code URL cho 2FA setup
+     * Enqueue event - không bao giờ chạm DB trên request thread
      */
-    public String generateQRCodeUrl(String accountName, String secret) {
-        try {
-            String otpAuthUrl = String.format(
-                "otpauth://totp/%s:%s?secret=%s&issuer=%s",
-                URLEncoder.encode(issuer, "UTF-8"),
-                URLEncoder.encode(accountName, "UTF-8"),
-                secret,
-                URLEncoder.encode(issuer, "UTF-8")
-            );
+    public void submit(SecurityEvent event) {
+        if (ringBuffer.offer(event)) {
+            enqueued.incrementAndGet();
+            return;
+        }
 
-            return otpAuthUrl;
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException("Failed to generate QR code URL", e);
+        switch (overflowPolicy) {
+            case BLOCK:
+                long deadline = System.nanoTime() + BLOCK_TIMEOUT_NANOS;
+                while (System.nanoTime() < deadline) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS / 10);
+                    if (ringBuffer.offer(event)) {
+                        enqueued.incrementAndGet();
+                        return;
+                    }
+                }
+                dropped.incrementAndGet();
+                break;
+            case SPILL:
+                if (spillQueueSize.incrementAndGet() <= spillQueueCapacity) {
+                    spillQueue.offer(event);
+                    LockSupport.unpark(writerThread);
+                } else {
+                    spillQueueSize.decrementAndGet();
+                    dropped.incrementAndGet();
+                }
+                break;
+            case DROP:
+            default:
+                dropped.incrementAndGet();
+                break;
         }
     }
 
     /**
-     * Verify 2FA code
+     * Writer statistics cho monitoring
      */
-    public boolean verifyCode(String secret, String code) {
-        return verifyCode(secret, code, System.currentTimeMillis() / 1000L);
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enqueued", enqueued.get());
+        stats.put("written", written.get());
+        stats.put("dropped", dropped.get());
+        stats.put("spilled", spilled.get());
+        stats.put("failedBatches", failedBatches.get());
+        stats.put("pending", ringBuffer.size());
+        stats.put("pendingSpill", spillQueueSize.get());
+        stats.put("overflowPolicy", overflowPolicy);
+        return stats;
     }
 
-    public boolean verifyCode(String secret, String code, long time) {
-        byte[] key = Base32.decode(secret);
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writerThread);
+        writerThread.join(TimeUnit.SECONDS.toMillis(10));
+    }
 
-        for (int i = -2; i <= 2; i++) {
-            long timeWindow = time / 30 + i;
-            String expectedCode = generateTOTP(key, timeWindow);
+    private void runWriter() {
+        List<SecurityEvent> batch = new ArrayList<>(batchSize);
+        long batchStartedAt = 0;
 
-            if (expectedCode.equals(code)) {
-                return true;
+        while (running || ringBuffer.size() > 0 || !batch.isEmpty() || spillQueueSize.get() > 0) {
+            try {
+                int drained = ringBuffer.drainTo(batch, batchSize - batch.size());
+                drained += spillOverflow();
+
+                if (!batch.isEmpty() && batchStartedAt == 0) {
+                    batchStartedAt = System.nanoTime();
+                }
+
+                boolean full = batch.size() >= batchSize;
+                boolean due = !batch.isEmpty()
+                    && (!running || System.nanoTime() - batchStartedAt >= flushIntervalNanos);
+
+                if (full || due) {
+                    flush(batch);
+                    batch.clear();
+                    batchStartedAt = 0;
+                } else if (drained == 0) {
+                    replaySpillIfDue();
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            } catch (RuntimeException e) {
+                // Writer thread là consumer duy nhất: không được chết, batch đang giữ được spill
+                logger.error("Security audit writer iteration failed", e);
+                if (!batch.isEmpty()) {
+                    spill(batch);
+                    batch.clear();
+                    batchStartedAt = 0;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
             }
         }
-
-        return false;
     }
 
-    private String generateTOTP(byte[] key, long time) {
-        byte[] timeBytes = ByteBuffer.allocate(8).putLong(time).array();
+    /**
+     * Ghi overflow events của request threads vào spill file (một fsync cho cả nhóm)
+     */
+    private int spillOverflow() {
+        if (spillQueueSize.get() == 0) {
+            return 0;
+        }
+        List<SecurityEvent> events = new ArrayList<>();
+        SecurityEvent event;
+        while (events.size() < batchSize && (event = spillQueue.poll()) != null) {
+            events.add(event);
+        }
+        spillQueueSize.addAndGet(-events.size());
+        if (!events.isEmpty()) {
+            spill(events);
+        }
+        return events.size();
+    }
 
+    private void flush(List<SecurityEvent> batch) {
         try {
-            Mac mac = Mac.getInstance("HmacSHA1");
-            mac.init(new SecretKeySpec(key, "HmacSHA1"));
+            insertBatch(batch);
+            written.addAndGet(batch.size());
+            replaySpillIfDue();
+        } catch (RuntimeException e) {
+            // Gồm cả CannotCreateTransactionException khi DB không kết nối được
+            failedBatches.incrementAndGet();
+            logger.warn("Security audit batch of {} events failed, spilling to {}", batch.size(), spillFile, e);
+            spill(batch);
+        }
+    }
 
-            byte[] hash = mac.doFinal(timeBytes);
+    private void insertBatch(List<SecurityEvent> batch) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, event) -> {
+            ps.setString(1, event.getEventType().name());
+            ps.setString(2, event.getDescription());
+            ps.setString(3, event.getIpAddress());
+            ps.setString(4, event.getUserAgent());
+            if (event.getUserId() != null) {
+                ps.setLong(5, event.getUserId());
+            } else {
+                ps.setNull(5, Types.BIGINT);
+            }
+            ps.setTimestamp(6, Timestamp.valueOf(event.getTimestamp()));
+        }));
+    }
+
+    /**
+     * Append events vào spill file và fsync để không mất audit trail khi DB down
+     * Chỉ writer thread gọi
+     */
+    private void spill(List<SecurityEvent> events) {
+        StringBuilder lines = new StringBuilder();
+        for (SecurityEvent event : events) {
+            lines.append(encode(event)).append('\n');
+        }
+
+        try {
+            Files.createDirectories(spillFile.toAbsolutePath().getParent());
+            try (FileChannel channel = FileChannel.open(spillFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            spilled.addAndGet(events.size());
+        } catch (IOException e) {
+            dropped.addAndGet(events.size());
+            logger.error("Failed to spill {} security events to {}", events.size(), spillFile, e);
+        }
+    }
 
-            int offset = hash[hash.length - 1] & 0xf;
-            int binary = ((hash[offset] & 0x7f) << 24) |
-                        ((hash[offset + 1] & 0xff) << 16) |
-                        ((hash[offset + 2] & 0xff) << 8) |
-                        (hash[offset + 3] & 0xff);
+    /**
+     * Spill file được rotate thành replay file tên duy nhất; mỗi replay file được thử lại độc lập
+     * và có offset file ghi số dòng đã commit, nên replay lỗi giữa chừng không insert lại các batches trước
+     * (crash giữa commit và ghi offset có thể insert lại tối đa một batch)
+     */
+    private void replaySpillIfDue() {
+        long now = System.nanoTime();
+        if (now - lastReplayAttempt < SPILL_REPLAY_INTERVAL_NANOS) {
+            return;
+        }
+        lastReplayAttempt = now;
 
-            int otp = binary % 1000000;
+        try {
+            if (Files.exists(spillFile)) {
+                Path rotated = spillFile.resolveSibling(String.format("%s.%d-%06d.replay",
+                    spillFile.getFileName(), System.currentTimeMillis(), replaySequence++));
+                Files.move(spillFile, rotated, StandardCopyOption.ATOMIC_MOVE);
+            }
 
-            return String.format("%06d", otp);
+            Path directory = spillFile.toAbsolutePath().getParent();
+            if (directory == null || !Files.isDirectory(directory)) {
+                return;
+            }
+            List<Path> replayFiles = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, spillFile.getFileName() + "*.replay")) {
+                stream.forEach(replayFiles::add);
+            }
+            Collections.sort(replayFiles);
 
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to generate TOTP", e);
+            for (Path replayFile : replayFiles) {
+                replayFile(replayFile);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Replay files và offsets được giữ lại, lần sau sẽ thử lại từ offset đã commit
+            logger.warn("Failed to replay spilled security events from {}", spillFile, e);
         }
     }
-}
 
-/**
- * Security Headers Configuration
- */
-@Configuration
-class SecurityHeadersConfig implements WebMvcConfigurer {
+    private void replayFile(Path replayFile) throws IOException {
+        Path offsetFile = replayFile.resolveSibling(replayFile.getFileName() + ".offset");
+        long committed = Files.exists(offsetFile)
+            ? Long.parseLong(new String(Files.readAllBytes(offsetFile), StandardCharsets.UTF_8).trim())
+            : 0;
+
+        List<SecurityEvent> batch = new ArrayList<>(batchSize);
+        long lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber <= committed) {
+                    continue;
+                }
+                SecurityEvent event;
+                try {
+                    event = decode(line);
+                } catch (RuntimeException e) {
+                    // Dòng hỏng (ví dụ crash giữa lúc append): chuyển sang quarantine file, không chặn replay
+                    quarantine(line, replayFile, lineNumber, e);
+                    continue;
+                }
+                batch.add(event);
+                if (batch.size() >= batchSize) {
+                    insertBatch(batch);
+                    batch.clear();
+                    writeOffset(offsetFile, lineNumber);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            insertBatch(batch);
+        }
 
-    @Override
-    public void addInterceptors(InterceptorRegistry registry) {
-        registry.addInterceptor(new SecurityHeadersInterceptor());
+        Files.delete(replayFile);
+        Files.deleteIfExists(offsetFile);
+        logger.info("Replayed {} spilled security events from {}", lineNumber - committed, replayFile);
     }
 
-    private static class SecurityHeadersInterceptor implements HandlerInterceptor {
+    private void quarantine(String line, Path replayFile, long lineNumber, RuntimeException cause) throws IOException {
+        Path rejected = spillFile.resolveSibling(spillFile.getFileName() + ".rejected");
+        Files.write(rejected, (line + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        dropped.incrementAndGet();
+        logger.warn("Quarantined undecodable line {} of {} to {}: {}", lineNumber, replayFile, rejected, cause.toString());
+    }
 
-        @Override
-        public boolean preHandle(HttpServletRequest request, HttpServletResponse response,
-                               Object handler) throws Exception {
+    private void writeOffset(Path offsetFile, long committedLines) throws IOException {
+        Path temp = offsetFile.resolveSibling(offsetFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(Long.toString(committedLines).getBytes(StandardCharsets.UTF_8)));
+            channel.force(false);
+        }
+        Files.move(temp, offsetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
-            // Prevent MIME type sniffing
-            response.setHeader("X-Content-Type-Options", "nosniff");
+    private String encode(SecurityEvent event) {
+        Base64.Encoder encoder = Base64.getEncoder();
+        return String.join("\t",
+            event.getEventType().name(),
+            event.getDescription() == null ? "" : encoder.encodeToString(event.getDescription().getBytes(StandardCharsets.UTF_8)),
+            event.getIpAddress() == null ? "" : event.getIpAddress(),
+            event.getUserAgent() == null ? "" : encoder.encodeToString(event.getUserAgent().getBytes(StandardCharsets.UTF_8)),
+            event.getUserId() == null ? "" : event.getUserId().toString(),
+            event.getTimestamp().toString());
+    }
 
-            // Enable XSS protection
-            response.setHeader("X-XSS-Protection", "1; mode=block");
+    private SecurityEvent decode(String line) {
+        Base64.Decoder decoder = Base64.getDecoder();
+        String[] fields = line.split("\t", -1);
 
-            // Prevent clickjacking
-            response.setHeader("X-Frame-Options", "DENY");
+        SecurityEvent event = new SecurityEvent();
+        event.setEventType(SecurityEventType.valueOf(fields[0]));
+        event.setDescription(fields[1].isEmpty() ? null : new String(decoder.decode(fields[1]), StandardCharsets.UTF_8));
+        event.setIpAddress(fields[2].isEmpty() ? null : fields[2]);
+        event.setUserAgent(fields[3].isEmpty() ? null : new String(decoder.decode(fields[3]), StandardCharsets.UTF_8));
+        event.setUserId(fields[4].isEmpty() ? null : Long.valueOf(fields[4]));
+        event.setTimestamp(LocalDateTime.parse(fields[5]));
+        return event;
+    }
 
-            // Force HTTPS
-            response.setHeader("Strict-Transport-Security",
-                             "max-age=31536000; includeSubDomains");
+    /**
+     * Bounded multi-producer / single-consumer ring buffer
+     */
+    private static class AuditRingBuffer {
+        private final AtomicReferenceArray<SecurityEvent> slots;
+        private final int capacity;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head;
+
+        AuditRingBuffer(int requestedCapacity) {
+            int size = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+            this.slots = new AtomicReferenceArray<>(size);
+            this.capacity = size;
+            this.mask = size - 1;
+        }
 
-            // Content Security Policy
-            response.setHeader("Content-Security-Policy",
-                             "default-src 'self'; " +
-                             "script-src 'self' 'unsafe-inline' 'unsafe-eval'; " +
-                             "style-src 'self' 'unsafe-inline'; " +
-                             "img-src 'self' data: https:; " +
-                             "font-src 'self' https://fonts.gstatic.com; " +
-                             "connect-src 'self'");
+        boolean offer(SecurityEvent event) {
+            while (true) {
+                long currentTail = tail.get();
+                if (currentTail - head >= capacity) {
+                    return false;
+                }
+                if (tail.compareAndSet(currentTail, currentTail + 1)) {
+                    slots.lazySet((int) (currentTail & mask), event);
+                    return true;
+                }
+            }
+        }
 
-            // Referrer Policy
-            response.setHeader("Referrer-Policy", "strict-origin-when-cross-origin");
+        /**
+         * Chỉ writer thread gọi - dừng tại slot đã claim nhưng chưa publish
+         */
+        int drainTo(List<SecurityEvent> target, int maxEvents) {
+            long currentHead = head;
+            int drained = 0;
+
+            while (drained < maxEvents) {
+                int index = (int) (currentHead & mask);
+                SecurityEvent event = slots.get(index);
+                if (event == null) {
+                    break;
+                }
+                slots.lazySet(index, null);
+                target.add(event);
+                currentHead++;
+                drained++;
+            }
 
-            // Permissions Policy
-            response.setHeader("Permissions-Policy",
-                             "camera=(), microphone=(), geolocation=()");
+            head = currentHead;
+            return drained;
+        }
 
-            return true;
+        long size() {
+            return tail.get() - head;
         }
     }
 }
 
 /**
- * API Key Management Service
+ * Security audit overflow policies khi ring buffer đầy
  */
-@Service
-class ApiKeyService {
+enum AuditOverflowPolicy {
+    DROP,
+    BLOCK,
+    SPILL
+}
+
+/**
+ * Streaming Suspicious Activity Detector
+ * Sliding-window counters + count-min sketch, đánh giá rules ngay khi event xảy ra
+ */
+@Component
+class SuspiciousActivityDetector {
+
+    static final long WINDOW_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final int COUNTER_BUCKETS = 12;
+    private static final int SKETCH_SUB_WINDOWS = 6;
+
+    private final Logger logger = LoggerFactory.getLogger(SuspiciousActivityDetector.class);
+
+    private final List<SuspiciousActivityRule> rules;
+    // Một sketch mỗi event type: event type hiếm không bị cộng dồn collisions của loại nhiều traffic
+    private final Map<SecurityEventType, WindowedCountMinSketch> sketches = new EnumMap<>(SecurityEventType.class);
+    private final Map<String, SlidingWindowCounter> trackedCounters = new ConcurrentHashMap<>();
+    private final Map<String, ActiveAlert> activeAlerts = new ConcurrentHashMap<>();
+    private final int maxTrackedKeys;
+    private final int maxAlerts;
+    private final long promotionThreshold;
+
+    public SuspiciousActivityDetector(List<SuspiciousActivityRule> rules,
+                                      @Value("${security.detector.sketch-width:4096}") int sketchWidth,
+                                      @Value("${security.detector.max-tracked-keys:100000}") int maxTrackedKeys,
+                                      @Value("${security.detector.max-alerts:10000}") int maxAlerts,
+                                      @Value("${security.detector.promotion-threshold:3}") long promotionThreshold) {
+        this.rules = rules;
+        for (SecurityEventType eventType : SecurityEventType.values()) {
+            sketches.put(eventType, new WindowedCountMinSketch(4, sketchWidth, SKETCH_SUB_WINDOWS, WINDOW_MILLIS / SKETCH_SUB_WINDOWS));
+        }
+        this.maxTrackedKeys = maxTrackedKeys;
+        this.maxAlerts = maxAlerts;
+        this.promotionThreshold = promotionThreshold;
+    }
+
+    /**
+     * Feed một security event vào detector
+     */
+    public void onEvent(SecurityEvent event) {
+        long now = System.currentTimeMillis();
+
+        record(event.getEventType(), counterKey(event.getEventType(), "ip", event.getIpAddress()), now);
+        if (event.getUserId() != null) {
+            record(event.getEventType(), counterKey(event.getEventType(), "user", String.valueOf(event.getUserId())), now);
+        }
+
+        for (SuspiciousActivityRule rule : rules) {
+            try {
+                SuspiciousActivity activity = rule.evaluate(event, this);
+                if (activity != null) {
+                    raise(rule.getName() + "|" + rule.alertSubject(event), activity, now);
+                }
+            } catch (Exception e) {
+                logger.warn("Suspicious activity rule {} failed", rule.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Số events trong window (exact nếu key đã được promote, ngược lại là ước lượng từ sketch)
+     */
+    public long count(SecurityEventType eventType, String dimension, String value) {
+        String key = counterKey(eventType, dimension, value);
+        SlidingWindowCounter counter = trackedCounters.get(key);
+        if (counter != null) {
+            return counter.sum(System.currentTimeMillis());
+        }
+        return sketches.get(eventType).estimate(key, System.currentTimeMillis());
+    }
+
+    /**
+     * Query API cho các alerts hiện tại
+     */
+    public List<SuspiciousActivity> getActiveAlerts() {
+        return activeAlerts.values().stream()
+            .map(ActiveAlert::getActivity)
+            .collect(Collectors.toList());
+    }
+
+    public List<SuspiciousActivity> getActiveAlertsForIp(String ipAddress) {
+        return activeAlerts.values().stream()
+            .map(ActiveAlert::getActivity)
+            .filter(activity -> ipAddress.equals(activity.getIpAddress()))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Rotate sketch sub-windows và dọn counters, alerts đã hết hạn
+     */
+    @Scheduled(fixedRate = 60000)
+    public void expire() {
+        long now = System.currentTimeMillis();
+
+        for (WindowedCountMinSketch sketch : sketches.values()) {
+            sketch.rotate(now);
+        }
+        trackedCounters.entrySet().removeIf(entry -> entry.getValue().sum(now) == 0);
+        activeAlerts.entrySet().removeIf(entry -> now - entry.getValue().getLastSeen() > WINDOW_MILLIS);
+    }
+
+    private void record(SecurityEventType eventType, String key, long now) {
+        WindowedCountMinSketch sketch = sketches.get(eventType);
+        long estimate = sketch.add(key, now);
+
+        SlidingWindowCounter counter = trackedCounters.get(key);
+        if (counter == null && estimate >= promotionThreshold && trackedCounters.size() < maxTrackedKeys) {
+            // Heavy hitter - bắt đầu đếm chính xác; seed bằng các events trước promotion theo lower bound
+            // của sketch (estimate - error bound) để vừa không thiếu events cũ vừa không mang theo collisions
+            SlidingWindowCounter promoted = new SlidingWindowCounter(COUNTER_BUCKETS, WINDOW_MILLIS / COUNTER_BUCKETS);
+            long seenBefore = Math.max(0, estimate - 1 - sketch.errorBound());
+            if (seenBefore > 0) {
+                promoted.add(now, seenBefore);
+            }
+            counter = trackedCounters.putIfAbsent(key, promoted);
+            if (counter == null) {
+                counter = promoted;
+            }
+        }
+
+        if (counter != null) {
+            counter.add(now, 1);
+        }
+    }
+
+    private void raise(String alertKey, SuspiciousActivity activity, long now) {
+        ActiveAlert existing = activeAlerts.get(alertKey);
+        if (existing == null && activeAlerts.size() >= maxAlerts) {
+            return;
+        }
+
+        activeAlerts.put(alertKey, new ActiveAlert(activity, now));
+        if (existing == null) {
+            logger.warn("Suspicious activity detected: {}", alertKey);
+        }
+    }
+
+    private static String counterKey(SecurityEventType eventType, String dimension, String value) {
+        return eventType.name() + '|' + dimension + '|' + value;
+    }
+
+    private static class ActiveAlert {
+        private final SuspiciousActivity activity;
+        private final long lastSeen;
+
+        ActiveAlert(SuspiciousActivity activity, long lastSeen) {
+            this.activity = activity;
+            this.lastSeen = lastSeen;
+        }
+
+        public SuspiciousActivity getActivity() {
+            return activity;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+    }
+
+    /**
+     * Per-key counter chia window thành các buckets cố định
+     */
+    private static class SlidingWindowCounter {
+        private final AtomicLongArray counts;
+        private final AtomicLongArray epochs;
+        private final long bucketMillis;
+
+        SlidingWindowCounter(int buckets, long bucketMillis) {
+            this.counts = new AtomicLongArray(buckets);
+            this.epochs = new AtomicLongArray(buckets);
+            this.bucketMillis = bucketMillis;
+        }
+
+        void add(long now, long delta) {
+            long epoch = now / bucketMillis;
+            int index = (int) (epoch % counts.length());
+
+            long bucketEpoch = epochs.get(index);
+            if (bucketEpoch != epoch && epochs.compareAndSet(index, bucketEpoch, epoch)) {
+                counts.set(index, 0);
+            }
+            counts.addAndGet(index, delta);
+        }
+
+        long sum(long now) {
+            long oldestEpoch = now / bucketMillis - counts.length() + 1;
+            long total = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                if (epochs.get(i) >= oldestEpoch) {
+                    total += counts.get(i);
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Count-min sketch chia thành sub-windows để quên dữ liệu cũ
+     */
+    private static class WindowedCountMinSketch {
+        private final AtomicLongArray[] subWindows;
+        private final long[] subWindowEpochs;
+        private final int depth;
+        private final int width;
+        private final long subWindowMillis;
+
+        WindowedCountMinSketch(int depth, int width, int subWindowCount, long subWindowMillis) {
+            this.depth = depth;
+            this.width = width;
+            this.subWindowMillis = subWindowMillis;
+            this.subWindows = new AtomicLongArray[subWindowCount];
+            this.subWindowEpochs = new long[subWindowCount];
+            for (int i = 0; i < subWindowCount; i++) {
+                subWindows[i] = new AtomicLongArray(depth * width);
+            }
+            rotate(System.currentTimeMillis());
+        }
+
+        /**
+         * Add và trả về estimate trong toàn bộ window
+         */
+        long add(String key, long now) {
+            AtomicLongArray current = subWindows[(int) ((now / subWindowMillis) % subWindows.length)];
+            int hash1 = key.hashCode();
+            int hash2 = mix(hash1);
+
+            for (int row = 0; row < depth; row++) {
+                current.incrementAndGet(row * width + index(hash1, hash2, row));
+            }
+            return estimate(hash1, hash2);
+        }
+
+        long estimate(String key, long now) {
+            int hash1 = key.hashCode();
+            return estimate(hash1, mix(hash1));
+        }
+
+        /**
+         * Sai số tối đa của estimate (với xác suất 1 - e^-depth): e * N / width, N = tổng events trong window
+         */
+        long errorBound() {
+            long total = 0;
+            for (AtomicLongArray window : subWindows) {
+                for (int i = 0; i < width; i++) {
+                    total += window.get(i);
+                }
+            }
+            return (long) Math.ceil(Math.E * total / width);
+        }
+
+        synchronized void rotate(long now) {
+            long epoch = now / subWindowMillis;
+            int index = (int) (epoch % subWindows.length);
+            if (subWindowEpochs[index] != epoch) {
+                AtomicLongArray window = subWindows[index];
+                for (int i = 0; i < window.length(); i++) {
+                    window.set(i, 0);
+                }
+                subWindowEpochs[index] = epoch;
+            }
+        }
+
+        private long estimate(int hash1, int hash2) {
+            long min = Long.MAX_VALUE;
+            for (int row = 0; row < depth; row++) {
+                int index = row * width + index(hash1, hash2, row);
+                long total = 0;
+                for (AtomicLongArray window : subWindows) {
+                    total += window.get(index);
+                }
+                min = Math.min(min, total);
+            }
+            return min;
+        }
+
+        private int index(int hash1, int hash2, int row) {
+            return Math.floorMod(hash1 + row * hash2, width);
+        }
+
+        private static int mix(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            hash *= 0xc2b2ae35;
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
+
+/**
+ * Pluggable rule cho SuspiciousActivityDetector
+ */
+interface SuspiciousActivityRule {
+
+    String getName();
+
+    /**
+     * Trả về activity nếu event vi phạm rule, ngược lại null
+     */
+    SuspiciousActivity evaluate(SecurityEvent event, SuspiciousActivityDetector detector);
+
+    default String alertSubject(SecurityEvent event) {
+        return event.getIpAddress();
+    }
+}
+
+/**
+ * Nhiều lần login thất bại từ cùng một IP
+ */
+@Component
+class FailedLoginBurstRule implements SuspiciousActivityRule {
+
+    @Value("${security.detector.failed-login-threshold:5}")
+    private long threshold;
+
+    @Override
+    public String getName() {
+        return "Multiple failed login attempts";
+    }
+
+    @Override
+    public SuspiciousActivity evaluate(SecurityEvent event, SuspiciousActivityDetector detector) {
+        if (event.getEventType() != SecurityEventType.LOGIN_FAILED) {
+            return null;
+        }
+
+        long count = detector.count(SecurityEventType.LOGIN_FAILED, "ip", event.getIpAddress());
+        if (count < threshold) {
+            return null;
+        }
+
+        return new SuspiciousActivity(
+            getName(),
+            "IP: " + event.getIpAddress() + " has " + count + " failed attempts in the last hour",
+            event.getIpAddress(),
+            LocalDateTime.now()
+        );
+    }
+}
+
+/**
+ * Một account bị nhắm tới với nhiều lần login thất bại (có thể từ nhiều IP)
+ */
+@Component
+class TargetedAccountRule implements SuspiciousActivityRule {
+
+    @Value("${security.detector.account-failure-threshold:10}")
+    private long threshold;
+
+    @Override
+    public String getName() {
+        return "Targeted account";
+    }
+
+    @Override
+    public SuspiciousActivity evaluate(SecurityEvent event, SuspiciousActivityDetector detector) {
+        if (event.getEventType() != SecurityEventType.LOGIN_FAILED || event.getUserId() == null) {
+            return null;
+        }
+
+        long count = detector.count(SecurityEventType.LOGIN_FAILED, "user", String.valueOf(event.getUserId()));
+        if (count < threshold) {
+            return null;
+        }
+
+        return new SuspiciousActivity(
+            getName(),
+            "User: " + event.getUserId() + " has " + count + " failed attempts in the last hour",
+            event.getIpAddress(),
+            LocalDateTime.now()
+        );
+    }
+
+    @Override
+    public String alertSubject(SecurityEvent event) {
+        return String.valueOf(event.getUserId());
+    }
+}
+
+/**
+ * IP gọi API với tần suất bất thường (heavy hitter)
+ */
+@Component
+class ApiAccessHeavyHitterRule implements SuspiciousActivityRule {
+
+    @Value("${security.detector.api-access-threshold:10000}")
+    private long threshold;
+
+    @Override
+    public String getName() {
+        return "Unusual API access volume";
+    }
+
+    @Override
+    public SuspiciousActivity evaluate(SecurityEvent event, SuspiciousActivityDetector detector) {
+        if (event.getEventType() != SecurityEventType.API_ACCESS) {
+            return null;
+        }
+
+        long count = detector.count(SecurityEventType.API_ACCESS, "ip", event.getIpAddress());
+        if (count < threshold) {
+            return null;
+        }
+
+        return new SuspiciousActivity(
+            getName(),
+            "IP: " + event.getIpAddress() + " made " + count + " API calls in the last hour",
+            event.getIpAddress(),
+            LocalDateTime.now()
+        );
+    }
+}
+
+/**
+ * Two-Factor Authentication Service
+ * Thread-local Mac, cache secret đã decode, so sánh số nguyên và chống replay
+ */
+@Service
+class TwoFactorAuthService {
+
+    private static final int TIME_STEP_SECONDS = 30;
+    private static final int ALLOWED_DRIFT_STEPS = 2;
+    private static final int CODE_DIGITS = 6;
+    private static final int CODE_MODULUS = 1_000_000;
+
+    private final String issuer = "UserManagementApp";
+
+    private final Map<String, byte[]> decodedSecrets = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastAcceptedSteps = new ConcurrentHashMap<>();
+    private final int maxCachedSecrets;
+
+    @SuppressWarnings("unchecked")
+    private final ThreadLocal<Mac>[] macs = new ThreadLocal[TotpAlgorithm.values().length];
+    private final ThreadLocal<byte[]> counterBytes = ThreadLocal.withInitial(() -> new byte[8]);
+
+    public TwoFactorAuthService(@Value("${security.totp.max-cached-secrets:100000}") int maxCachedSecrets) {
+        this.maxCachedSecrets = maxCachedSecrets;
+
+        for (TotpAlgorithm algorithm : TotpAlgorithm.values()) {
+            macs[algorithm.ordinal()] = ThreadLocal.withInitial(() -> {
+                try {
+                    return Mac.getInstance(algorithm.getMacAlgorithm());
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException("Unsupported TOTP algorithm " + algorithm, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Generate 2FA secret
+     */
+    public String generateSecret() {
+        return Base32.random();
+    }
+
+    /**
+     * Generate QR code URL cho 2FA setup
+     */
+    public String generateQRCodeUrl(String accountName, String secret) {
+        return generateQRCodeUrl(accountName, secret, TotpAlgorithm.SHA1);
+    }
+
+    public String generateQRCodeUrl(String accountName, String secret, TotpAlgorithm algorithm) {
+        try {
+            String otpAuthUrl = String.format(
+                "otpauth://totp/%s:%s?secret=%s&issuer=%s&algorithm=%s",
+                URLEncoder.encode(issuer, "UTF-8"),
+                URLEncoder.encode(accountName, "UTF-8"),
+                secret,
+                URLEncoder.encode(issuer, "UTF-8"),
+                algorithm.name()
+            );
+
+            return otpAuthUrl;
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException("Failed to generate QR code URL", e);
+        }
+    }
+
+    /**
+     * Verify 2FA code
+     */
+    public boolean verifyCode(String secret, String code) {
+        return verifyCode(secret, code, TotpAlgorithm.SHA1, System.currentTimeMillis() / 1000L);
+    }
+
+    public boolean verifyCode(String secret, String code, TotpAlgorithm algorithm) {
+        return verifyCode(secret, code, algorithm, System.currentTimeMillis() / 1000L);
+    }
+
+    public boolean verifyCode(String secret, String code, long time) {
+        return verifyCode(secret, code, TotpAlgorithm.SHA1, time);
+    }
+
+    public boolean verifyCode(String secret, String code, TotpAlgorithm algorithm, long time) {
+        int expected = parseCode(code);
+        if (expected < 0) {
+            return false;
+        }
+
+        Mac mac = macs[algorithm.ordinal()].get();
+        try {
+            // init một lần cho cả 5 time windows
+            mac.init(new SecretKeySpec(decodeSecret(secret), algorithm.getMacAlgorithm()));
+        } catch (InvalidKeyException e) {
+            throw new RuntimeException("Failed to generate TOTP", e);
+        }
+
+        long currentStep = time / TIME_STEP_SECONDS;
+        for (int i = -ALLOWED_DRIFT_STEPS; i <= ALLOWED_DRIFT_STEPS; i++) {
+            long step = currentStep + i;
+            if (generateTOTP(mac, step) == expected) {
+                return markUsed(secret, step);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Replay protection: mỗi time step chỉ được dùng một lần cho mỗi secret
+     */
+    private boolean markUsed(String secret, long step) {
+        if (lastAcceptedSteps.size() >= maxCachedSecrets && !lastAcceptedSteps.containsKey(secret)) {
+            long oldestUsefulStep = System.currentTimeMillis() / 1000L / TIME_STEP_SECONDS - ALLOWED_DRIFT_STEPS;
+            lastAcceptedSteps.values().removeIf(lastStep -> lastStep < oldestUsefulStep);
+        }
+
+        long[] accepted = new long[1];
+        lastAcceptedSteps.compute(secret, (key, lastStep) -> {
+            if (lastStep != null && lastStep >= step) {
+                return lastStep;
+            }
+            accepted[0] = 1;
+            return step;
+        });
+
+        return accepted[0] == 1;
+    }
+
+    private byte[] decodeSecret(String secret) {
+        byte[] key = decodedSecrets.get(secret);
+        if (key == null) {
+            if (decodedSecrets.size() >= maxCachedSecrets) {
+                decodedSecrets.clear();
+            }
+            key = Base32.decode(secret);
+            decodedSecrets.put(secret, key);
+        }
+        return key;
+    }
+
+    private int parseCode(String code) {
+        if (code == null || code.length() != CODE_DIGITS) {
+            return -1;
+        }
+
+        int value = 0;
+        for (int i = 0; i < CODE_DIGITS; i++) {
+            char c = code.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private int generateTOTP(Mac mac, long step) {
+        byte[] timeBytes = counterBytes.get();
+        for (int i = 7; i >= 0; i--) {
+            timeBytes[i] = (byte) step;
+            step >>>= 8;
+        }
+
+        byte[] hash = mac.doFinal(timeBytes);
+
+        int offset = hash[hash.length - 1] & 0xf;
+        int binary = ((hash[offset] & 0x7f) << 24) |
+                    ((hash[offset + 1] & 0xff) << 16) |
+                    ((hash[offset + 2] & 0xff) << 8) |
+                    (hash[offset + 3] & 0xff);
+
+        return binary % CODE_MODULUS;
+    }
+}
+
+/**
+ * TOTP HMAC variants (RFC 6238)
+ */
+enum TotpAlgorithm {
+    SHA1("HmacSHA1"),
+    SHA256("HmacSHA256"),
+    SHA512("HmacSHA512");
+
+    private final String macAlgorithm;
+
+    TotpAlgorithm(String macAlgorithm) {
+        this.macAlgorithm = macAlgorithm;
+    }
+
+    public String getMacAlgorithm() {
+        return macAlgorithm;
+    }
+}
+
+/**
+ * Security Headers Configuration
+ * Servlet filter áp dụng cho mọi request (kể cả static resources), header set được tính sẵn lúc startup
+ */
+@Configuration
+class SecurityHeadersConfig {
+
+    @Bean
+    public FilterRegistrationBean<SecurityHeadersFilter> securityHeadersFilter(
+            @Value("${security.headers.csp-nonce-enabled:false}") boolean cspNonceEnabled) {
+        FilterRegistrationBean<SecurityHeadersFilter> registration =
+            new FilterRegistrationBean<>(new SecurityHeadersFilter(cspNonceEnabled));
+        registration.addUrlPatterns("/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    /**
+     * Route profiles với header set riêng
+     */
+    enum RouteProfile {
+        API,
+        STATIC,
+        PAGE
+    }
+
+    static class SecurityHeadersFilter extends OncePerRequestFilter {
+
+        static final String CSP_NONCE_ATTRIBUTE = "cspNonce";
+
+        private static final String[] COMMON_HEADER_NAMES = {
+            "X-Content-Type-Options",       // Prevent MIME type sniffing
+            "X-XSS-Protection",             // Enable XSS protection
+            "X-Frame-Options",              // Prevent clickjacking
+            "Strict-Transport-Security",    // Force HTTPS
+            "Referrer-Policy",
+            "Permissions-Policy"
+        };
+        private static final String[] COMMON_HEADER_VALUES = {
+            "nosniff",
+            "1; mode=block",
+            "DENY",
+            "max-age=31536000; includeSubDomains",
+            "strict-origin-when-cross-origin",
+            "camera=(), microphone=(), geolocation=()"
+        };
+
+        private static final String PAGE_CSP =
+            "default-src 'self'; " +
+            "script-src 'self' 'unsafe-inline' 'unsafe-eval'; " +
+            "style-src 'self' 'unsafe-inline'; " +
+            "img-src 'self' data: https:; " +
+            "font-src 'self' https://fonts.gstatic.com; " +
+            "connect-src 'self'";
+        private static final String NONCE_CSP_PREFIX = "default-src 'self'; script-src 'self' 'nonce-";
+        private static final String NONCE_CSP_SUFFIX =
+            "'; " +
+            "style-src 'self' 'unsafe-inline'; " +
+            "img-src 'self' data: https:; " +
+            "font-src 'self' https://fonts.gstatic.com; " +
+            "connect-src 'self'";
+        private static final String API_CSP = "default-src 'none'; frame-ancestors 'none'";
+        private static final String STATIC_CSP = "default-src 'self'";
+
+        private static final String[] STATIC_PREFIXES = {"/css/", "/js/", "/images/", "/favicon.ico"};
+
+        private final boolean cspNonceEnabled;
+        private final ThreadLocal<SecureRandom> nonceRandom = ThreadLocal.withInitial(SecureRandom::new);
+        private final ThreadLocal<byte[]> nonceBytes = ThreadLocal.withInitial(() -> new byte[16]);
+
+        SecurityHeadersFilter(boolean cspNonceEnabled) {
+            this.cspNonceEnabled = cspNonceEnabled;
+        }
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                        FilterChain filterChain) throws ServletException, IOException {
+            for (int i = 0; i < COMMON_HEADER_NAMES.length; i++) {
+                response.setHeader(COMMON_HEADER_NAMES[i], COMMON_HEADER_VALUES[i]);
+            }
+
+            // Content Security Policy theo route profile
+            switch (resolveProfile(request.getRequestURI())) {
+                case API:
+                    response.setHeader("Content-Security-Policy", API_CSP);
+                    break;
+                case STATIC:
+                    response.setHeader("Content-Security-Policy", STATIC_CSP);
+                    break;
+                case PAGE:
+                default:
+                    if (cspNonceEnabled) {
+                        String nonce = generateNonce();
+                        request.setAttribute(CSP_NONCE_ATTRIBUTE, nonce);
+                        response.setHeader("Content-Security-Policy", NONCE_CSP_PREFIX + nonce + NONCE_CSP_SUFFIX);
+                    } else {
+                        response.setHeader("Content-Security-Policy", PAGE_CSP);
+                    }
+                    break;
+            }
+
+            filterChain.doFilter(request, response);
+        }
+
+        RouteProfile resolveProfile(String uri) {
+            if (uri.startsWith("/api/")) {
+                return RouteProfile.API;
+            }
+            for (String prefix : STATIC_PREFIXES) {
+                if (uri.startsWith(prefix)) {
+                    return RouteProfile.STATIC;
+                }
+            }
+            return RouteProfile.PAGE;
+        }
+
+        private String generateNonce() {
+            byte[] bytes = nonceBytes.get();
+            nonceRandom.get().nextBytes(bytes);
+            return Base64.getEncoder().encodeToString(bytes);
+        }
+    }
+}
+
+/**
+ * API Key Management Service
+ * Validation từ bounded in-memory cache, lastUsedAt được gộp và flush theo batch
+ */
+@Service
+class ApiKeyService {
+
+    private final Logger logger = LoggerFactory.getLogger(ApiKeyService.class);
 
     @Autowired
     private ApiKeyRepository apiKeyRepository;
@@ -690,6 +1957,29 @@ class ApiKeyService {
     @Autowired
     private AdvancedSecurity advancedSecurity;
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private final Cache<String, ValidatedApiKey> validatedKeys;
+    private final Cache<String, Boolean> rejectedKeys;
+    private final Map<Long, LocalDateTime> pendingLastUsed = new ConcurrentHashMap<>();
+
+    public ApiKeyService(@Value("${security.api-key.cache-size:50000}") long cacheSize,
+                         @Value("${security.api-key.cache-ttl-seconds:300}") long cacheTtlSeconds) {
+        // TTL giới hạn độ trễ khi key bị revoke trên node khác
+        this.validatedKeys = CacheBuilder.newBuilder()
+            .maximumSize(cacheSize)
+            .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+            .build();
+        this.rejectedKeys = CacheBuilder.newBuilder()
+            .maximumSize(cacheSize)
+            .expireAfterWrite(30, TimeUnit.SECONDS)
+            .build();
+    }
+
     /**
      * Generate new API key
      */
@@ -705,6 +1995,8 @@ class ApiKeyService {
         apiKey.setLastUsedAt(LocalDateTime.now());
         apiKey.setIsActive(true);
 
+        rejectedKeys.invalidate(apiKey.getKeyHash());
+
         return apiKeyRepository.save(apiKey);
     }
 
@@ -712,27 +2004,19 @@ class ApiKeyService {
      * Validate API key
      */
     public boolean validateApiKey(String apiKey) {
-        if (!advancedSecurity.validateApiKey(apiKey)) {
-            return false;
-        }
-
-        String keyHash = hashApiKey(apiKey);
-        Optional<ApiKey> storedKey = apiKeyRepository.findByKeyHashAndIsActive(keyHash, true);
-
-        if (storedKey.isEmpty()) {
+        ValidatedApiKey key = lookup(apiKey);
+        if (key == null) {
             return false;
         }
 
-        ApiKey key = storedKey.get();
-
         // Check expiration
         if (key.getExpiresAt().isBefore(LocalDateTime.now())) {
+            validatedKeys.invalidate(key.getKeyHash());
             return false;
         }
 
-        // Update last used
-        key.setLastUsedAt(LocalDateTime.now());
-        apiKeyRepository.save(key);
+        // Gộp lastUsedAt, flushLastUsed sẽ ghi theo batch
+        pendingLastUsed.put(key.getId(), LocalDateTime.now());
 
         return true;
     }
@@ -741,41 +2025,191 @@ class ApiKeyService {
      * Get API key permissions
      */
     public List<String> getApiKeyPermissions(String apiKey) {
+        ValidatedApiKey key = lookup(apiKey);
+        return key != null ? key.getPermissions() : new ArrayList<>();
+    }
+
+    /**
+     * Revoke API key và invalidate cache entry
+     */
+    public void revokeApiKey(Long apiKeyId) {
+        apiKeyRepository.findById(apiKeyId).ifPresent(apiKey -> {
+            apiKey.setIsActive(false);
+            apiKeyRepository.save(apiKey);
+
+            validatedKeys.invalidate(apiKey.getKeyHash());
+            pendingLastUsed.remove(apiKeyId);
+        });
+    }
+
+    /**
+     * Flush coalesced lastUsedAt updates
+     */
+    @Scheduled(fixedDelayString = "${security.api-key.last-used-flush-ms:60000}")
+    public void flushLastUsed() {
+        if (pendingLastUsed.isEmpty()) {
+            return;
+        }
+
+        Map<Long, LocalDateTime> snapshot = new HashMap<>();
+        for (Long id : new ArrayList<>(pendingLastUsed.keySet())) {
+            LocalDateTime lastUsed = pendingLastUsed.remove(id);
+            if (lastUsed != null) {
+                snapshot.put(id, lastUsed);
+            }
+        }
+
+        try {
+            // Transaction commit bên trong try để lỗi flush/commit được bắt và snapshot được requeue
+            // Chỉ ghi cột last_used_at: save entity (full-column UPDATE) có thể ghi đè một revoke vừa commit
+            List<Object[]> rows = new ArrayList<>(snapshot.size());
+            snapshot.forEach((id, lastUsed) -> rows.add(new Object[] { Timestamp.valueOf(lastUsed), id }));
+            new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                new JdbcTemplate(dataSource).batchUpdate("UPDATE api_keys SET last_used_at = ? WHERE id = ?", rows));
+        } catch (Exception e) {
+            // Đưa lại vào pending, giữ timestamp mới nhất
+            snapshot.forEach((id, lastUsed) -> pendingLastUsed.merge(id, lastUsed,
+                (current, failed) -> current.isAfter(failed) ? current : failed));
+            logger.warn("Failed to flush lastUsedAt for {} API keys", snapshot.size(), e);
+        }
+    }
+
+    private ValidatedApiKey lookup(String apiKey) {
+        if (!advancedSecurity.validateApiKey(apiKey)) {
+            return null;
+        }
+
         String keyHash = hashApiKey(apiKey);
+
+        ValidatedApiKey cached = validatedKeys.getIfPresent(keyHash);
+        if (cached != null) {
+            return cached;
+        }
+        if (rejectedKeys.getIfPresent(keyHash) != null) {
+            return null;
+        }
+
         Optional<ApiKey> storedKey = apiKeyRepository.findByKeyHashAndIsActive(keyHash, true);
+        if (storedKey.isEmpty()) {
+            rejectedKeys.put(keyHash, Boolean.TRUE);
+            return null;
+        }
+
+        ApiKey key = storedKey.get();
+        ValidatedApiKey validated = new ValidatedApiKey(key.getId(), keyHash,
+            Collections.unmodifiableList(new ArrayList<>(key.getPermissions())), key.getExpiresAt());
+        validatedKeys.put(keyHash, validated);
 
-        return storedKey.map(ApiKey::getPermissions).orElse(new ArrayList<>());
+        return validated;
     }
 
     private String hashApiKey(String apiKey) {
         return Hashing.sha256().hashString(apiKey, StandardCharsets.UTF_8).toString();
     }
+
+    /**
+     * Immutable snapshot của một API key đã validate
+     */
+    private static class ValidatedApiKey {
+        private final Long id;
+        private final String keyHash;
+        private final List<String> permissions;
+        private final LocalDateTime expiresAt;
+
+        ValidatedApiKey(Long id, String keyHash, List<String> permissions, LocalDateTime expiresAt) {
+            this.id = id;
+            this.keyHash = keyHash;
+            this.permissions = permissions;
+            this.expiresAt = expiresAt;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getKeyHash() {
+            return keyHash;
+        }
+
+        public List<String> getPermissions() {
+            return permissions;
+        }
+
+        public LocalDateTime getExpiresAt() {
+            return expiresAt;
+        }
+    }
 }
 
 /**
  * Brute Force Protection
+ * Lock-free counters, một timing wheel duy nhất cho expiry và giới hạn cứng số entries
+ * Wheel giữ đúng các LoginAttempt đang được track (mỗi attempt nằm trong một slot), nên cũng bị giới hạn bởi maxEntries
  */
 @Component
 class BruteForceProtection {
 
+    private static final int MAX_FAILED_ATTEMPTS = 5;
+    private static final long FAILURE_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final long BLOCK_DURATION_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+    private static final int EVICTION_SCAN_LIMIT = 64;
+    private static final String CLUSTER_KEY_PREFIX = "bruteforce:blocked:";
+
     private final Map<String, LoginAttempt> attempts = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final TimingWheel expiryWheel = new TimingWheel(1024, 1000);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "brute-force-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int maxEntries;
+    private final boolean clusterEnabled;
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Autowired(required = false)
+    private RedisTemplate<String, Object> redisTemplate;
+
+    public BruteForceProtection(@Value("${security.brute-force.max-entries:1000000}") int maxEntries,
+                                @Value("${security.brute-force.cluster-enabled:false}") boolean clusterEnabled) {
+        this.maxEntries = maxEntries;
+        this.clusterEnabled = clusterEnabled;
+
+        // One tick task cho toàn bộ identifiers thay vì một task mỗi block
+        scheduler.scheduleAtFixedRate(this::expireDueEntries, 1, 1, TimeUnit.SECONDS);
+    }
 
     /**
      * Record failed login attempt
      */
     public void recordFailedAttempt(String identifier) {
-        LoginAttempt attempt = attempts.computeIfAbsent(identifier, k -> new LoginAttempt());
-        attempt.increment();
+        long now = System.currentTimeMillis();
+
+        LoginAttempt attempt = attempts.get(identifier);
+        if (attempt == null) {
+            if (attempts.size() >= maxEntries) {
+                evictOne();
+            }
 
-        if (attempt.getCount() >= 5) {
-            attempt.setBlocked(true);
-            attempt.setBlockedUntil(LocalDateTime.now().plusMinutes(15));
+            LoginAttempt created = new LoginAttempt(identifier, now + FAILURE_WINDOW_MILLIS);
+            attempt = attempts.putIfAbsent(identifier, created);
+            if (attempt == null) {
+                attempt = created;
+                expiryWheel.schedule(created, created.getExpiresAt());
+                // Check-then-evict ở trên không atomic: inserts đồng thời có thể vượt maxEntries trong chốc lát,
+                // mỗi thread insert tự evict lại cho tới khi về dưới giới hạn
+                while (attempts.size() > maxEntries && evictOne()) {
+                    // tiếp tục evict
+                }
+            }
+        }
 
-            // Schedule cleanup after block period
-            scheduler.schedule(() -> {
-                attempts.remove(identifier);
-            }, 15, TimeUnit.MINUTES);
+        int count = attempt.increment();
+
+        if (count == MAX_FAILED_ATTEMPTS && attempt.block(now + BLOCK_DURATION_MILLIS)) {
+            expiryWheel.schedule(attempt, attempt.getExpiresAt());
+            publishBlock(identifier);
         }
     }
 
@@ -785,56 +2219,268 @@ class BruteForceProtection {
     public boolean isBlocked(String identifier) {
         LoginAttempt attempt = attempts.get(identifier);
         if (attempt == null) {
-            return false;
+            return isBlockedInCluster(identifier);
         }
 
-        if (attempt.isBlocked() && attempt.getBlockedUntil().isAfter(LocalDateTime.now())) {
-            return true;
+        if (!attempt.isBlocked()) {
+            // Attempts có thể được rải qua nhiều nodes: block của node khác vẫn có hiệu lực
+            return isBlockedInCluster(identifier);
         }
 
         // Reset if block period expired
-        if (attempt.isBlocked() && attempt.getBlockedUntil().isBefore(LocalDateTime.now())) {
-            attempts.remove(identifier);
-            return false;
+        if (attempt.getExpiresAt() <= System.currentTimeMillis()) {
+            remove(attempt);
+            return isBlockedInCluster(identifier);
         }
 
-        return false;
+        return true;
     }
 
     /**
      * Record successful login
      */
     public void recordSuccessfulLogin(String identifier) {
-        attempts.remove(identifier);
+        LoginAttempt attempt = attempts.get(identifier);
+
+        // Không cho phép login thành công xoá block đang hiệu lực
+        if (attempt != null && !attempt.isBlocked()) {
+            remove(attempt);
+        }
+    }
+
+    /**
+     * Protection statistics cho monitoring
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("trackedIdentifiers", attempts.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("scheduledExpiries", expiryWheel.size());
+        stats.put("evictions", evictions.get());
+        stats.put("clusterEnabled", clusterEnabled);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void expireDueEntries() {
+        long now = System.currentTimeMillis();
+
+        expiryWheel.advance(now, attempt -> {
+            if (attempt.getExpiresAt() <= now) {
+                attempts.remove(attempt.getIdentifier(), attempt);
+            } else if (attempts.get(attempt.getIdentifier()) == attempt) {
+                // Deadline xa hơn một vòng wheel - đặt lại vào slot mới
+                expiryWheel.schedule(attempt, attempt.getExpiresAt());
+            }
+        });
+    }
+
+    /**
+     * Xoá khỏi map và khỏi wheel để identifier không còn giữ bộ nhớ tới deadline
+     */
+    private boolean remove(LoginAttempt attempt) {
+        if (attempts.remove(attempt.getIdentifier(), attempt)) {
+            expiryWheel.cancel(attempt);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Approximate LFU: lấy mẫu các entries sắp hết hạn, bỏ entry có ít lần thất bại nhất.
+     * Entries đang bị block chỉ bị evict khi không còn entry nào khác (giữ giới hạn cứng maxEntries);
+     * khi đó chọn block sắp hết hạn nhất.
+     */
+    private boolean evictOne() {
+        List<LoginAttempt> sample = expiryWheel.sampleNextDue(EVICTION_SAMPLE_SIZE);
+        LoginAttempt victim = leastFailures(sample);
+
+        if (victim == null) {
+            // Sample toàn entries bị block: quét một phần map để tìm entry chưa bị block
+            List<LoginAttempt> scanned = new ArrayList<>(EVICTION_SCAN_LIMIT);
+            for (LoginAttempt attempt : attempts.values()) {
+                scanned.add(attempt);
+                if (scanned.size() >= EVICTION_SCAN_LIMIT) {
+                    break;
+                }
+            }
+            victim = leastFailures(scanned);
+        }
+
+        if (victim == null && !sample.isEmpty()) {
+            victim = sample.get(0);
+        }
+
+        if (victim != null && remove(victim)) {
+            evictions.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private LoginAttempt leastFailures(List<LoginAttempt> candidates) {
+        LoginAttempt victim = null;
+        for (LoginAttempt attempt : candidates) {
+            if (attempt.isBlocked() || attempts.get(attempt.getIdentifier()) != attempt) {
+                continue;
+            }
+            if (victim == null || attempt.getCount() < victim.getCount()) {
+                victim = attempt;
+            }
+        }
+        return victim;
+    }
+
+    private void publishBlock(String identifier) {
+        if (!clusterEnabled || redisTemplate == null) {
+            return;
+        }
+
+        try {
+            redisTemplate.opsForValue().set(CLUSTER_KEY_PREFIX + identifier, Boolean.TRUE,
+                    Duration.ofMillis(BLOCK_DURATION_MILLIS));
+        } catch (Exception e) {
+            // Cluster sharing là best-effort, local block vẫn có hiệu lực
+        }
+    }
+
+    private boolean isBlockedInCluster(String identifier) {
+        if (!clusterEnabled || redisTemplate == null) {
+            return false;
+        }
+
+        try {
+            return Boolean.TRUE.equals(redisTemplate.hasKey(CLUSTER_KEY_PREFIX + identifier));
+        } catch (Exception e) {
+            return false;
+        }
     }
 
     private static class LoginAttempt {
-        private int count = 0;
-        private boolean blocked = false;
-        private LocalDateTime blockedUntil;
+        private final String identifier;
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicBoolean blocked = new AtomicBoolean(false);
+        private volatile long expiresAt;
+        // Slot hiện tại trong wheel (-1: chưa schedule), chỉ đọc/ghi dưới lock của wheel
+        private int slot = -1;
+
+        LoginAttempt(String identifier, long expiresAt) {
+            this.identifier = identifier;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
 
-        public void increment() {
-            this.count++;
+        public int increment() {
+            return count.incrementAndGet();
         }
 
         public int getCount() {
-            return count;
+            return count.get();
         }
 
         public boolean isBlocked() {
-            return blocked;
+            return blocked.get();
+        }
+
+        public boolean block(long blockedUntil) {
+            if (blocked.compareAndSet(false, true)) {
+                this.expiresAt = blockedUntil;
+                return true;
+            }
+            return false;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+    }
+
+    /**
+     * Hashed timing wheel - mỗi slot giữ các attempts hết hạn trong tick đó
+     * Mỗi attempt nằm trong tối đa một slot: re-schedule chuyển slot, cancel xoá hẳn
+     */
+    private static class TimingWheel {
+        private final Set<LoginAttempt>[] slots;
+        private final long tickMillis;
+        private long currentTick;
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        TimingWheel(int slotCount, long tickMillis) {
+            this.slots = new Set[slotCount];
+            for (int i = 0; i < slotCount; i++) {
+                // Identity: equals/hashCode mặc định của LoginAttempt
+                slots[i] = new HashSet<>();
+            }
+            this.tickMillis = tickMillis;
+            this.currentTick = System.currentTimeMillis() / tickMillis;
+        }
+
+        synchronized void schedule(LoginAttempt attempt, long deadline) {
+            // Deadlines xa hơn một vòng sẽ được re-schedule khi slot được drain
+            int target = (int) ((deadline / tickMillis) % slots.length);
+            if (attempt.slot == target) {
+                return;
+            }
+            cancel(attempt);
+            slots[target].add(attempt);
+            attempt.slot = target;
+            size++;
+        }
+
+        synchronized void cancel(LoginAttempt attempt) {
+            if (attempt.slot >= 0 && slots[attempt.slot].remove(attempt)) {
+                size--;
+            }
+            attempt.slot = -1;
         }
 
-        public void setBlocked(boolean blocked) {
-            this.blocked = blocked;
+        void advance(long now, Consumer<LoginAttempt> onDue) {
+            long targetTick = now / tickMillis;
+
+            // Chỉ một scheduler thread gọi advance nên currentTick không cần đồng bộ
+            while (currentTick <= targetTick) {
+                List<LoginAttempt> due;
+                synchronized (this) {
+                    Set<LoginAttempt> slot = slots[(int) (currentTick % slots.length)];
+                    due = new ArrayList<>(slot);
+                    slot.clear();
+                    size -= due.size();
+                    for (LoginAttempt attempt : due) {
+                        attempt.slot = -1;
+                    }
+                }
+                // Callback ngoài lock vì có thể schedule lại
+                due.forEach(onDue);
+                currentTick++;
+            }
         }
 
-        public LocalDateTime getBlockedUntil() {
-            return blockedUntil;
+        synchronized List<LoginAttempt> sampleNextDue(int sampleSize) {
+            List<LoginAttempt> sample = new ArrayList<>(sampleSize);
+            long tick = System.currentTimeMillis() / tickMillis;
+
+            for (int i = 0; i < slots.length && sample.size() < sampleSize; i++) {
+                for (LoginAttempt attempt : slots[(int) ((tick + i) % slots.length)]) {
+                    sample.add(attempt);
+                    if (sample.size() >= sampleSize) {
+                        break;
+                    }
+                }
+            }
+
+            return sample;
         }
 
-        public void setBlockedUntil(LocalDateTime blockedUntil) {
-            this.blockedUntil = blockedUntil;
+        synchronized int size() {
+            return size;
         }
     }
 }
@@ -932,8 +2578,6 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
-import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
-import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.springframework.stereotype.Component;
@@ -955,10 +2599,54 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.Iterator;
+import java.util.Locale;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import java.security.MessageDigest;
+import java.security.GeneralSecurityException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.core.Ordered;
+import org.springframework.web.filter.OncePerRequestFilter;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.springframework.scheduling.annotation.Scheduled;
+import java.util.concurrent.locks.LockSupport;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.nio.file.DirectoryStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import java.nio.file.StandardOpenOption;
+import java.io.BufferedReader;
+import java.io.IOException;
+import javax.annotation.PreDestroy;
 import java.util.stream.Collectors;
 import java.util.Collections;
 import java.security.SecureRandom;
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import javax.crypto.spec.GCMParameterSpec;
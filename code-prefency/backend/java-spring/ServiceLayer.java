@@ -11,6 +11,7 @@ import com.codeprefency.usermanagement.dto.ProductDto;
 import com.codeprefency.usermanagement.dto.OrderDto;
 import com.codeprefency.usermanagement.exception.ResourceNotFoundException;
 import com.codeprefency.usermanagement.exception.BusinessLogicException;
+import com.codeprefency.usermanagement.config.SecurityConfig;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -43,6 +44,9 @@ public class UserService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private SecurityConfig.PasswordPolicy passwordPolicy;
+
     @Autowired
     private EmailService emailService;
 
@@ -93,6 +97,7 @@ public class UserService {
      * Get user by ID với caching
      */
     @Cacheable(value = "users", key = "#id")
+    @Transactional(readOnly = true)
     public Optional<UserDto> getUserById(Long id) {
         Optional<User> user = userRepository.findById(id);
         return user.map(this::mapToDto);
@@ -160,6 +165,7 @@ public class UserService {
      * Get users với pagination và filtering
      */
     @Cacheable(value = "userLists", key = "#pageable.pageNumber + '_' + #pageable.pageSize + '_' + #filters")
+    @Transactional(readOnly = true)
     public Page<UserDto> getUsers(Pageable pageable, Map<String, Object> filters) {
         // Build specification based on filters
         Specification<User> spec = Specification.where(null);
@@ -244,6 +250,7 @@ public class UserService {
     /**
      * Get user statistics
      */
+    @Transactional(readOnly = true)
     public Map<String, Object> getUserStatistics() {
         Map<String, Object> stats = new HashMap<>();
 
@@ -298,27 +305,7 @@ public class UserService {
     }
 
     private void validatePasswordStrength(String password) {
-        List<String> errors = new ArrayList<>();
-
-        if (password.length() < 8) {
-            errors.add("Password must be at least 8 characters long");
-        }
-
-        if (!password.matches(".*[a-z].*")) {
-            errors.add("Password must contain at least one lowercase letter");
-        }
-
-        if (!password.matches(".*[A-Z].*")) {
-            errors.add("Password must contain at least one uppercase letter");
-        }
-
-        if (!password.matches(".*\\d.*")) {
-            errors.add("Password must contain at least one digit");
-        }
-
-        if (!password.matches(".*[!@#$%^&*()_+\\-=\\[\\]{};':\"\\\\|,.<>\\/?].*")) {
-            errors.add("Password must contain at least one special character");
-        }
+        List<String> errors = passwordPolicy.validate(password);
 
         if (!errors.isEmpty()) {
             throw new BusinessLogicException("Password validation failed: " + String.join(", ", errors));
@@ -417,8 +404,8 @@ public class ProductService {
 
         product = productRepository.save(product);
 
-        // Update inventory record
-        inventoryService.recordStockChange(productId, oldStock, newStock, reason);
+        // Update inventory record (inventory.available_stock là nguồn stock của ledger)
+        inventoryService.setAvailableStock(productId, newStock, reason);
 
         // Audit log
         auditService.logProductAction("STOCK_UPDATED", productId,
@@ -431,6 +418,7 @@ public class ProductService {
      * Get products với filtering và sorting
      */
     @Cacheable(value = "products", key = "#pageable.pageNumber + '_' + #pageable.pageSize + '_' + #filters")
+    @Transactional(readOnly = true)
     public Page<ProductDto> getProducts(Pageable pageable, Map<String, Object> filters) {
         // Build specification based on filters
         Specification<Product> spec = Specification.where(null);
@@ -469,9 +457,22 @@ public class ProductService {
         return products.map(this::mapToDto);
     }
 
+    /**
+     * Get products theo ids trong một query (findAllById), key là product id
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, ProductDto> getProductsByIds(Collection<Long> productIds) {
+        Map<Long, ProductDto> products = new HashMap<>();
+        for (Product product : productRepository.findAllById(productIds)) {
+            products.put(product.getId(), mapToDto(product));
+        }
+        return products;
+    }
+
     /**
      * Get low stock products
      */
+    @Transactional(readOnly = true)
     public List<ProductDto> getLowStockProducts() {
         List<Product> products = productRepository.findByStockLessThanMinStock();
         return products.stream().map(this::mapToDto).collect(Collectors.toList());
@@ -480,6 +481,7 @@ public class ProductService {
     /**
      * Get product statistics
      */
+    @Transactional(readOnly = true)
     public Map<String, Object> getProductStatistics() {
         Map<String, Object> stats = new HashMap<>();
 
@@ -553,9 +555,15 @@ public class ProductService {
 @Transactional
 public class OrderService {
 
+    private static final String INSERT_ORDER_ITEM_SQL =
+        "INSERT INTO order_items (order_id, product_id, quantity, price) VALUES (?, ?, ?, ?)";
+
     @Autowired
     private OrderRepository orderRepository;
 
+    @Autowired
+    private DatabaseUtils databaseUtils;
+
     @Autowired
     private ProductService productService;
 
@@ -578,26 +586,37 @@ public class OrderService {
         // Validate order
         validateOrderInput(orderDto);
 
-        // Check product availability and reserve inventory
-        Map<Long, Integer> reservedItems = new HashMap<>();
+        // Check product availability: một SELECT ... IN cho toàn bộ products
+        // TreeMap theo productId: mọi order lock inventory rows cùng thứ tự, tránh deadlock giữa hai orders
+        Map<Long, Integer> reservedItems = new TreeMap<>();
+        Map<Long, BigDecimal> unitPrices = new HashMap<>();
         BigDecimal totalAmount = BigDecimal.ZERO;
 
+        Set<Long> productIds = orderDto.getItems().stream()
+            .map(OrderItemDto::getProductId)
+            .collect(Collectors.toSet());
+        Map<Long, ProductDto> products = productService.getProductsByIds(productIds);
+
         for (OrderItemDto itemDto : orderDto.getItems()) {
-            ProductDto product = productService.getProductById(itemDto.getProductId())
-                .orElseThrow(() -> new BusinessLogicException("Product not found: " + itemDto.getProductId()));
+            ProductDto product = products.get(itemDto.getProductId());
+            if (product == null) {
+                throw new BusinessLogicException("Product not found: " + itemDto.getProductId());
+            }
 
             // Check stock availability
             if (product.getStock() < itemDto.getQuantity()) {
                 throw new BusinessLogicException("Insufficient stock for product: " + product.getName());
             }
 
-            // Reserve inventory
-            inventoryService.reserveInventory(itemDto.getProductId(), itemDto.getQuantity());
-            reservedItems.put(itemDto.getProductId(), itemDto.getQuantity());
+            reservedItems.merge(itemDto.getProductId(), itemDto.getQuantity(), Integer::sum);
+            unitPrices.put(itemDto.getProductId(), product.getPrice());
 
             totalAmount = totalAmount.add(product.getPrice().multiply(new BigDecimal(itemDto.getQuantity())));
         }
 
+        // Reserve inventory: một batched UPDATE cho toàn bộ items
+        inventoryService.reserveInventory(reservedItems);
+
         try {
             // Create order
             Order order = new Order();
@@ -612,16 +631,14 @@ public class OrderService {
 
             order = orderRepository.save(order);
 
-            // Create order items
+            // Create order items: một JDBC batch (rewriteBatchedStatements) thay vì một INSERT mỗi item
+            List<Object[]> itemRows = new ArrayList<>(orderDto.getItems().size());
             for (OrderItemDto itemDto : orderDto.getItems()) {
-                OrderItem item = new OrderItem();
-                item.setOrderId(order.getId());
-                item.setProductId(itemDto.getProductId());
-                item.setQuantity(itemDto.getQuantity());
-                item.setPrice(productService.getProductById(itemDto.getProductId()).get().getPrice());
-
-                orderRepository.saveOrderItem(item);
+                itemRows.add(new Object[] {
+                    order.getId(), itemDto.getProductId(), itemDto.getQuantity(), unitPrices.get(itemDto.getProductId())
+                });
             }
+            databaseUtils.batchUpdateInTransaction(INSERT_ORDER_ITEM_SQL, itemRows);
 
             // Process payment
             PaymentResult paymentResult = paymentService.processPayment(order);
@@ -631,9 +648,7 @@ public class OrderService {
                 order.setPaymentId(paymentResult.getPaymentId());
 
                 // Confirm inventory reservation
-                for (Map.Entry<Long, Integer> entry : reservedItems.entrySet()) {
-                    inventoryService.confirmReservation(entry.getKey(), entry.getValue());
-                }
+                inventoryService.confirmReservations(reservedItems);
 
                 // Send confirmation email
                 emailService.sendOrderConfirmation(orderDto.getUserId(), order.getId());
@@ -645,9 +660,7 @@ public class OrderService {
                 order.setStatus(OrderStatus.CANCELLED);
                 order.setCancellationReason("Payment failed");
 
-                for (Map.Entry<Long, Integer> entry : reservedItems.entrySet()) {
-                    inventoryService.releaseReservation(entry.getKey(), entry.getValue());
-                }
+                inventoryService.releaseReservations(reservedItems);
 
                 throw new BusinessLogicException("Payment failed: " + paymentResult.getErrorMessage());
             }
@@ -659,9 +672,7 @@ public class OrderService {
 
         } catch (Exception e) {
             // Release all reserved inventory on failure
-            for (Map.Entry<Long, Integer> entry : reservedItems.entrySet()) {
-                inventoryService.releaseReservation(entry.getKey(), entry.getValue());
-            }
+            inventoryService.releaseReservations(reservedItems);
             throw e;
         }
     }
@@ -692,9 +703,11 @@ public class OrderService {
 
             // Release inventory for cancelled orders
             List<OrderItem> items = orderRepository.findOrderItemsByOrderId(orderId);
+            Map<Long, Integer> releasedItems = new LinkedHashMap<>();
             for (OrderItem item : items) {
-                inventoryService.releaseReservation(item.getProductId(), item.getQuantity());
+                releasedItems.merge(item.getProductId(), item.getQuantity(), Integer::sum);
             }
+            inventoryService.releaseReservations(releasedItems);
         }
 
         order = orderRepository.save(order);
@@ -710,6 +723,7 @@ public class OrderService {
      * Get orders với filtering
      */
     @Cacheable(value = "orders", key = "#pageable.pageNumber + '_' + #pageable.pageSize + '_' + #filters")
+    @Transactional(readOnly = true)
     public Page<OrderDto> getOrders(Pageable pageable, Map<String, Object> filters) {
         Specification<Order> spec = Specification.where(null);
 
@@ -740,6 +754,7 @@ public class OrderService {
     /**
      * Get order statistics
      */
+    @Transactional(readOnly = true)
     public Map<String, Object> getOrderStatistics() {
         Map<String, Object> stats = new HashMap<>();
 
@@ -880,9 +895,10 @@ public class NotificationService {
 
 /**
  * Analytics Service
- * Business intelligence và reporting
+ * Business intelligence và reporting - read-only, được route tới replica
  */
 @Service
+@Transactional(readOnly = true)
 public class AnalyticsService {
 
     @Autowired
@@ -1143,12 +1159,30 @@ public class EmailService {
 @Transactional
 public class InventoryService {
 
+    private static final String RESERVE_SQL =
+        "UPDATE inventory SET available_stock = available_stock - ?, reserved_stock = reserved_stock + ?, updated_at = ? " +
+        "WHERE product_id = ? AND available_stock >= ?";
+    private static final String CONFIRM_SQL =
+        "UPDATE inventory SET reserved_stock = reserved_stock - ?, updated_at = ? WHERE product_id = ?";
+    private static final String RELEASE_SQL =
+        "UPDATE inventory SET available_stock = available_stock + ?, reserved_stock = reserved_stock - ?, updated_at = ? " +
+        "WHERE product_id = ?";
+
     @Autowired
     private InventoryRepository inventoryRepository;
 
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private DatabaseUtils databaseUtils;
+
+    @Autowired
+    private InventoryLedger inventoryLedger;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     /**
      * Initialize inventory cho sản phẩm mới
      */
@@ -1162,6 +1196,8 @@ public class InventoryService {
         inventory.setUpdatedAt(LocalDateTime.now());
 
         inventoryRepository.save(inventory);
+
+        recordStockChange(productId, 0, initialStock, "INITIAL_STOCK");
     }
 
     /**
@@ -1175,14 +1211,90 @@ public class InventoryService {
             return false;
         }
 
-        inventory.setAvailableStock(inventory.getAvailableStock() - quantity);
+        int oldStock = inventory.getAvailableStock();
+        inventory.setAvailableStock(oldStock - quantity);
         inventory.setReservedStock(inventory.getReservedStock() + quantity);
         inventory.setUpdatedAt(LocalDateTime.now());
 
         inventoryRepository.save(inventory);
+        recordStockChange(productId, oldStock, oldStock - quantity, "RESERVED");
         return true;
     }
 
+    /**
+     * Set available stock (manual adjustment); row bị lock để old stock trong ledger chính xác
+     */
+    public void setAvailableStock(Long productId, int newStock, String reason) {
+        Inventory inventory = entityManager
+            .createQuery("SELECT i FROM Inventory i WHERE i.productId = :productId", Inventory.class)
+            .setParameter("productId", productId)
+            .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+            .getResultStream()
+            .findFirst()
+            .orElseThrow(() -> new ResourceNotFoundException("Inventory not found for product: " + productId));
+
+        int oldStock = inventory.getAvailableStock();
+        inventory.setAvailableStock(newStock);
+        inventory.setUpdatedAt(LocalDateTime.now());
+
+        inventoryRepository.save(inventory);
+        recordStockChange(productId, oldStock, newStock, reason);
+    }
+
+    /**
+     * Reserve inventory cho nhiều sản phẩm trong một batched UPDATE
+     * Conditional update (available_stock >= ?) nên không cần đọc Inventory trước
+     */
+    public void reserveInventory(Map<Long, Integer> quantities) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> rows = new ArrayList<>(quantities.size());
+        List<Long> productIds = new ArrayList<>(quantities.size());
+        // Row locks lấy theo thứ tự productId bất kể thứ tự của caller
+        for (Map.Entry<Long, Integer> entry : new TreeMap<>(quantities).entrySet()) {
+            rows.add(new Object[] { entry.getValue(), entry.getValue(), now, entry.getKey(), entry.getValue() });
+            productIds.add(entry.getKey());
+        }
+
+        int[] updated = databaseUtils.batchUpdateInTransaction(RESERVE_SQL, rows);
+        for (int i = 0; i < updated.length; i++) {
+            // Mỗi product phải update đúng 1 row; SUCCESS_NO_INFO (-2) không chứng minh được đủ stock
+            if (updated[i] != 1) {
+                // Transaction rollback hoàn lại các reservations đã update trong batch
+                throw new BusinessLogicException("Insufficient stock for product: " + productIds.get(i));
+            }
+        }
+
+        Map<Long, Integer> deltas = new LinkedHashMap<>();
+        quantities.forEach((productId, quantity) -> deltas.put(productId, -quantity));
+        inventoryLedger.appendAvailableStockDeltas(deltas, "RESERVED");
+    }
+
+    /**
+     * Confirm reservations cho nhiều sản phẩm trong một batched UPDATE
+     * Chỉ reserved_stock thay đổi nên không có ledger entry
+     */
+    public void confirmReservations(Map<Long, Integer> quantities) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> rows = new ArrayList<>(quantities.size());
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            rows.add(new Object[] { entry.getValue(), now, entry.getKey() });
+        }
+        databaseUtils.batchUpdateInTransaction(CONFIRM_SQL, rows);
+    }
+
+    /**
+     * Release reservations cho nhiều sản phẩm trong một batched UPDATE
+     */
+    public void releaseReservations(Map<Long, Integer> quantities) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> rows = new ArrayList<>(quantities.size());
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            rows.add(new Object[] { entry.getValue(), entry.getValue(), now, entry.getKey() });
+        }
+        databaseUtils.batchUpdateInTransaction(RELEASE_SQL, rows);
+        inventoryLedger.appendAvailableStockDeltas(quantities, "RELEASED");
+    }
+
     /**
      * Confirm inventory reservation (after payment)
      */
@@ -1201,15 +1313,17 @@ public class InventoryService {
     public void releaseReservation(Long productId, int quantity) {
         Inventory inventory = inventoryRepository.findByProductId(productId).orElse(null);
         if (inventory != null) {
-            inventory.setAvailableStock(inventory.getAvailableStock() + quantity);
+            int oldStock = inventory.getAvailableStock();
+            inventory.setAvailableStock(oldStock + quantity);
             inventory.setReservedStock(inventory.getReservedStock() - quantity);
             inventory.setUpdatedAt(LocalDateTime.now());
             inventoryRepository.save(inventory);
+            recordStockChange(productId, oldStock, oldStock + quantity, "RELEASED");
         }
     }
 
     /**
-     * Record stock change
+     * Record thay đổi của inventory.available_stock vào ledger
      */
     public void recordStockChange(Long productId, int oldStock, int newStock, String reason) {
         StockChange change = new StockChange();
@@ -1220,8 +1334,8 @@ public class InventoryService {
         change.setReason(reason);
         change.setChangedAt(LocalDateTime.now());
 
-        // Save stock change record
-        // stockChangeRepository.save(change);
+        // Append vào inventory ledger (batched trong transaction)
+        inventoryLedger.append(change);
     }
 
     /**
@@ -1253,6 +1367,337 @@ public class InventoryService {
     }
 }
 
+/**
+ * Inventory Ledger
+ * Append-only stock_ledger (partition theo tháng) + stock_snapshots định kỳ.
+ * Ledger theo dõi inventory.available_stock; mọi thay đổi của cột này phải append một entry.
+ * Stock tại thời điểm bất kỳ = snapshot gần nhất + tail ngắn của ledger.
+ */
+@Service
+public class InventoryLedger {
+
+    private static final Logger logger = Logger.getLogger(InventoryLedger.class.getName());
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    private static final String INSERT_LEDGER_SQL =
+        "INSERT INTO stock_ledger (product_id, old_stock, new_stock, change_amount, reason, changed_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_SNAPSHOT_SQL =
+        "INSERT INTO stock_snapshots (product_id, snapshot_at, stock) VALUES (?, ?, ?)";
+    // Gọi sau conditional UPDATE trong cùng transaction: inventory row đã bị lock, available_stock là giá trị mới
+    private static final String INSERT_DELTA_SQL =
+        "INSERT INTO stock_ledger (product_id, old_stock, new_stock, change_amount, reason, changed_at) " +
+        "SELECT product_id, available_stock - ?, available_stock, ?, ?, ? FROM inventory WHERE product_id = ?";
+    private static final String PARTITION_LOCK = "inventory_ledger_partitions";
+
+    // Resource key cho changes của transaction hiện tại (bind theo transaction, suspend cùng REQUIRES_NEW)
+    private static final Object PENDING_KEY = new Object();
+
+    @Autowired
+    private DatabaseUtils databaseUtils;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Value("${inventory.ledger.manage-schema:true}")
+    private boolean manageSchema;
+
+    @Value("${inventory.ledger.partitions-ahead:3}")
+    private int partitionsAhead;
+
+    @Value("${inventory.ledger.retention-months:24}")
+    private int retentionMonths;
+
+    @Value("${inventory.ledger.compaction-grace-minutes:5}")
+    private long compactionGraceMinutes;
+
+    @PostConstruct
+    public void init() {
+        // Partition maintenance không chạy lúc boot; p_future nhận rows cho tới lần maintenance đầu tiên
+        if (manageSchema) {
+            createTables();
+        }
+    }
+
+    /**
+     * Append stock change; trong transaction sẽ được gom và insert một lần trước commit
+     */
+    public void append(StockChange change) {
+        Object[] row = new Object[] {
+            change.getProductId(), change.getOldStock(), change.getNewStock(),
+            change.getChangeAmount(), change.getReason(), change.getChangedAt()
+        };
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Ngoài transaction: executeUpdate tự commit
+            databaseUtils.executeUpdate(INSERT_LEDGER_SQL, row);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> pending = (List<Object[]>) TransactionSynchronizationManager.getResource(PENDING_KEY);
+        if (pending == null) {
+            List<Object[]> rows = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(PENDING_KEY, rows);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void suspend() {
+                    TransactionSynchronizationManager.unbindResource(PENDING_KEY);
+                }
+
+                @Override
+                public void resume() {
+                    TransactionSynchronizationManager.bindResource(PENDING_KEY, rows);
+                }
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    if (!rows.isEmpty()) {
+                        databaseUtils.batchUpdateInTransaction(INSERT_LEDGER_SQL, rows);
+                    }
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PENDING_KEY);
+                }
+            });
+            pending = rows;
+        }
+        pending.add(row);
+    }
+
+    /**
+     * Ledger rows cho batched conditional UPDATEs trên inventory.available_stock (delta theo product)
+     * Phải gọi sau UPDATE, trong cùng transaction
+     */
+    public void appendAvailableStockDeltas(Map<Long, Integer> deltas, String reason) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> rows = new ArrayList<>(deltas.size());
+        for (Map.Entry<Long, Integer> entry : deltas.entrySet()) {
+            rows.add(new Object[] { entry.getValue(), entry.getValue(), reason, now, entry.getKey() });
+        }
+        databaseUtils.batchUpdateInTransaction(INSERT_DELTA_SQL, rows);
+    }
+
+    /**
+     * Stock của product tại thời điểm asOf
+     */
+    public int getStockAt(Long productId, LocalDateTime asOf) {
+        Object[] snapshot = databaseUtils.executeQuery(
+            "SELECT stock, snapshot_at FROM stock_snapshots WHERE product_id = ? AND snapshot_at <= ? " +
+            "ORDER BY snapshot_at DESC LIMIT 1",
+            rs -> {
+                try {
+                    return rs.next() ? new Object[] { rs.getInt(1), rs.getTimestamp(2).toLocalDateTime() } : null;
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            },
+            productId, asOf);
+
+        if (snapshot != null) {
+            return (Integer) snapshot[0] + sumChanges(productId, (LocalDateTime) snapshot[1], asOf);
+        }
+
+        // Chưa có snapshot: base là old_stock của entry đầu tiên
+        Integer base = databaseUtils.executeQuery(
+            "SELECT old_stock FROM stock_ledger WHERE product_id = ? ORDER BY changed_at ASC, id ASC LIMIT 1",
+            rs -> {
+                try {
+                    return rs.next() ? rs.getInt(1) : 0;
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            },
+            productId);
+        return base + sumChanges(productId, LocalDateTime.of(1970, 1, 1, 0, 0), asOf);
+    }
+
+    /**
+     * Compaction: snapshot cho mọi product có thay đổi kể từ lần compaction trước
+     */
+    @Scheduled(cron = "${inventory.ledger.compaction-cron:0 15 2 * * *}")
+    public void compact() {
+        // Grace period để không bỏ sót transactions commit muộn với changed_at trước cutoff
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(compactionGraceMinutes);
+        LocalDateTime since = databaseUtils.executeQuery(
+            "SELECT MAX(snapshot_at) FROM stock_snapshots",
+            rs -> {
+                try {
+                    return rs.next() && rs.getTimestamp(1) != null
+                        ? rs.getTimestamp(1).toLocalDateTime()
+                        : LocalDateTime.of(1970, 1, 1, 0, 0);
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+        List<Long> productIds = databaseUtils.executeQuery(
+            "SELECT DISTINCT product_id FROM stock_ledger WHERE changed_at > ? AND changed_at <= ?",
+            rs -> {
+                List<Long> ids = new ArrayList<>();
+                try {
+                    while (rs.next()) {
+                        ids.add(rs.getLong(1));
+                    }
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+                return ids;
+            },
+            since, cutoff);
+
+        // Scheduled, không có transaction: batchInsert tự commit
+        List<List<Object>> snapshots = new ArrayList<>(productIds.size());
+        for (Long productId : productIds) {
+            snapshots.add(Arrays.asList(productId, cutoff, getStockAt(productId, cutoff)));
+        }
+        if (!snapshots.isEmpty()) {
+            databaseUtils.batchInsert(INSERT_SNAPSHOT_SQL, snapshots);
+        }
+
+        logger.info(String.format("Inventory ledger compaction wrote %d snapshots at %s", snapshots.size(), cutoff));
+    }
+
+    /**
+     * Tạo partitions cho các tháng sắp tới và drop partitions quá retention
+     * GET_LOCK để chỉ một instance chạy ALTER TABLE; lỗi chỉ log, lần chạy sau thử lại
+     */
+    @Scheduled(cron = "${inventory.ledger.partition-cron:0 0 1 * * *}")
+    public void maintainPartitions() {
+        if (!manageSchema) {
+            return;
+        }
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(true);
+            if (!acquireLock(conn)) {
+                logger.info("Partition maintenance is running on another instance, skipping");
+                return;
+            }
+            try {
+                maintainPartitions(conn);
+            } finally {
+                try (PreparedStatement stmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                    stmt.setString(1, PARTITION_LOCK);
+                    stmt.execute();
+                }
+            }
+        } catch (SQLException e) {
+            logger.warning("stock_ledger partition maintenance failed: " + e.getMessage());
+        }
+    }
+
+    private boolean acquireLock(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            stmt.setString(1, PARTITION_LOCK);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private void maintainPartitions(Connection conn) throws SQLException {
+        Set<String> existing = new HashSet<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                 "SELECT partition_name FROM information_schema.partitions " +
+                 "WHERE table_schema = DATABASE() AND table_name = 'stock_ledger' AND partition_name IS NOT NULL")) {
+            while (rs.next()) {
+                existing.add(rs.getString(1));
+            }
+        }
+
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= partitionsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            String name = month.format(PARTITION_NAME);
+            if (!existing.contains(name)) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(String.format(
+                        "ALTER TABLE stock_ledger REORGANIZE PARTITION p_future INTO (" +
+                        "PARTITION %s VALUES LESS THAN ('%s'), PARTITION p_future VALUES LESS THAN (MAXVALUE))",
+                        name, month.plusMonths(1).atDay(1)));
+                }
+                logger.info("Created stock_ledger partition " + name);
+            }
+        }
+
+        // Chỉ drop khi mọi row trong partition đã được compaction snapshot (snapshot_at >= changed_at)
+        YearMonth oldestRetained = current.minusMonths(retentionMonths);
+        for (String name : existing) {
+            if (name.equals("p_future") || name.equals("p_initial")) {
+                continue;
+            }
+            YearMonth month = YearMonth.parse(name.substring(1), DateTimeFormatter.ofPattern("yyyyMM"));
+            if (!month.isBefore(oldestRetained)) {
+                continue;
+            }
+
+            long uncompacted;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(
+                     "SELECT COUNT(*) FROM stock_ledger PARTITION (" + name + ") l " +
+                     "WHERE NOT EXISTS (SELECT 1 FROM stock_snapshots s " +
+                     "  WHERE s.product_id = l.product_id AND s.snapshot_at >= l.changed_at)")) {
+                rs.next();
+                uncompacted = rs.getLong(1);
+            }
+            if (uncompacted > 0) {
+                logger.warning(String.format("Keeping stock_ledger partition %s: %d rows not covered by a snapshot",
+                                             name, uncompacted));
+                continue;
+            }
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE stock_ledger DROP PARTITION " + name);
+            }
+            logger.info("Dropped stock_ledger partition " + name);
+        }
+    }
+
+    private int sumChanges(Long productId, LocalDateTime after, LocalDateTime upTo) {
+        // changed_at range cho phép partition pruning
+        return databaseUtils.executeQuery(
+            "SELECT COALESCE(SUM(change_amount), 0) FROM stock_ledger " +
+            "WHERE product_id = ? AND changed_at > ? AND changed_at <= ?",
+            rs -> {
+                try {
+                    return rs.next() ? rs.getInt(1) : 0;
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            },
+            productId, after, upTo);
+    }
+
+    private void createTables() {
+        // Primary key phải chứa partition column (MySQL)
+        databaseUtils.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS stock_ledger (" +
+            "  id BIGINT NOT NULL AUTO_INCREMENT," +
+            "  product_id BIGINT NOT NULL," +
+            "  old_stock INT NOT NULL," +
+            "  new_stock INT NOT NULL," +
+            "  change_amount INT NOT NULL," +
+            "  reason VARCHAR(255)," +
+            "  changed_at DATETIME(6) NOT NULL," +
+            "  PRIMARY KEY (id, changed_at)," +
+            "  KEY idx_stock_ledger_product_time (product_id, changed_at)" +
+            ") PARTITION BY RANGE COLUMNS (changed_at) (" +
+            "  PARTITION p_initial VALUES LESS THAN ('2000-01-01')," +
+            "  PARTITION p_future VALUES LESS THAN (MAXVALUE))");
+
+        databaseUtils.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS stock_snapshots (" +
+            "  product_id BIGINT NOT NULL," +
+            "  snapshot_at DATETIME(6) NOT NULL," +
+            "  stock INT NOT NULL," +
+            "  PRIMARY KEY (product_id, snapshot_at))");
+    }
+}
+
 /**
  * Payment Processing Service
  */
@@ -1357,6 +1802,27 @@ import java.util.HashMap;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.TreeMap;
+import java.util.Collection;
+import java.sql.SQLException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import javax.sql.DataSource;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import java.util.logging.Logger;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.scheduling.annotation.Async;
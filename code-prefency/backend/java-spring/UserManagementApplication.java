@@ -3,6 +3,8 @@ package com.example.usermanagement;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
@@ -22,7 +24,14 @@ import java.util.Optional;
 public class UserManagementApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(UserManagementApplication.class, args);
+        SpringApplication application = new SpringApplication(UserManagementApplication.class);
+        // Buffer startup steps để StartupTimingReporter báo cáo thời gian khởi tạo từng bean
+        application.setApplicationStartup(new BufferingApplicationStartup(4096));
+        ConfigurableApplicationContext context = application.run(args);
+        // CDS training run (mvn -Pcds): thoát sau khi context refresh để JVM ghi archive
+        if (Boolean.getBoolean("cds.training")) {
+            System.exit(SpringApplication.exit(context));
+        }
     }
 
     @Autowired
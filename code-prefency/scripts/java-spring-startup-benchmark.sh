@@ -0,0 +1,178 @@
+#!/usr/bin/env bash
+# User Management System - Java Spring startup benchmark
+# So sánh time-to-first-request và RSS giữa các chế độ chạy: JIT, CDS, Spring AOT, AOT + CDS và GraalVM native
+#
+# Usage:
+#   APP_JAR=target/user-management-1.0.0-SNAPSHOT.jar ./java-spring-startup-benchmark.sh [modes...]
+#
+# Build (backend/java-spring/pom.xml):
+#   mvn package                 -> APP_JAR
+#   mvn -Paot package           -> AOT_JAR (target/user-management-aot.jar)
+#   mvn -Pnative package        -> NATIVE_BIN (target/user-management)
+#
+# Modes (mặc định: jit cds aot aot-cds native):
+#   jit      java -jar
+#   cds      class-data-sharing archive tạo từ training run (-XX:ArchiveClassesAtExit)
+#   aot      Spring AOT-processed jar (-DspringAot=true), build với profile aot
+#   aot-cds  AOT jar + CDS archive
+#   native   GraalVM native-image binary (NATIVE_BIN), bỏ qua nếu không có
+#
+# Environment:
+#   APP_JAR       jar của UserManagementApplication (bắt buộc)
+#   AOT_JAR       jar đã qua Spring AOT processing (mặc định: APP_JAR)
+#   NATIVE_BIN    native executable (tùy chọn)
+#   PROBE_URL     endpoint dùng để đo first request (mặc định: readiness probe)
+#   RUNS          số lần chạy mỗi mode, lấy median (mặc định: 5)
+#   JAVA_OPTS     JVM options chung cho mọi mode
+#   WORK_DIR      nơi lưu CDS archives và logs (mặc định: ./startup-benchmark)
+
+set -euo pipefail
+
+APP_JAR="${APP_JAR:?APP_JAR must point to the application jar}"
+AOT_JAR="${AOT_JAR:-$APP_JAR}"
+NATIVE_BIN="${NATIVE_BIN:-}"
+PROBE_URL="${PROBE_URL:-http://localhost:8080/actuator/health/readiness}"
+RUNS="${RUNS:-5}"
+JAVA_OPTS="${JAVA_OPTS:-}"
+WORK_DIR="${WORK_DIR:-./startup-benchmark}"
+STARTUP_TIMEOUT_SECONDS="${STARTUP_TIMEOUT_SECONDS:-120}"
+
+MODES=("$@")
+if [ ${#MODES[@]} -eq 0 ]; then
+    MODES=(jit cds aot aot-cds native)
+fi
+
+mkdir -p "$WORK_DIR"
+
+now_ms() {
+    date +%s%3N
+}
+
+# Chờ tới khi PROBE_URL trả về 2xx, in ra số ms từ lúc launch
+wait_for_first_request() {
+    local pid=$1
+    local started=$2
+    local deadline=$(( $(now_ms) + STARTUP_TIMEOUT_SECONDS * 1000 ))
+
+    while [ "$(now_ms)" -lt "$deadline" ]; do
+        if ! kill -0 "$pid" 2>/dev/null; then
+            echo "process exited before first request" >&2
+            return 1
+        fi
+        if curl -sf -o /dev/null "$PROBE_URL"; then
+            echo $(( $(now_ms) - started ))
+            return 0
+        fi
+        sleep 0.05
+    done
+
+    echo "timed out after ${STARTUP_TIMEOUT_SECONDS}s" >&2
+    return 1
+}
+
+rss_mb() {
+    local pid=$1
+    echo $(( $(ps -o rss= -p "$pid" | tr -d ' ') / 1024 ))
+}
+
+stop_process() {
+    local pid=$1
+    kill -TERM "$pid" 2>/dev/null || true
+    wait "$pid" 2>/dev/null || true
+}
+
+# Training run: start app, chờ first request để load đủ classes, shutdown gracefully để JVM dump archive
+train_cds_archive() {
+    local jar=$1
+    local archive=$2
+    shift 2
+
+    if [ -f "$archive" ]; then
+        return 0
+    fi
+
+    echo "Training CDS archive $archive" >&2
+    local started
+    started=$(now_ms)
+    # shellcheck disable=SC2086
+    java $JAVA_OPTS "$@" -XX:ArchiveClassesAtExit="$archive" -jar "$jar" \
+        > "$WORK_DIR/$(basename "$archive").training.log" 2>&1 &
+    local pid=$!
+
+    wait_for_first_request "$pid" "$started" > /dev/null
+    stop_process "$pid"
+
+    if [ ! -f "$archive" ]; then
+        echo "CDS archive was not created, see training log" >&2
+        return 1
+    fi
+}
+
+# exec để PID của background job chính là JVM/native process (kill, ps RSS)
+launch() {
+    local mode=$1
+    case "$mode" in
+        jit)
+            # shellcheck disable=SC2086
+            exec java $JAVA_OPTS -jar "$APP_JAR" ;;
+        cds)
+            # shellcheck disable=SC2086
+            exec java $JAVA_OPTS -XX:SharedArchiveFile="$WORK_DIR/app.jsa" -Xshare:auto -jar "$APP_JAR" ;;
+        aot)
+            # shellcheck disable=SC2086
+            exec java $JAVA_OPTS -DspringAot=true -jar "$AOT_JAR" ;;
+        aot-cds)
+            # shellcheck disable=SC2086
+            exec java $JAVA_OPTS -DspringAot=true -XX:SharedArchiveFile="$WORK_DIR/app-aot.jsa" -Xshare:auto -jar "$AOT_JAR" ;;
+        native)
+            exec "$NATIVE_BIN" ;;
+    esac
+}
+
+prepare() {
+    local mode=$1
+    case "$mode" in
+        cds)
+            train_cds_archive "$APP_JAR" "$WORK_DIR/app.jsa" ;;
+        aot-cds)
+            train_cds_archive "$AOT_JAR" "$WORK_DIR/app-aot.jsa" -DspringAot=true ;;
+        native)
+            if [ -z "$NATIVE_BIN" ] || [ ! -x "$NATIVE_BIN" ]; then
+                echo "Skipping native: NATIVE_BIN is not set or not executable" >&2
+                return 1
+            fi ;;
+    esac
+}
+
+median() {
+    sort -n | awk '{ values[NR] = $1 } END { if (NR == 0) { print "-" } else { print values[int((NR + 1) / 2)] } }'
+}
+
+printf "%-10s %12s %12s %10s\n" "mode" "ttfr_ms" "rss_mb" "runs"
+
+for mode in "${MODES[@]}"; do
+    if ! prepare "$mode"; then
+        continue
+    fi
+
+    ttfr_samples=()
+    rss_samples=()
+    for run in $(seq 1 "$RUNS"); do
+        started=$(now_ms)
+        launch "$mode" > "$WORK_DIR/$mode.$run.log" 2>&1 &
+        pid=$!
+
+        if ttfr=$(wait_for_first_request "$pid" "$started"); then
+            ttfr_samples+=("$ttfr")
+            rss_samples+=("$(rss_mb "$pid")")
+        else
+            echo "Run $run of $mode failed, see $WORK_DIR/$mode.$run.log" >&2
+        fi
+        stop_process "$pid"
+    done
+
+    printf "%-10s %12s %12s %10s\n" "$mode" \
+        "$(printf '%s\n' "${ttfr_samples[@]:-}" | grep . | median)" \
+        "$(printf '%s\n' "${rss_samples[@]:-}" | grep . | median)" \
+        "${#ttfr_samples[@]}"
+done